@@ -7,7 +7,7 @@ import java.awt.Font;
 import java.awt.FontMetrics;
 import java.awt.GraphicsEnvironment;
 import java.awt.Image;
-import java.awt.image.MemoryImageSource;
+import java.util.Arrays;
 
 /**
  * Sprite provides support for a turtle's graphics state. This consists of stuff
@@ -16,8 +16,8 @@ import java.awt.image.MemoryImageSource;
  * access and manipulate it, e.g., support for FORWARD, RIGHT, POS, HEADING,
  * etc... Commands and Operators.
  * <p>
- * Sprite must extend Component so that it can use createImage() to supply
- * TGCanvas with its Image.
+ * Sprite extends Component so that it can use getFontMetrics(). The Image it
+ * supplies TGCanvas with comes from its SpritePixels.
  * <p>
  * @author Guy Haas
  */
@@ -205,12 +205,6 @@ public class Sprite extends Component {
     public static final int MAX_THROTTLE_AMT = 5000;
 
 
-    /*
-    * Number of degrees in one radian
-     */
-    private static final double DEGREES_PER_RADIAN = 180.0 / Math.PI;
-
-
     /*
     * Number of radians in a complete circle
      */
@@ -261,19 +255,25 @@ public class Sprite extends Component {
     * Fudge factors are in the order of font numbers, i.e., Courier,
     * Sans Serif, Serif
      */
-    private float[] macLabelHeightFudges = {76.0f, 75.0f, 89.0f};
-    private float[] winLabelHeightFudges = {56.3f, 70.0f, 65.0f};
+    private static final float[] macLabelHeightFudges = {76.0f, 75.0f, 89.0f};
+    private static final float[] winLabelHeightFudges = {56.3f, 70.0f, 65.0f};
 
 
     /*
     * To aid debugging and/or optimizing a grapical program it can be
     * helpful to artificially slow down the drawing. When throttleSleepAmt
     * is greater than zero, methods that visibly change this Sprite's
-    * state, take a nap. The current Thread is suspended for throttleSleepAmt
-    * milliseconds.
+    * state take a step every throttleSleepAmt milliseconds, paced by the
+    * canvas' TGAnimationClock.
      */
     private int throttleSleepAmt = 0;
 
+    /*
+    * Deadline (System.nanoTime()) this Sprite's last step was paced
+    * against by the canvas' TGAnimationClock, zero if none.
+     */
+    private long stepDeadline;
+
 
     /*
     * Reference to the graphics canvas this Sprite draws on.  It may
@@ -285,10 +285,15 @@ public class Sprite extends Component {
     /*
     * stuff related to the pixels composing this Sprite's representation
      */
-    private Image spriteImage;
-    private MemoryImageSource imageProducer;
     private SpritePixels spritePixels;
 
+    /*
+    * Copy of the pixels last stamped and their runs of non-transparent
+    * pixels, reused while stamp() finds the same pixels
+     */
+    private PixelRectangle stampPixRect;
+    private int[] stampOpaqueRuns;
+
     /*
     * State of this Sprite...
     * - its current location in TurtleSpace,
@@ -310,17 +315,25 @@ public class Sprite extends Component {
     * Location of Sprite in TurtleSpace.
     * After its initialization in the constructor, it is only changed
     * via the setCurPoint() method so that visible stuff the Sprite
-    * does can be throttled.
+    * does can be throttled. Kept as doubles so moving the Sprite
+    * does not create a TGPoint each step; pos() makes one.
      */
-    private TGPoint curPoint;
+    private double curX;
+    private double curY;
 
     /*
-    * Direction Sprite is pointing in radians; zero is positive X axis.
-    * After its initialization in the constructor, it is only changed
-    * via the setCurHeading() method so that visible stuff the Sprite
-    * does can be throttled.
-     */
+    * Direction Sprite is pointing in degrees, 0 up to 360; zero is
+    * positive X axis. Kept in degrees so that turning by whole degrees
+    * adds up exactly. curHeading is the same direction in radians, and
+    * headingCos and headingSin its cosine and sine (see TGTrig), so
+    * moving the Sprite does no trigonometry. After their initialization
+    * in the constructor, they are only changed via the setCurHeading()
+    * method so that visible stuff the Sprite does can be throttled.
+     */
+    private double curDegrees;
     private double curHeading;
+    private double headingCos;
+    private double headingSin;
 
     /*
     * true if this Sprite's image is being displayed on the graphics canvas
@@ -406,20 +419,21 @@ public class Sprite extends Component {
     private int curFontNumber;
 
     /*
-    * Turtle steps (pixels) to Font-size maps, one for each Font.
-    * Each element is an array of  shorts. A short's index is the
-    * ascent height of a capital letter.  The contents of the short
-    * at this index is the Font size that is closest to this height.
+    * Turtle steps (pixels) to Font-size map for the current Font, an
+    * array of shorts. A short's index is the ascent height of a capital
+    * letter.  The contents of the short at this index is the Font size
+    * that is closest to this height.
     *
     * As an example, here are a few elements on a Windows 7 system
     * for font number 0 (Courier, PLAIN):
     *
-    * fontSizes[0][10] = 10
+    * curFontSizes[10] = 10
     * ...
-    * fontSizes[0][20] = 19
+    * curFontSizes[20] = 19
     *
+    * The maps are built once and shared by all Sprites, see TGFontSizes.
      */
-    private short[][] fontSizes;
+    private short[] curFontSizes;
 
     // Constructor
     // -----------
@@ -428,17 +442,20 @@ public class Sprite extends Component {
      * setup with a default location (home), heading, image, font and pen.
      */
     public Sprite(TGCanvas canvas) {
-        fontSizes = new short[NUM_FONTS][];
         curFontNumber = 0;
         curTextAscent = INITIAL_FONT_ASCENT;
-        loadFontSizes(curFontNumber);
+        curFontSizes = getFontSizes(curFontNumber);
         curFont = new Font(FONT_NAMES[curFontNumber / 4],
                 FONT_STYLES[0],
-                fontSizes[curFontNumber][INITIAL_FONT_ASCENT]);
+                curFontSizes[INITIAL_FONT_ASCENT]);
         curColor = INITIAL_FOREGROUND;
         curPenSize = INITIAL_PEN_SIZE;
-        curPoint = new TGPoint(0, 0);
+        curX = 0.0;
+        curY = 0.0;
+        curDegrees = 90.0;
         curHeading = RADIANS_PER_QTR_CIRCLE;
+        headingCos = TGTrig.cosDegrees(curDegrees);
+        headingSin = TGTrig.sinDegrees(curDegrees);
         spritePixels = new TurtleTurtle(curColor, curHeading);
         penDown = true;
         penPattern = null;
@@ -455,28 +472,23 @@ public class Sprite extends Component {
     // Private Utility Stuff
     // ------- ------- -----
     /*
-    * Paint pixels composing a line given a starting point, a heading,
-    * and a distance.  Return the other endpoint of the line.
+    * Move the sprite steps along a heading, painting pixels composing
+    * a line if draw is true.
     *
-    * @param p1 one endpoint of the line segment to be drawn
-    * @param steps distance to other endpoint of the line segment
-    * @param heading radians from p1 to the other end point
-    * @param color java.awt.Color of line
-    * @param width line width in pixels
-     */
-    private TGPoint drawLine(TGPoint p1, double steps, double heading, Color color, int width) {
-        if (steps < 0) {
-            heading -= RADIANS_PER_HALF_CIRCLE;
-            if (heading < 0) {
-                heading += RADIANS_PER_CIRCLE;
-            }
-            steps = -steps;
+    * @param steps distance to move, negative to move backwards
+    * @param heading radians to move along
+    * @param draw true to draw a line with the current pen
+     */
+    private void moveAlong(double steps, boolean draw) throws AbortException {
+        double newX = curX + TGPoint.roundDelta(headingCos * steps);
+        double newY = curY + TGPoint.roundDelta(headingSin * steps);
+        if (draw && canvas != null) {
+            canvas.addLine(curX, curY, newX, newY, curColor, curPenSize, penPattern, typeLinecap);
         }
-        TGPoint p2 = p1.otherEndPoint(heading, steps);
-        if (canvas != null) {
-            canvas.addGraphOp(new TGLineOp(p1, p2, color, width, penPattern, typeLinecap));
+        if (canvas != null && (draw || showTurtle)) {
+            canvas.repaint();
         }
-        return p2;
+        setCurPoint(newX, newY);
     }
 
 
@@ -511,16 +523,12 @@ public class Sprite extends Component {
 
 
     /*
-    * Initialize the Font sizes needed for getting maxAscents heights.
-    * The index into fontSizes[fontNumber][idx] is the ascent height of
+    * Return the Font sizes needed for getting maxAscents heights.
+    * The index into the returned array is the ascent height of
     * a capital letter and the contents of the short at this index is
     * the Font size that gets us that ascent height.
      */
-    private void loadFontSizes(int fontNumber) {
-        if (fontSizes[fontNumber] != null) {
-            return;
-        }
-        fontSizes[fontNumber] = new short[MAX_LABEL_ASCENT + 1];
+    private static short[] getFontSizes(int fontNumber) {
         float fudgeFactor = 100.0f;
         String os = System.getProperty("os.name").toLowerCase();
         if (os.startsWith("win")) {
@@ -528,69 +536,64 @@ public class Sprite extends Component {
         } else if (os.startsWith("mac")) {
             fudgeFactor = macLabelHeightFudges[fontNumber / 4];
         }
-        int fontSize = 1;
-        Font font = new Font(FONT_NAMES[fontNumber / 4], FONT_STYLES[fontNumber % 4], fontSize);
-        while (font == null) {
-            fontSize++;
-            font = new Font(FONT_NAMES[fontNumber / 4], FONT_STYLES[fontNumber % 4], fontSize);
-            continue;
-        }
-        FontMetrics fm = getFontMetrics(font);
-        float fontMaxAscent = (float) fm.getMaxAscent();
-        int capsAscent = Math.round((fontMaxAscent * fudgeFactor) / 100.0f);
-        for (int ascentHeightIdx = 1; ascentHeightIdx <= MAX_LABEL_ASCENT; ascentHeightIdx++) {
-            if (ascentHeightIdx <= capsAscent) {
-                fontSizes[fontNumber][ascentHeightIdx] = (short) fontSize;
-                continue;
-            } else {
-                while (ascentHeightIdx > capsAscent) {
-                    fontSize++;
-                    font = new Font(FONT_NAMES[fontNumber / 4], FONT_STYLES[fontNumber % 4], fontSize);
-                    while (font == null) {
-                        fontSize++;
-                        font = new Font(FONT_NAMES[fontNumber / 4], FONT_STYLES[fontNumber % 4], fontSize);
-                    }
-                    fm = getFontMetrics(font);
-                    fontMaxAscent = (float) fm.getMaxAscent();
-                    capsAscent = Math.round((fontMaxAscent * fudgeFactor) / 100.0f);
-                }
-                fontSizes[fontNumber][ascentHeightIdx] = (short) fontSize;
-            }
-        }
+        return TGFontSizes.getTable(fontNumber, FONT_NAMES[fontNumber / 4],
+                FONT_STYLES[fontNumber % 4], fudgeFactor);
     }
 
 
     /*
     * Change the sprite's current heading.
-    * The curHeading variable is only changed here so that a throttle
+    * The heading variables are only changed here so that a throttle
     * can be maintained.
      */
-    private void setCurHeading(double newCurHeading) throws AbortException {
-        curHeading = newCurHeading;
-        if (canvas != null && (throttleSleepAmt > 0) && showTurtle) {
+    private void setCurHeading(double newCurDegrees) throws AbortException {
+        curDegrees = newCurDegrees;
+        curHeading = newCurDegrees * RADIANS_PER_DEGREE;
+        headingCos = TGTrig.cosDegrees(newCurDegrees);
+        headingSin = TGTrig.sinDegrees(newCurDegrees);
+        awaitStep("Sprite.setCurHeading()");
+    }
+
+
+    /*
+    * Wait for the canvas' animation clock to let this Sprite take its
+    * next step. A hidden Sprite is not throttled, its changes are not
+    * visible, but is paced by the clock's steps per second and waits
+    * while the clock is paused. An interrupted Thread, e.g., one a
+    * TGTurtleRunner was told to abort(), is stopped here even when it
+    * is not paced.
+     */
+    private void awaitStep(String caller) throws AbortException {
+        if (Thread.interrupted()) {
+            throw new AbortException(caller);
+        }
+        TGCanvas stepCanvas = canvas;
+        if (stepCanvas == null) {
+            return;
+        }
+        TGAnimationClock clock = stepCanvas.getAnimationClock();
+        long throttleNanos = showTurtle ? throttleSleepAmt * 1000000L : 0;
+        if (clock.paces(throttleNanos)) {
+            // a batch being drawn in should be seen while we wait
+            stepCanvas.publishBatch();
             try {
-                Thread.sleep(throttleSleepAmt);
+                stepDeadline = clock.awaitStep(stepDeadline, throttleNanos);
             } catch (InterruptedException ie) {
-                throw new AbortException("Sprite.setCurHeading()");
+                throw new AbortException(caller);
             }
         }
     }
 
 
     /*
-    * Change the sprite's current location - curPoint.
-    * The curPoint variable is only changed here so that a throttle
-    * can be maintained.
+    * Change the sprite's current location - curX and curY.
+    * The curX and curY variables are only changed here so that a
+    * throttle can be maintained.
      */
-    private void setCurPoint(TGPoint newCurPoint) throws AbortException {
-        curPoint = newCurPoint;
-        if (canvas != null && (throttleSleepAmt > 0) && showTurtle) {
-            try {
-                Thread.sleep(throttleSleepAmt);
-            } catch (InterruptedException ie) {
-                throw new AbortException("Sprite.setCurPoint()");
-            }
-        }
+    private void setCurPoint(double newX, double newY) throws AbortException {
+        curX = newX;
+        curY = newY;
+        awaitStep("Sprite.setCurPoint()");
     }
 
 
@@ -624,7 +627,7 @@ public class Sprite extends Component {
             angle = 360.0;
         }
         double radiansAngle = -(angle * RADIANS_PER_DEGREE);
-        canvas.addGraphOp(new TGArcOp(curPoint, radius, curHeading, radiansAngle, curColor, curPenSize, penPattern));
+        canvas.addGraphOp(new TGArcOp(curX, curY, radius, curHeading, radiansAngle, curColor, curPenSize, penPattern));
         canvas.repaint();
     }
 
@@ -663,6 +666,35 @@ public class Sprite extends Component {
         bk((double) steps);
     }
 
+    /**
+     * Perform body as a batch; see beginBatch().
+     * <P>
+     * @param body the drawing to be done
+     * @see #beginBatch
+     */
+    public void batch(Runnable body) {
+        beginBatch();
+        try {
+            body.run();
+        } finally {
+            endBatch();
+        }
+    }
+
+    /**
+     * Start batching up drawing done by the current Thread. Until the matching
+     * endBatch(), lines, labels, etc... are collected and then handed to the
+     * graphics canvas all at once, with a single repaint.
+     * <P>
+     * @see #batch
+     * @see #endBatch
+     */
+    public void beginBatch() {
+        if (canvas != null) {
+            canvas.beginBatch();
+        }
+    }
+
     /**
      * Move this Sprite backwards along its current heading. If the pen is
      * currently in the DOWN position, a line is drawn.
@@ -682,16 +714,7 @@ public class Sprite extends Component {
     }
 
     public void bk(double steps) throws AbortException {
-        TGPoint newCurPoint;
-        if (penDown) {
-            newCurPoint = drawLine(curPoint, -steps, (double) curHeading, curColor, curPenSize);
-        } else {
-            newCurPoint = curPoint.otherEndPoint((double) curHeading, -steps);
-        }
-        if (canvas != null && (penDown || showTurtle)) {
-            canvas.repaint();
-        }
-        setCurPoint(newCurPoint);
+        moveAlong(-steps, penDown);
     }
 
     /**
@@ -717,10 +740,10 @@ public class Sprite extends Component {
             return null;
         }
         int imgSideSiz = getImageSideSize();
-        double leftX = curPoint.xDoubleValue() - imgSideSiz / 2;
-        double topY = curPoint.yDoubleValue() + imgSideSiz / 2;
-        int[] canvasPixels = canvas.getPixels(new TGPoint(leftX, topY), imgSideSiz, imgSideSiz);
-        int[] maskPixels = spritePixels.getPixels();
+        double leftX = curX - imgSideSiz / 2;
+        double topY = curY + imgSideSiz / 2;
+        int[] canvasPixels = canvas.peekPixels(new TGPoint(leftX, topY), imgSideSiz, imgSideSiz);
+        int[] maskPixels = spritePixels.getSharedPixels();
         int[] uniqueColors = new int[canvasPixels.length];
         int numUniqueColors = 0;
         for (int idx = 0; idx < canvasPixels.length; idx++) {
@@ -757,10 +780,22 @@ public class Sprite extends Component {
         if (canvas == null) {
             return -1;
         }
-        int[] pixel = canvas.getPixels(curPoint, 1, 1);
+        int[] pixel = canvas.peekPixels(pos(), 1, 1);
         return TGCanvas.rgbToLogoColor(pixel[0] & 0xFFFFFF);
     }
 
+    /**
+     * End a batch started by beginBatch(). The drawing done in the batch is
+     * handed to the graphics canvas.
+     * <P>
+     * @see #beginBatch
+     */
+    public void endBatch() {
+        if (canvas != null) {
+            canvas.endBatch();
+        }
+    }
+
     /**
      * Fill a bounded area in the graphics image.
      * <p>
@@ -774,7 +809,7 @@ public class Sprite extends Component {
      */
     public void fill() {
         if (canvas != null) {
-            canvas.addGraphOp(new TGFillOp(curPoint, curColor));
+            canvas.addGraphOp(new TGFillOp(pos(), curColor));
             canvas.repaint();
         }
     }
@@ -798,16 +833,7 @@ public class Sprite extends Component {
     }
 
     public void fd(double steps) throws AbortException {
-        TGPoint newCurPoint;
-        if (canvas != null && penDown) {
-            newCurPoint = drawLine(curPoint, steps, (double) curHeading, curColor, curPenSize);
-        } else {
-            newCurPoint = curPoint.otherEndPoint((double) curHeading, steps);
-        }
-        if (canvas != null && (penDown || showTurtle)) {
-            canvas.repaint();
-        }
-        setCurPoint(newCurPoint);
+        moveAlong(steps, canvas != null && penDown);
     }
 
     /**
@@ -834,21 +860,18 @@ public class Sprite extends Component {
 
     /**
      * Return this Sprite's Image so it can be drawn on a Canvas by a Graphics
-     * object.
+     * object. The Image is a copy; drawing on it does not change the Sprite.
      */
     public Image getImage() {
-        while (spriteImage == null) {
-            int[] pixels = spritePixels.getPixels();
-            int sideSize = spritePixels.getSideSize();
-            // create spriteImage to match the array of pixels
-            // AWT Graphics only supports painting of Image objects, no kind
-            // of BitBlt for arrays of pixel values (?who know's why?)
-            if (imageProducer == null) {
-                imageProducer = new MemoryImageSource(sideSize, sideSize, pixels, 0, sideSize);
-            }
-            spriteImage = createImage(imageProducer);
-        }
-        return spriteImage;
+        return SpritePixels.sharedPixelsImage(spritePixels.getPixels(), spritePixels.getSideSize());
+    }
+
+    /**
+     * Return the Image TGCanvas paints this Sprite with. Nothing is copied;
+     * its pixels may be shared with other Sprites, so it must not be changed.
+     */
+    Image getSharedImage() {
+        return spritePixels.getImage();
     }
 
     /**
@@ -921,7 +944,8 @@ public class Sprite extends Component {
      * a method which visibly changes the Sprite's state is performed. To aid
      * debugging and/or optimizing a grapical program it can be helpful to
      * artificially slow down the drawing. When throttleSleepAmt is greater than
-     * zero, concerned methods suspend the current Thread for it's amount.
+     * zero, concerned methods take a step every throttleSleepAmt milliseconds,
+     * paced by the canvas' TGAnimationClock.
      */
     public int getThrottleSleepAmt() {
         return throttleSleepAmt;
@@ -939,14 +963,13 @@ public class Sprite extends Component {
      * @see #seth
      * @see #setheading
      */
-    // The module-wide variable curHeading contains the
-    // mathematically-correct heading in radians, not Logo's
-    // point of view.  So, we must convert curHeading to
-    // TurtleSpace's scheme.
+    // The module-wide variable curDegrees contains the
+    // mathematically-correct heading, not Logo's point of
+    // view.  So, we must convert curDegrees to TurtleSpace's
+    // scheme.
     //
     public double heading() {
-        double degrees = curHeading * DEGREES_PER_RADIAN;
-        double clockwiseDegrees = 360.0 - degrees;
+        double clockwiseDegrees = 360.0 - curDegrees;
         double turtleSpaceDegrees = clockwiseDegrees + 90.0;
         return turtleSpaceDegrees % 360.0;
     }
@@ -1022,7 +1045,7 @@ public class Sprite extends Component {
      */
     public void label(String text) {
         if (canvas != null && text != null) {
-            canvas.addGraphOp(new TGLabelOp(text, curPoint, curFont, curColor));
+            canvas.addGraphOp(new TGLabelOp(text, pos(), curFont, curColor));
             canvas.repaint();
         }
     }
@@ -1077,20 +1100,13 @@ public class Sprite extends Component {
     }
 
     public void lt(double degrees) throws AbortException {
-        double radians = degrees * RADIANS_PER_DEGREE;
-        double newCurHeading = curHeading + radians;
-        if (newCurHeading < 0.0) {
-            newCurHeading += RADIANS_PER_CIRCLE;
-        } else if (newCurHeading > RADIANS_PER_CIRCLE) {
-            newCurHeading -= RADIANS_PER_CIRCLE;
-        }
+        double newCurDegrees = TGTrig.normalizeDegrees(curDegrees + degrees);
         if (canvas != null && showTurtle) {
-            if (spritePixels.setSpriteHeading(newCurHeading)) {
-                spriteImage = null;
+            if (spritePixels.setSpriteHeading(newCurDegrees * RADIANS_PER_DEGREE)) {
                 canvas.repaint();
             }
         }
-        setCurHeading(newCurHeading);
+        setCurHeading(newCurDegrees);
     }
 
     /**
@@ -1149,7 +1165,7 @@ public class Sprite extends Component {
      * 0.0,0.0 is at the center of the graphics canvas.
      */
     public TGPoint pos() {
-        return curPoint;
+        return new TGPoint(curX, curY);
     }
 
     /**
@@ -1228,20 +1244,13 @@ public class Sprite extends Component {
     }
 
     public void rt(double degrees) throws AbortException {
-        double radians = degrees * RADIANS_PER_DEGREE;
-        double newCurHeading = curHeading - radians;
-        if (newCurHeading < 0.0) {
-            newCurHeading += RADIANS_PER_CIRCLE;
-        } else if (newCurHeading > RADIANS_PER_CIRCLE) {
-            newCurHeading -= RADIANS_PER_CIRCLE;
-        }
+        double newCurDegrees = TGTrig.normalizeDegrees(curDegrees - degrees);
         if (canvas != null && showTurtle) {
-            if (spritePixels.setSpriteHeading(newCurHeading)) {
-                spriteImage = null;
+            if (spritePixels.setSpriteHeading(newCurDegrees * RADIANS_PER_DEGREE)) {
                 canvas.repaint();
             }
         }
-        setCurHeading(newCurHeading);
+        setCurHeading(newCurDegrees);
     }
 
     /**
@@ -1270,7 +1279,7 @@ public class Sprite extends Component {
     // Since this does not match the mathematical convention
     // of measuring angles counterclockwise from the positive
     // X axis, we must convert the parameter.  The module-wide
-    // variable (curHeading) contains the mathematically-
+    // variable (curDegrees) contains the mathematically-
     // correct heading, not Logo's point of view.
     //
     public void seth(float turtleSpaceDegrees) throws AbortException {
@@ -1289,14 +1298,12 @@ public class Sprite extends Component {
         double degrees = 360.0 - (turtleSpaceDegrees % 360.0);
         degrees += 90.0;
         degrees %= 360.0;
-        double newHeading = degrees * RADIANS_PER_DEGREE;
         if (canvas != null && showTurtle) {
-            if (spritePixels.setSpriteHeading(newHeading)) {
-                spriteImage = null;
+            if (spritePixels.setSpriteHeading(degrees * RADIANS_PER_DEGREE)) {
                 canvas.repaint();
             }
         }
-        setCurHeading(newHeading);
+        setCurHeading(degrees);
     }
 
     /**
@@ -1371,18 +1378,18 @@ public class Sprite extends Component {
             return;
         }
         int curFontSize = curFont.getSize();
-        int capsHt = fontSizes[curFontNumber].length - 1;
+        int capsHt = curFontSizes.length - 1;
         while (capsHt >= 0) {
-            if (fontSizes[curFontNumber][capsHt] <= curFontSize) {
+            if (curFontSizes[capsHt] <= curFontSize) {
                 break;
             }
             capsHt--;
         }
-        loadFontSizes(fontNumber);
+        curFontSizes = getFontSizes(fontNumber);
         curFontNumber = fontNumber;
         curFont = new Font(FONT_NAMES[curFontNumber / 4],
                 FONT_STYLES[curFontNumber % 4],
-                fontSizes[curFontNumber][capsHt]);
+                curFontSizes[capsHt]);
     }
 
     /**
@@ -1401,7 +1408,7 @@ public class Sprite extends Component {
         curTextAscent = size;
         curFont = new Font(FONT_NAMES[curFontNumber / 4],
                 FONT_STYLES[curFontNumber % 4],
-                fontSizes[curFontNumber][size]);
+                curFontSizes[size]);
     }
 
     /**
@@ -1477,7 +1484,6 @@ public class Sprite extends Component {
             curColor = color;
             if (canvas != null && showTurtle) {
                 if (spritePixels.setSpriteColor(color)) {
-                    spriteImage = null;
                     canvas.repaint();
                 }
             }
@@ -1680,8 +1686,6 @@ public class Sprite extends Component {
         if (newSpritePixels != null) {
             newSpritePixels.setSpriteHeading(curHeading);
             spritePixels = newSpritePixels;
-            spriteImage = null;
-            imageProducer = null;
             if (canvas != null) {
                 canvas.repaint();
             }
@@ -1693,7 +1697,9 @@ public class Sprite extends Component {
      * a method which visibly changes the Sprite's state is performed. To aid
      * debugging and/or optimizing a grapical program it can be helpful to
      * artificially slow down the drawing. When throttleSleepAmt is greater than
-     * zero, concerned methods suspend the current Thread for it's amount.
+     * zero, concerned methods take a step every throttleSleepAmt milliseconds,
+     * paced by the canvas' TGAnimationClock; time spent drawing counts towards
+     * the amount.
      */
     public synchronized void setThrottleSleepAmt(int newThrottleSleepAmt) {
         if (newThrottleSleepAmt <= 0) {
@@ -1729,14 +1735,13 @@ public class Sprite extends Component {
     }
 
     public void setx(double newX) throws AbortException {
-        TGPoint p2 = new TGPoint(newX, curPoint.yDoubleValue());
         if (canvas != null && penDown) {
-            canvas.addGraphOp(new TGLineOp(curPoint, p2, curColor, curPenSize, penPattern, typeLinecap));
+            canvas.addLine(curX, curY, newX, curY, curColor, curPenSize, penPattern, typeLinecap);
         }
         if (canvas != null && (penDown || showTurtle)) {
             canvas.repaint();
         }
-        setCurPoint(p2);
+        setCurPoint(newX, curY);
     }
 
     /**
@@ -1751,19 +1756,28 @@ public class Sprite extends Component {
      * @see #sety
      */
     public void setxy(double newX, double newY) throws AbortException {
-        setxy(new TGPoint(newX, newY));
+        if (curX == newX && curY == newY) {
+            return;
+        }
+        if (canvas != null && penDown) {
+            canvas.addLine(curX, curY, newX, newY, curColor, curPenSize, penPattern, typeLinecap);
+        }
+        if (canvas != null && (penDown || showTurtle)) {
+            canvas.repaint();
+        }
+        setCurPoint(newX, newY);
     }
 
     public void setxy(float newX, float newY) throws AbortException {
-        setxy(new TGPoint(newX, newY));
+        setxy((double) newX, (double) newY);
     }
 
     public void setxy(int newX, int newY) throws AbortException {
-        setxy(new TGPoint(newX, newY));
+        setxy((double) newX, (double) newY);
     }
 
     public void setxy(long newX, long newY) throws AbortException {
-        setxy(new TGPoint(newX, newY));
+        setxy((double) newX, (double) newY);
     }
 
     /**
@@ -1779,16 +1793,7 @@ public class Sprite extends Component {
      * @see #sety
      */
     public void setxy(TGPoint newPt) throws AbortException {
-        if (curPoint.equals(newPt)) {
-            return;
-        }
-        if (canvas != null && penDown) {
-            canvas.addGraphOp(new TGLineOp(curPoint, newPt, curColor, curPenSize, penPattern, typeLinecap));
-        }
-        if (canvas != null && (penDown || showTurtle)) {
-            canvas.repaint();
-        }
-        setCurPoint(newPt);
+        setxy(newPt.xDoubleValue(), newPt.yDoubleValue());
     }
 
     /**
@@ -1815,14 +1820,13 @@ public class Sprite extends Component {
     }
 
     public void sety(double newY) throws AbortException {
-        TGPoint p2 = new TGPoint(curPoint.xDoubleValue(), newY);
         if (canvas != null && penDown) {
-            canvas.addGraphOp(new TGLineOp(curPoint, p2, curColor, curPenSize, penPattern, typeLinecap));
+            canvas.addLine(curX, curY, curX, newY, curColor, curPenSize, penPattern, typeLinecap);
         }
         if (canvas != null && (penDown || showTurtle)) {
             canvas.repaint();
         }
-        setCurPoint(p2);
+        setCurPoint(curX, newY);
     }
 
     /**
@@ -1864,12 +1868,8 @@ public class Sprite extends Component {
      */
     public void st() {
         if (!showTurtle) {
-            if (spritePixels.setSpriteColor(curColor)) {
-                spriteImage = null;
-            }
-            if (spritePixels.setSpriteHeading(curHeading)) {
-                spriteImage = null;
-            }
+            spritePixels.setSpriteColor(curColor);
+            spritePixels.setSpriteHeading(curHeading);
             if (canvas != null) {
                 canvas.addSprite(this);
                 canvas.repaint();
@@ -1888,11 +1888,15 @@ public class Sprite extends Component {
         double leftX = xcor() - imgSideSiz / 2;
         double topY = ycor() + imgSideSiz / 2;
         TGPoint topLeftPoint = new TGPoint(leftX, topY);
-        int[] srcPix = spritePixels.getPixels();
-        int[] shapePixels = new int[srcPix.length];
-        System.arraycopy(srcPix, 0, shapePixels, 0, srcPix.length);
-        PixelRectangle pixRect = new PixelRectangle(shapePixels, imgSideSiz);
-        canvas.addGraphOp(new TGSetPixelsOp(topLeftPoint, pixRect));
+        int[] srcPix = spritePixels.getSharedPixels();
+        if (stampPixRect == null || stampPixRect.width != imgSideSiz
+                || !Arrays.equals(srcPix, stampPixRect.pixels)) {
+            int[] shapePixels = new int[srcPix.length];
+            System.arraycopy(srcPix, 0, shapePixels, 0, srcPix.length);
+            stampPixRect = new PixelRectangle(shapePixels, imgSideSiz);
+            stampOpaqueRuns = TGSetPixelsOp.opaqueRuns(shapePixels, imgSideSiz);
+        }
+        canvas.addGraphOp(new TGSetPixelsOp(topLeftPoint, stampPixRect, stampOpaqueRuns));
         canvas.repaint();
     }
 
@@ -1902,7 +1906,7 @@ public class Sprite extends Component {
      */
     public String toString() {
         StringBuffer sb = new StringBuffer("[Sprite@");
-        sb.append(curPoint.toString());
+        sb.append(pos().toString());
         sb.append(" heading=");
         sb.append(curHeading);
         if (showTurtle) {
@@ -1931,7 +1935,7 @@ public class Sprite extends Component {
      * @see #ycor
      */
     public double xcor() {
-        return curPoint.xDoubleValue();
+        return curX;
     }
 
     /**
@@ -1943,7 +1947,7 @@ public class Sprite extends Component {
      * @see #xcor
      */
     public double ycor() {
-        return curPoint.yDoubleValue();
+        return curY;
     }
 
 } // end class Sprite
@@ -1,6 +1,13 @@
 package com.guyhaas.tg;
 
 import java.awt.Color;
+import java.awt.Image;
+import java.awt.Rectangle;
+import java.awt.image.BufferedImage;
+import java.awt.image.ColorModel;
+import java.awt.image.DataBufferInt;
+import java.awt.image.Raster;
+import java.awt.image.WritableRaster;
 
 /**
  * SpritePixels is an abstract class that another class extends when it wants to
@@ -86,6 +93,12 @@ public class SpritePixels {
      */
     private static final double THREEQTR_CIRCLE_RADIANS = HALF_CIRCLE_RADIANS + QTR_CIRCLE_RADIANS;
 
+    /*
+    * How close, in degrees, a heading must be to a whole number of
+    * degrees for a ROTATE_ON Sprite to use the cached frame for it.
+     */
+    private static final double FRAME_HEADING_TOLERANCE = 1.0e-9;
+
 
     /*
     * With the ability of loading an image file as a shape for
@@ -186,6 +199,26 @@ public class SpritePixels {
      */
     private int[] spritePixels;
 
+    /*
+    * For ROTATE_ON Sprites: the un-rotated shape as known to
+    * TGRotationCache (null until needed or after baseSpritePixels[]
+    * change), the cached frame spritePixels[] currently is (null if
+    * it isn't), and this Sprite's own pixels for headings that are
+    * not cached along with the bounds of baseSpritePixels[]' non-zero
+    * pixels they are rotated from (null when not known).
+     */
+    private TGRotationCache.Shape rotationShape;
+    private Rectangle rotationBounds;
+    private TGRotationCache.Frame rotationFrame;
+    private int[] rotatedPixels;
+
+    /*
+    * Image drawn straight from the pixel array spritePixels[] was when
+    * it was made, see getImage().
+     */
+    private Image pixelsImage;
+    private int[] pixelsImagePixels;
+
     //
     // Constructors
     // ------------
@@ -735,14 +768,10 @@ public class SpritePixels {
     /*
     * Fill spritePixels[] to reflect current turtleHeading (in radians)
     * which is the amount of rotation needed since baseSpritePixels[] is
-    * aligned to 0.0.  I use a 'Reverse-Rotation' algorithm, computing
-    * which pixel in the original image maps to every pixel in the new
-    * image (vs projecting forward) to avoid holes due to rounding errors.
-    * Since I'm rotating around the center of the image (not its origin),
-    * three steps are needed:
-    * (1) translate origin to center,
-    * (2) reverse rotatation of pixel x,y, and
-    * (3) translate back to initial origin.
+    * aligned to 0.0.  ROTATE_ON Sprites headed a whole number of degrees
+    * take their pixels from TGRotationCache's frames, shared with other
+    * Sprites of the same shape and color; see TGRotationCache.rotate()
+    * for how pixels are rotated.
      */
     private void updateSpritePixels() {
         if (spritePixels == null) {
@@ -769,35 +798,27 @@ public class SpritePixels {
                 }
                 break;
             case ROTATE_ON:
-                int center = spriteSideSize / 2;
-                double cosTheta = Math.cos(turtleHeading);
-                double sinTheta = Math.sin(turtleHeading);
-                // first zap destination, make all pixels transparent
-                for (int y = 0; y < spriteSideSize; y++) {
-                    for (int x = 0; x < spriteSideSize; x++) {
-                        spritePixels[y * spriteSideSize + x] = 0;
+                double degrees = Math.toDegrees(turtleHeading);
+                double wholeDegrees = Math.rint(degrees);
+                if (Math.abs(degrees - wholeDegrees) < FRAME_HEADING_TOLERANCE
+                        && TGRotationCache.canCache(spriteSideSize)) {
+                    if (rotationShape == null) {
+                        rotationShape = TGRotationCache.getShape(baseSpritePixels, spriteSideSize);
                     }
+                    int frameDegrees = ((int) wholeDegrees % 360 + 360) % 360;
+                    rotationFrame = TGRotationCache.getFrame(rotationShape, frameDegrees);
+                    spritePixels = rotationFrame.pixels;
+                    break;
                 }
-                for (int row = 0; row < spriteSideSize; row++) {
-                    int rowIdx = row * spriteSideSize;
-                    int rowPrime = 2 * (row - center) + 1;
-                    for (int col = 0; col < spriteSideSize; col++) {
-                        int colPrime = 2 * (col - center) + 1;
-                        int srcX = (int) Math.rint(colPrime * cosTheta - rowPrime * sinTheta);
-                        srcX = (srcX - 1) / 2 + center;
-                        int srcY = (int) Math.rint(colPrime * sinTheta + rowPrime * cosTheta);
-                        srcY = (srcY - 1) / 2 + center;
-                        if (srcX < 0 || srcX >= spriteSideSize) {
-                            continue;
-                        }
-                        if (srcY < 0 || srcY >= spriteSideSize) {
-                            continue;
-                        }
-                        int pixelIndex = srcY * spriteSideSize + srcX;
-                        int pixel = baseSpritePixels[pixelIndex];
-                        spritePixels[rowIdx + col] = pixel;
-                    }
+                rotationFrame = null;
+                if (rotatedPixels == null) {
+                    rotatedPixels = new int[spriteSideSize * spriteSideSize];
                 }
+                if (rotationBounds == null) {
+                    rotationBounds = TGRotationCache.pixelBounds(baseSpritePixels, spriteSideSize);
+                }
+                spritePixels = rotatedPixels;
+                TGRotationCache.rotate(baseSpritePixels, spritePixels, spriteSideSize, rotationBounds, turtleHeading);
         }
 
     } //end updateSpritePixels()
@@ -915,6 +936,8 @@ public class SpritePixels {
             System.err.println(me + "y=" + y + outOfBounds);
         } else {
             baseSpritePixels[x + (y * spriteSideSize)] = rgbVal;
+            rotationShape = null;
+            rotationBounds = null;
         }
     }
 
@@ -925,9 +948,49 @@ public class SpritePixels {
      * Return a copy of this Sprite's pixels.
      */
     public int[] getPixels() {
+        return (spritePixels == null) ? null : spritePixels.clone();
+    }
+
+    /**
+     * Return this Sprite's pixels themselves, for looking at. They may be a
+     * TGRotationCache frame shared with other Sprites, so they must not be
+     * changed.
+     */
+    int[] getSharedPixels() {
         return spritePixels;
     }
 
+    /**
+     * Return an Image of this Sprite's current pixels, for TGCanvas to paint.
+     * The Image shares its pixels with this SpritePixels, nothing is copied,
+     * so it stays up to date as they change; a new one is only made when the
+     * pixels move to a different array. Frames shared through
+     * TGRotationCache come with their own Image. Like getSharedPixels(), it
+     * must not be changed.
+     */
+    Image getImage() {
+        if (rotationFrame != null) {
+            return rotationFrame.getImage();
+        }
+        if (pixelsImage == null || pixelsImagePixels != spritePixels) {
+            pixelsImage = sharedPixelsImage(spritePixels, spriteSideSize);
+            pixelsImagePixels = spritePixels;
+        }
+        return pixelsImage;
+    }
+
+    /**
+     * Return a TYPE_INT_ARGB Image, sideSize pixels square, whose pixels are
+     * the ones in the array provided; changes to one are changes to the other.
+     */
+    static BufferedImage sharedPixelsImage(int[] pixels, int sideSize) {
+        ColorModel colorModel = ColorModel.getRGBdefault();
+        DataBufferInt dataBuffer = new DataBufferInt(pixels, sideSize * sideSize);
+        WritableRaster raster = Raster.createPackedRaster(dataBuffer, sideSize, sideSize, sideSize,
+                new int[]{0xff0000, 0xff00, 0xff, 0xff000000}, null);
+        return new BufferedImage(colorModel, raster, false, null);
+    }
+
     /**
      * Return the length of a side of this Sprite's square array of pixels.
      */
@@ -969,6 +1032,8 @@ public class SpritePixels {
                         baseSpritePixels[pixIdx] = pixel;
                     }
                 }
+                rotationShape = null;
+                rotationBounds = null;
                 updateSpritePixels();
             }
             spriteColor = newColor;
@@ -0,0 +1,266 @@
+package com.guyhaas.tg;
+
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.LockSupport;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * TGAnimationClock paces the steps Sprites on a TGCanvas take, so that drawing
+ * can be slowed down to be watched, paused, and sped back up.
+ * <p>
+ * Each time a Sprite changes its state (moves or turns) it asks the clock for
+ * its next step. A shown Sprite with a throttle amount (see
+ * Sprite.setThrottleSleepAmt()) takes a step every that many milliseconds,
+ * otherwise the clock's own steps per second, if any, is used; hidden Sprites
+ * are never throttled, but are paced by the clock's steps per second. Steps are
+ * paced against deadlines, not by napping a fixed amount after each one, so
+ * the time a step takes to draw counts towards its interval: a throttled
+ * 10,000 step drawing takes 10,000 intervals, plus only whatever time the
+ * drawing itself takes beyond that. A Sprite that falls behind catches up by
+ * not waiting, unless it falls more than MAX_LAG_NANOS behind (e.g., while
+ * paused) in which case it starts pacing over from the current time.
+ * <p>
+ * The time warp scales all intervals: 2.0 runs twice as fast, 0.5 half as
+ * fast. While paused, every Sprite's next step waits for resume().
+ * <p>
+ * Waiting is done with LockSupport.parkNanos() and a Condition, not with
+ * Thread.sleep() or Object.wait(), so a Sprite run in a virtual thread gives
+ * up its carrier thread while it waits. Interrupting a waiting Thread ends the
+ * wait with an InterruptedException.
+ * <p>
+ * Methods are thread-safe.
+ */
+public class TGAnimationClock {
+
+    //
+    // Symbolic Constants
+    // -------- ---------
+
+    private static final String CLASS_NAME = "TGAnimationClock";
+
+    /*
+    * A Sprite further behind its deadline than this starts pacing over
+    * instead of taking steps as fast as it can to catch up.
+     */
+    private static final long MAX_LAG_NANOS = 250L * 1000 * 1000;
+
+    private static final double NANOS_PER_SECOND = 1000000000.0;
+
+    //
+    // Class Fields
+    // ----- ------
+
+    /*
+    * true between pause() and resume(); Sprites wait on resumed while it
+    * is, holding pauseLock.
+     */
+    private volatile boolean paused;
+    private final ReentrantLock pauseLock = new ReentrantLock();
+    private final Condition resumed = pauseLock.newCondition();
+
+    /*
+    * Interval between steps of Sprites that are not throttled, in
+    * nanoseconds, zero when they are not paced; and the rate it came from.
+     */
+    private volatile long stepNanos;
+    private volatile double stepsPerSecond;
+
+    /*
+    * How many times faster than real time intervals go by.
+     */
+    private volatile double timeWarp = 1.0;
+
+    //
+    // Constructor
+    // -----------
+    /**
+     * Instantiate a clock which is running, does not pace Sprites that are
+     * not throttled, and has no time warp.
+     */
+    public TGAnimationClock() {
+    }
+
+    //
+    // Methods
+    // -------
+    /**
+     * Return the number of steps per second Sprites that are not throttled
+     * take, zero if they are not paced.
+     *
+     * @see #setStepsPerSecond
+     */
+    public double getStepsPerSecond() {
+        return stepsPerSecond;
+    }
+
+    /**
+     * Return how many times faster than real time the clock runs.
+     *
+     * @see #setTimeWarp
+     */
+    public double getTimeWarp() {
+        return timeWarp;
+    }
+
+    /**
+     * Return true if the clock is paused.
+     */
+    public boolean isPaused() {
+        return paused;
+    }
+
+    /**
+     * Pause the clock. Sprites stop at their next step until resume() is
+     * invoked. Drawing already done is still painted.
+     */
+    public void pause() {
+        pauseLock.lock();
+        try {
+            paused = true;
+        } finally {
+            pauseLock.unlock();
+        }
+    }
+
+    /**
+     * Resume the clock after pause(). Sprites pick up pacing from the current
+     * time; they do not race to make up for the time spent paused.
+     */
+    public void resume() {
+        pauseLock.lock();
+        try {
+            paused = false;
+            resumed.signalAll();
+        } finally {
+            pauseLock.unlock();
+        }
+    }
+
+    /**
+     * Pace Sprites that are not throttled so that steps steps take millis
+     * milliseconds, e.g., so a drawing made of a known number of moves and
+     * turns takes a given amount of time.
+     *
+     * @param millis how long the steps should take
+     * @param steps how many steps there are
+     */
+    public void setDuration(long millis, int steps) {
+        if (millis <= 0 || steps <= 0) {
+            setStepsPerSecond(0);
+            return;
+        }
+        setStepsPerSecond(steps * 1000.0 / millis);
+    }
+
+    /**
+     * Set the number of steps per second Sprites that are not throttled take.
+     * Sprites with a throttle amount keep to it.
+     *
+     * @param rate steps per second; zero (the initial rate) means Sprites
+     * that are not throttled are not paced at all
+     */
+    public void setStepsPerSecond(double rate) {
+        if (!(rate > 0) || Double.isInfinite(rate)) {
+            stepsPerSecond = 0;
+            stepNanos = 0;
+            return;
+        }
+        stepsPerSecond = rate;
+        stepNanos = Math.max((long) (NANOS_PER_SECOND / rate), 1);
+    }
+
+    /**
+     * Set how many times faster than real time the clock runs; all step
+     * intervals, throttled or not, are divided by it.
+     *
+     * @param factor time warp, greater than zero; 1.0 is real time
+     */
+    public void setTimeWarp(double factor) {
+        if (!(factor > 0) || Double.isInfinite(factor)) {
+            sysErr("setTimeWarp: bad factor " + factor);
+            return;
+        }
+        timeWarp = factor;
+    }
+
+    /**
+     * Return true if a Sprite's next step would be waited for, i.e., the
+     * clock is paused or paces the Sprite.
+     *
+     * @param throttleNanos the Sprite's throttle amount in nanoseconds, zero if
+     * it is not throttled
+     */
+    boolean paces(long throttleNanos) {
+        return paused || throttleNanos > 0 || stepNanos > 0;
+    }
+
+    /**
+     * Wait for a Sprite's next step. Returns the deadline the step was paced
+     * against, for the Sprite to hand back on its next step.
+     *
+     * @param deadline what the previous awaitStep() returned, zero if there
+     * was none
+     * @param throttleNanos the Sprite's throttle amount in nanoseconds, zero if
+     * it is not throttled
+     */
+    long awaitStep(long deadline, long throttleNanos) throws InterruptedException {
+        long interval = (throttleNanos > 0) ? throttleNanos : stepNanos;
+        if (interval <= 0 && !paused) {
+            return 0;
+        }
+        awaitResume();
+        if (interval <= 0) {
+            return 0;
+        }
+        interval = Math.max((long) (interval / timeWarp), 1);
+        long now = System.nanoTime();
+        if (deadline == 0 || now - deadline > MAX_LAG_NANOS) {
+            deadline = now;
+        }
+        deadline += interval;
+        while (true) {
+            long remaining = deadline - System.nanoTime();
+            if (remaining <= 0) {
+                break;
+            }
+            LockSupport.parkNanos(this, remaining);
+            if (Thread.interrupted()) {
+                throw new InterruptedException();
+            }
+            if (paused) {
+                awaitResume();
+                return System.nanoTime();
+            }
+        }
+        return deadline;
+    }
+
+    //
+    // Private Methods
+    // ------- -------
+
+    /*
+    * print an error message to console tying it to this class
+     */
+    private static void sysErr(String errTxt) {
+        System.err.println(CLASS_NAME + "." + errTxt);
+    }
+
+    /*
+    * Wait while the clock is paused.
+     */
+    private void awaitResume() throws InterruptedException {
+        if (!paused) {
+            return;
+        }
+        pauseLock.lockInterruptibly();
+        try {
+            while (paused) {
+                resumed.await();
+            }
+        } finally {
+            pauseLock.unlock();
+        }
+    }
+
+} // end class TGAnimationClock
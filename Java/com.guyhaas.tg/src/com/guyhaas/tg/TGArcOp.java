@@ -2,7 +2,6 @@ package com.guyhaas.tg;
 
 import java.awt.BasicStroke;
 import java.awt.Color;
-import java.awt.Graphics;
 import java.awt.Graphics2D;
 import java.awt.image.BufferedImage;
 import java.awt.Rectangle;
@@ -14,7 +13,7 @@ import java.awt.geom.Rectangle2D;
  * <p>
  * @author Guy Haas
  */
-public class TGArcOp implements TGGraphicsOp {
+public class TGArcOp implements TGGraphicsOp, TGBoundedOp, TGContextOp {
 
     //
     // Symbolic Constants
@@ -35,9 +34,10 @@ public class TGArcOp implements TGGraphicsOp {
     // ----- ------
 
     /*
-    * Origin of the arc
+    * Origin of the arc, in TurtleSpace
      */
-    private TGPoint origin;
+    private double originX;
+    private double originY;
 
 
     /*
@@ -47,9 +47,10 @@ public class TGArcOp implements TGGraphicsOp {
 
 
     /*
-    * Top-left corner of the bounding rectangle
+    * Top-left corner of the bounding rectangle, in TurtleSpace
      */
-    private TGPoint topLeftCorner;
+    private double leftX;
+    private double topY;
 
 
     /*
@@ -129,9 +130,19 @@ public class TGArcOp implements TGGraphicsOp {
      */
     public TGArcOp(TGPoint origin, double radius, double strtAng, double arcAng,
             Color color, int penSz, float[] penPat) {
-        this.origin = origin;
-        topLeftCorner = new TGPoint(origin.xDoubleValue() - radius,
-                origin.yDoubleValue() + radius);
+        this(origin.xDoubleValue(), origin.yDoubleValue(), radius, strtAng, arcAng, color, penSz, penPat);
+    }
+
+    /**
+     * Return a TGArcOp object centered on (originX,originY) in TurtleSpace.
+     * Otherwise the same as the constructor taking a TGPoint.
+     */
+    TGArcOp(double originX, double originY, double radius, double strtAng, double arcAng,
+            Color color, int penSz, float[] penPat) {
+        this.originX = originX;
+        this.originY = originY;
+        leftX = originX - radius;
+        topY = originY + radius;
         this.radius = radius;
         width = height = (int) Math.round((2.0 * radius) - 1.0);
         startAngle = strtAng * DEGREES_PER_RADIAN;
@@ -153,6 +164,24 @@ public class TGArcOp implements TGGraphicsOp {
      *
      * @return Rectangle bounds of the pixels in the Image that were changed
      */
+    public Rectangle doIt(BufferedImage inMemoryImage) {
+        TGRenderContext context = new TGRenderContext(inMemoryImage);
+        try {
+            return doIt(context);
+        } finally {
+            context.dispose();
+        }
+    }
+
+    //
+    // TGContextOp Interface Methods
+    // ----------- --------- -------
+    /**
+     * Draw the arc with the render pass' Graphics2D and return a Rectangle
+     * which is a cliprect for the area of the Image that was changed.
+     *
+     * @param context where and with what to draw
+     */
     /*
     * From Java documentation of Graphics.arc(): "The resulting arc covers
     * an area width + 1 pixels wide by height + 1 pixels tall." So, this +1
@@ -162,7 +191,8 @@ public class TGArcOp implements TGGraphicsOp {
     * height are increased by two pixels and the origin is up and
     * left a single pixel.
      */
-    public Rectangle doIt(BufferedImage inMemoryImage) {
+    public Rectangle doIt(TGRenderContext context) {
+        BufferedImage inMemoryImage = context.getImage();
         int canvasWidth = inMemoryImage.getWidth();
         if (canvasWidth <= 0) {
             return null;
@@ -171,17 +201,8 @@ public class TGArcOp implements TGGraphicsOp {
         if (canvasHeight <= 0) {
             return null;
         }
-        Graphics2D g2 = (Graphics2D) inMemoryImage.getGraphics();
-        g2.setColor(penColor);
-        BasicStroke bs = null;
-        if (penPattern == null) {
-            bs = new BasicStroke((float) penSize, BasicStroke.CAP_BUTT, BasicStroke.JOIN_BEVEL);
-        } else {
-            bs = new BasicStroke((float) penSize, BasicStroke.CAP_BUTT, BasicStroke.JOIN_BEVEL, 0, penPattern, 0);
-        }
-        g2.setStroke(bs);
-        double imageLeftX = topLeftCorner.imageX((double) canvasWidth);
-        double imageTopY = topLeftCorner.imageY((double) canvasHeight);
+        double imageLeftX = canvasWidth / 2.0 + leftX;
+        double imageTopY = canvasHeight / 2.0 - topY;
         Arc2D arc = new Arc2D.Double(Arc2D.OPEN);
         arc.setFrame(imageLeftX, imageTopY, radius * 2.0, radius * 2.0);
         arc.setAngleStart(startAngle);
@@ -190,10 +211,62 @@ public class TGArcOp implements TGGraphicsOp {
                 (int) (Math.floor(imageTopY - (penSize / 2.0))) - 1,
                 (int) (Math.ceil(((radius * 2.0) + penSize))) + 2,
                 (int) (Math.ceil(((radius * 2.0) + penSize))) + 2);
-        g2.setClip(clipRect.x, clipRect.y, clipRect.width, clipRect.height);
+        Graphics2D g2 = context.getGraphics(penColor, (float) penSize, BasicStroke.CAP_BUTT,
+                BasicStroke.JOIN_BEVEL, penPattern, clipRect);
         g2.draw(arc);
-        g2.dispose();
         return clipRect;
     }
 
+    //
+    // TGBoundedOp Interface Methods
+    // ----------- --------- -------
+    /**
+     * Return the area of TurtleSpace this arc may paint: the square around its
+     * whole circle widened by the pen's size.
+     */
+    public Rectangle2D getTurtleBounds() {
+        double reach = radius + penSize + 1;
+        return new Rectangle2D.Double(originX - reach, originY - reach,
+                2 * reach, 2 * reach);
+    }
+
+    //
+    // Package Methods
+    // ------- -------
+    /*
+    * Accessors for the attributes of the arc, e.g., for TGRecorder
+    * encoding it. Angles are in radians, as the constructors take them.
+     */
+    double getArcAngle() {
+        return arcAngle / DEGREES_PER_RADIAN;
+    }
+
+    double getOriginX() {
+        return originX;
+    }
+
+    double getOriginY() {
+        return originY;
+    }
+
+    Color getPenColor() {
+        return penColor;
+    }
+
+    float[] getPenPattern() {
+        return penPattern;
+    }
+
+    int getPenSize() {
+        return penSize;
+    }
+
+    double getRadius() {
+        return radius;
+    }
+
+    double getStartAngle() {
+        return startAngle / DEGREES_PER_RADIAN;
+    }
+
 } // end class TGArcOp
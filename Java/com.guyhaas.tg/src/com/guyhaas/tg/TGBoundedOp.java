@@ -0,0 +1,22 @@
+package com.guyhaas.tg;
+
+import java.awt.geom.Rectangle2D;
+
+/**
+ * TGBoundedOp is implemented by TGGraphicsOp classes which can tell, before
+ * they are performed, what part of TurtleSpace they will paint.
+ * <p>
+ * TGCanvas uses this to grow its graphics Image so that nothing is lost when
+ * a turtle wanders beyond it. Operations which do not implement TGBoundedOp are
+ * clipped to the Image as it is.
+ */
+interface TGBoundedOp {
+
+    /**
+     * Return a Rectangle, in TurtleSpace coordinates, enclosing all pixels
+     * this operation may paint. Its y field is the bottom-most coordinate;
+     * TurtleSpace y increases upwards.
+     */
+    public Rectangle2D getTurtleBounds();
+
+} // end interface TGBoundedOp
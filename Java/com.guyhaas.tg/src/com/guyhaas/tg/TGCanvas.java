@@ -4,6 +4,7 @@ import java.awt.Color;
 import java.awt.Component;
 import java.awt.Container;
 import java.awt.Dimension;
+import java.awt.EventQueue;
 import java.awt.event.FocusEvent;
 import java.awt.event.FocusListener;
 import java.awt.event.InputEvent;
@@ -15,9 +16,18 @@ import java.awt.event.MouseMotionListener;
 import java.awt.Graphics;
 import java.awt.Image;
 import java.awt.image.BufferedImage;
-import java.awt.image.PixelGrabber;
+import java.awt.image.DataBufferInt;
+import java.awt.geom.Rectangle2D;
 import java.awt.Rectangle;
+import java.io.File;
+import java.io.IOException;
 import java.lang.Math;
+import java.util.Arrays;
+import java.util.Timer;
+import java.util.TimerTask;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.LockSupport;
+import javax.imageio.ImageIO;
 
 /**
  * This class is an implementation of a graphics canvas window for TG. All
@@ -39,12 +49,100 @@ import java.lang.Math;
  * - in-memory Image maintained with buffered operations to improve graphics
  * display performance.
  * <p>
+ * - the in-memory Image starts out just big enough to cover the canvas and
+ * grows as turtles draw beyond its edges, so a small drawing only costs a
+ * small Image. It is one Image covering the bounding box of everything drawn,
+ * not just what has been drawn on, and it is capped (see GI_MAX_PIXELS);
+ * drawing beyond the cap, or beyond what memory allows, is clipped.
+ * <p>
+ * - changed areas of the in-memory Image are tracked as a grid of tiles; only
+ * dirty tiles are copied to the display. The whole visible Image is only
+ * redrawn when the AWT says some of it has been exposed.
+ * <p>
+ * - the queue of pending operations is bounded. What happens when a turtle
+ * gets too far ahead of the painting is selectable, see setQueueLimit().
+ * <p>
+ * - repaints are paced: the canvas is repainted at most a set number of times
+ * per second (60 initially, see setFrameRate()) no matter how many changes are
+ * made between frames, or immediately by flush().
+ * <p>
+ * - a Thread may batch up its drawing, see beginBatch(). Operations are then
+ * queued all at once, and the canvas repainted once, when the batch ends.
+ * <p>
+ * - optionally, a render Thread which performs the buffered operations so that
+ * paint() only has to copy finished pixels to the display.
+ * <p>
+ * - the in-memory Image is a plain BufferedImage, so a TGCanvas works without
+ * a display (java.awt.headless=true). It never gets painted in this case; use
+ * flush() to perform queued operations and exportPicture() to save the result.
+ * As an example:
+ * <pre>
+ *     TGCanvas canvas = new TGCanvas(600, 600);
+ *     Sprite turtle = new Sprite(canvas);
+ *     turtle.ht();
+ *     for (int side = 0; side &lt; 4; side++) {
+ *         turtle.fd(100);
+ *         turtle.rt(90);
+ *     }
+ *     canvas.exportPicture(new File("square.png"), "png");
+ * </pre>
+ * <p>
  * @author Guy Haas
  */
 public class TGCanvas extends Component
         implements FocusListener, KeyListener,
         /*implements*/ MouseListener, MouseMotionListener {
 
+    //
+    // Nested Classes
+    // ------ -------
+
+    /*
+    * A Thread's batch of graphics operations, see beginBatch(). Only
+    * touched by the Thread it belongs to.
+     */
+    private static final class OpBatch {
+
+        private static final int INIT_NUM_OPS = 256;
+
+        int depth;
+        boolean repaintWanted;
+        TGGraphicsOp[] ops = new TGGraphicsOp[INIT_NUM_OPS];
+        int numOps;
+
+        // queued early once numOps plus numRunLines reaches it, when
+        // greater than zero, see beginBatch(int)
+        int maxOps;
+
+        // the polyline in ops that addLine() is extending and the
+        // number of lines it has added to it
+        TGPolylineOp lineRun;
+        int numRunLines;
+
+        void add(TGGraphicsOp op) {
+            if (numOps == ops.length) {
+                TGGraphicsOp[] newOps = new TGGraphicsOp[ops.length * 2];
+                System.arraycopy(ops, 0, newOps, 0, numOps);
+                ops = newOps;
+            }
+            ops[numOps++] = op;
+        }
+
+        void clear() {
+            if (ops.length > INIT_NUM_OPS) {
+                ops = new TGGraphicsOp[INIT_NUM_OPS];
+            } else {
+                for (int idx = 0; idx < numOps; idx++) {
+                    ops[idx] = null;
+                }
+            }
+            numOps = 0;
+            lineRun = null;
+            numRunLines = 0;
+        }
+
+    }
+
     //
     // Symbolic Constants
     // -------- ---------
@@ -134,6 +232,31 @@ public class TGCanvas extends Component
     public static final int LAWNGREEN = 30;
     public static final int OLIVE = 31;
 
+    /**
+     * Queue overflow policy: a Thread adding a graphics operation to a full
+     * queue waits for queued operations to be performed.
+     *
+     * @see #setQueueLimit
+     */
+    public static final int QUEUE_BLOCK = 0;
+
+    /**
+     * Queue overflow policy: a Thread adding a graphics operation to a full
+     * queue performs the queued operations itself.
+     *
+     * @see #setQueueLimit
+     */
+    public static final int QUEUE_RENDER_INLINE = 1;
+
+    /**
+     * Queue overflow policy: graphics operations which do not fit in the queue
+     * are kept in a compact encoded form until there is room; once that is
+     * full too, as with QUEUE_BLOCK.
+     *
+     * @see #setQueueLimit
+     */
+    public static final int QUEUE_SPILL = 2;
+
     /**
      * The maximum value for a Logo color which require conversion to RGB colors
      * used by Java.
@@ -197,25 +320,49 @@ public class TGCanvas extends Component
 
 
     /*
-    * The graphics canvas image dimensions should be odd to allow for
+    * The graphics canvas image dimensions are always odd to allow for
     * zero at center and an equal number of pixels above/below and
-    * left/right of the center.
+    * left/right of the center. The image grows as needed but never to
+    * more than this number of pixels; beyond that drawing is clipped.
+    * Growing needs memory for both the old and new images at once.
+     */
+    private static final int GI_MAX_PIXELS = 32 * 1024 * 1024;
+
+
+    /*
+    * Maximum number of pending graphics operations removed from the
+    * queue in one gulp by renderGraphics().
+     */
+    private final static int GRAFOPS_BATCH_SIZE = 1000;
+
+
+    /*
+    * Initial maximum number of graphics operations in the queue, and what
+    * to do when it is full.
+     */
+    private static final int INIT_QUEUE_LIMIT = 100000;
+    private static final int INIT_QUEUE_POLICY = QUEUE_BLOCK;
+
+
+    /*
+    * Initial maximum number of repaints per second.
      */
-    private static final int GI_HEIGHT = 1201;
-    private static final int GI_WIDTH = 2001;
+    private static final int INIT_FRAME_RATE = 60;
 
 
     /*
-    * initial size of pending graphics operations buffer (an array)
+    * Name given to the Thread which sends paced repaint requests to the
+    * AWT for all TGCanvas objects.
      */
-    private final static int INIT_NUM_GRAFOPS = 1000;
+    private static final String REPAINT_TIMER_NAME = "TGCanvas Repaint";
 
 
     /*
-    * Incremental growth amount when need to expand the graphics
-    * operations array.
+    * Milliseconds a Thread adding an operation to a full queue waits
+    * for anybody to perform some before, with QUEUE_BLOCK, it performs
+    * them itself.
      */
-    private final static int INCR_NUM_GRAFOPS = 500;
+    private static final long QUEUE_BLOCK_TIMEOUT = 100;
 
 
     /*
@@ -224,6 +371,13 @@ public class TGCanvas extends Component
     private static final int INIT_PEN_SIZE = 2;
 
 
+    /*
+    * Name given to the Thread performing graphics operations when in
+    * render Thread mode.
+     */
+    private static final String RENDER_THREAD_NAME = "TGCanvas Render";
+
+
     /*
     * Number of TGKeyHandler objects supported.  As of v.9.29 (09/17/08)
     * only one object (TGDriver) registers for callbacks.
@@ -261,11 +415,6 @@ public class TGCanvas extends Component
     private int canvasHeight;
     private int canvasWidth;
 
-    /*
-    * number of graphics operations that are buffered in graphicsOps array
-     */
-    private int numGraphicsOps;
-
     /*
     * position of mouse when last clicked or moved within the graphics canvas
      */
@@ -295,9 +444,18 @@ public class TGCanvas extends Component
 
     /*
     * in-memory Image for the composite graphics - all the stuff on the
-    * display except for the Sprite(s)
+    * display except for the Sprite(s). Only replaced while holding
+    * renderLock; see initGraphicsImage() and ensureGraphicsImageCovers().
+     */
+    private volatile BufferedImage graphicsImage;
+
+    /*
+    * set once we've complained about graphicsImage reaching its maximum
+    * size, and the most pixels it may have: GI_MAX_PIXELS, or less once
+    * there hasn't been memory for a bigger one
      */
-    private BufferedImage graphicsImage;
+    private boolean graphicsImageMaxed;
+    private long graphicsImageMaxPixels = GI_MAX_PIXELS;
 
     /*
     * clipRects used to draw Sprite images
@@ -305,9 +463,157 @@ public class TGCanvas extends Component
     private Rectangle[] spriteClipRect;
 
     /*
-    * a list/queue of Graphics operations pending processing
+    * a queue of Graphics operations pending processing. Any number of
+    * Threads may append to it without locking; operations are only
+    * removed while holding renderLock.
+     */
+    private TGOpQueue graphicsOps;
+
+    /*
+    * held while pending operations are removed from graphicsOps and
+    * performed; notified each time this is done so Threads waiting for
+    * the queue to empty can check again.
      */
-    private TGGraphicsOp[] graphicsOps;
+    private final Object renderLock = new Object();
+
+    /*
+    * count of operations performed, guarded by renderLock. Lets a Thread
+    * waiting for room in the queue know if anybody is making progress.
+     */
+    private long numOpsPerformed;
+
+    /*
+    * maximum number of operations in graphicsOps (zero for no limit) and
+    * the QUEUE_XXX policy for what happens when it is reached
+     */
+    private volatile int queueLimit;
+    private volatile int queuePolicy;
+
+    /*
+    * most operations ever pending, both queued and spilled
+     */
+    private final AtomicInteger queueHighWater = new AtomicInteger();
+
+    /*
+    * operations which did not fit in graphicsOps with the QUEUE_SPILL
+    * policy, guarded by spillLock. While any are spilled, spilling is
+    * true and new operations are spilled too so they stay in order;
+    * spillFull is true while spilledOps is full.
+     */
+    private TGOpSpill spilledOps;
+    private final Object spillLock = new Object();
+    private volatile boolean spilling;
+    private volatile boolean spillFull;
+    private volatile int numSpilledOps;
+
+    /*
+    * each Thread's batch of graphics operations and the number of Threads
+    * with a batch open; openBatch is only looked at when there are some
+     */
+    private final ThreadLocal<OpBatch> openBatch = new ThreadLocal<OpBatch>() {
+        protected OpBatch initialValue() {
+            return new OpBatch();
+        }
+    };
+    private final AtomicInteger numOpenBatches = new AtomicInteger();
+
+    /*
+    * where graphics operations are recorded, see setRecorder(); null when
+    * they are not
+     */
+    private volatile TGRecorder recorder;
+
+    /*
+    * Held, while recording, from recording operations until they are
+    * queued, so they are recorded in the order they are queued in; and by
+    * clean() and setbg(), taking renderLock inside it.
+     */
+    private final Object recordLock = new Object();
+
+    /*
+    * the polyline addLine() last queued, while it is still the newest
+    * operation added and so may be appended to (null if there is none),
+    * and the number of lines appended to polylines not yet drawn; these
+    * count against queueLimit like operations do
+     */
+    private volatile TGPolylineOp lineRun;
+    private final AtomicInteger numRunLines = new AtomicInteger();
+
+    /*
+    * Timer shared by all TGCanvas objects for sending repaint requests
+    * which have been put off until the next frame. Created when first
+    * needed.
+     */
+    private static Timer repaintTimer;
+
+    /*
+    * Repaint pacing, see setFrameRate(). pendingRepaint is the area of
+    * the canvas waiting for the next frame (null if none), frameDue is
+    * when (System.nanoTime()) the next frame may be sent, and
+    * repaintScheduled is true while a task on repaintTimer will send it.
+    * All guarded by repaintLock.
+     */
+    private int frameRate;
+    private Rectangle pendingRepaint;
+    private long frameDue;
+    private boolean repaintScheduled;
+    private final Object repaintLock = new Object();
+
+    /*
+    * operations removed from graphicsOps in one gulp, reused
+     */
+    private TGGraphicsOp[] opBatch;
+
+    /*
+    * Graphics2D and pen state shared by the operations performed in a
+    * pass of renderGraphics(), guarded by renderLock
+     */
+    private final TGRenderContext renderContext = new TGRenderContext();
+
+    /*
+    * Draw one pixel wide lines anti-aliased? See setAntialiasedLines().
+     */
+    private volatile boolean antialiasedLines;
+
+    /*
+    * when not null, the Thread which performs queued graphics operations
+    * instead of paint(). See setRenderThread().
+     */
+    private volatile Thread renderThread;
+
+    /*
+    * tiles of graphicsImage changed since paint() last copied them to the
+    * display; replaced along with graphicsImage
+     */
+    private volatile TGDirtyTiles dirtyTiles;
+
+    /*
+    * dirty tiles (in graphicsImage coordinates) taken by paint() that it
+    * is copying to the display, and the next one to copy
+     */
+    private Rectangle[] paintTiles;
+    private int paintTileNum;
+
+    /*
+    * area of the canvas which must be completely redrawn by the next
+    * paint(), e.g., after we've been resized or partially covered
+    * stuff has been exposed; guarded by refreshLock. Null if nothing
+    * but dirty tiles and Sprites need to be drawn.
+     */
+    private Rectangle refreshRect;
+    private final Object refreshLock = new Object();
+
+    /*
+    * area we have asked the AWT to repaint since the last paint(); guarded
+    * by refreshLock. Whatever paint() is asked to paint beyond it was not
+    * asked for by us, e.g., it has been exposed, and is completely redrawn.
+     */
+    private Rectangle repaintAsked;
+
+    /*
+    * paces the steps of Sprites drawing on us
+     */
+    private final TGAnimationClock animationClock = new TGAnimationClock();
 
     /*
     * array of Sprites that want to be displayed 
@@ -353,8 +659,12 @@ public class TGCanvas extends Component
         xCenter = canvasWidth / 2;
         yCenter = canvasHeight / 2;
         backgroundColor = INIT_BACKGROUND;
-        graphicsOps = new TGGraphicsOp[INIT_NUM_GRAFOPS];
-        numGraphicsOps = 0;
+        graphicsOps = new TGOpQueue();
+        spilledOps = new TGOpSpill();
+        queueLimit = INIT_QUEUE_LIMIT;
+        queuePolicy = INIT_QUEUE_POLICY;
+        frameRate = INIT_FRAME_RATE;
+        opBatch = new TGGraphicsOp[GRAFOPS_BATCH_SIZE];
         keyHandlers = new TGKeyHandler[NUM_KEYHANDLERS];
         tgMouseHandlers = new TGMouseHandler[NUM_MOUSEHANDLERS];
         spriteClipRect = new Rectangle[Params.MAX_TURTLES];
@@ -631,38 +941,149 @@ public class TGCanvas extends Component
     // ------- -------
     private void clearGraphicsImage() {
         if (graphicsImage != null) {
+            int giWidth = graphicsImage.getWidth();
+            int giHeight = graphicsImage.getHeight();
             Graphics giGraphics = graphicsImage.getGraphics();
-            giGraphics.setClip(0, 0, GI_WIDTH - 1, GI_HEIGHT - 1);
+            giGraphics.setClip(0, 0, giWidth, giHeight);
             giGraphics.setColor(backgroundColor);
-            giGraphics.fillRect(0, 0, GI_WIDTH - 1, GI_HEIGHT - 1);
+            giGraphics.fillRect(0, 0, giWidth, giHeight);
             if (backgroundPicture != null) {
-                int x = GI_WIDTH / 2 - backgroundPicture.getWidth(this) / 2;
-                int y = (GI_HEIGHT - backgroundPicture.getHeight(this)) / 2;
+                int x = giWidth / 2 - backgroundPicture.getWidth(this) / 2;
+                int y = (giHeight - backgroundPicture.getHeight(this)) / 2;
                 giGraphics.drawImage(backgroundPicture, x, y, this);
                 backgroundPicture = null;
             }
             giGraphics.setColor(INIT_PEN_COLOR);
             giGraphics.dispose();
+            dirtyTiles.markAll();
         }
     }
 
+    /*
+    * Grow graphicsImage, if needed, so that it extends at least halfWidth
+    * pixels to the left and right of its center and halfHeight pixels
+    * above and below it. What has been drawn so far is copied into the
+    * middle of the new Image.
+    *
+    * Sides grow by at least half again each time so that a turtle slowly
+    * wandering away does not cost a copy of the Image per line drawn.
+    * Must be invoked holding renderLock.
+     */
+    private void ensureGraphicsImageCovers(double halfWidth, double halfHeight) {
+        BufferedImage oldImage = graphicsImage;
+        int oldWidth = oldImage.getWidth();
+        int oldHeight = oldImage.getHeight();
+        if (!(halfWidth > oldWidth / 2) && !(halfHeight > oldHeight / 2)) {
+            return;
+        }
+        if (!(halfWidth < graphicsImageMaxPixels) || !(halfHeight < graphicsImageMaxPixels)) {
+            noteGraphicsImageMaxed();
+            return;
+        }
+        int newHalfWidth = Math.max(oldWidth / 2, roundUpToTile(halfWidth));
+        int newHalfHeight = Math.max(oldHeight / 2, roundUpToTile(halfHeight));
+        int grownHalfWidth = newHalfWidth;
+        if (newHalfWidth > oldWidth / 2) {
+            grownHalfWidth = Math.max(newHalfWidth, roundUpToTile(oldWidth * 0.75));
+        }
+        int grownHalfHeight = newHalfHeight;
+        if (newHalfHeight > oldHeight / 2) {
+            grownHalfHeight = Math.max(newHalfHeight, roundUpToTile(oldHeight * 0.75));
+        }
+        if ((2L * newHalfWidth + 1) * (2L * newHalfHeight + 1) > graphicsImageMaxPixels) {
+            noteGraphicsImageMaxed();
+            return;
+        }
+        BufferedImage newImage = null;
+        if ((2L * grownHalfWidth + 1) * (2L * grownHalfHeight + 1) <= graphicsImageMaxPixels) {
+            newImage = newGraphicsImage(grownHalfWidth, grownHalfHeight);
+        }
+        if (newImage == null) {
+            newImage = newGraphicsImage(newHalfWidth, newHalfHeight);
+        }
+        if (newImage == null) {
+            noteGraphicsImageMaxed();
+            return;
+        }
+        int newWidth = newImage.getWidth();
+        int newHeight = newImage.getHeight();
+        Graphics giGraphics = newImage.getGraphics();
+        giGraphics.setColor(backgroundColor);
+        giGraphics.fillRect(0, 0, newWidth, newHeight);
+        giGraphics.drawImage(oldImage, (newWidth - oldWidth) / 2, (newHeight - oldHeight) / 2, null);
+        giGraphics.dispose();
+        TGDirtyTiles newTiles = new TGDirtyTiles(newWidth, newHeight, TGDirtyTiles.DEFAULT_TILE_SIZE);
+        newTiles.mark(new Rectangle((newWidth - canvasWidth) / 2, (newHeight - canvasHeight) / 2,
+                canvasWidth, canvasHeight));
+        graphicsImage = newImage;
+        dirtyTiles = newTiles;
+    }
 
     /*
-    * An attempt has been made to append another graphics operation to
-    * the queue of outstanding ones and there is no room for it. Allocate
-    * a new larger queue and transfer entries from old queue into it.
+    * Return true if an Image drawn centered on the canvas covers all of it.
      */
-    private void expandGraphicsOps() {
-        TGGraphicsOp[] oldGraphicsOps = graphicsOps;
-        graphicsOps = new TGGraphicsOp[oldGraphicsOps.length + INCR_NUM_GRAFOPS];
-        System.arraycopy(oldGraphicsOps, 0, graphicsOps, 0, numGraphicsOps);
+    private boolean imageCoversCanvas(BufferedImage image) {
+        return image.getWidth() > canvasWidth && image.getHeight() > canvasHeight;
     }
 
+    /*
+    * The graphics Image is created directly, not with createImage(), so
+    * we do not need a peer (a display) to have one. It is made just big
+    * enough to cover the canvas and a pending background picture. Must
+    * be invoked holding renderLock.
+     */
     private void initGraphicsImage() {
-        graphicsImage = (BufferedImage) createImage(GI_WIDTH, GI_HEIGHT);
+        double halfWidth = canvasWidth / 2 + 1;
+        double halfHeight = canvasHeight / 2 + 1;
+        if (backgroundPicture != null) {
+            halfWidth = Math.max(halfWidth, backgroundPicture.getWidth(this) / 2 + 1);
+            halfHeight = Math.max(halfHeight, backgroundPicture.getHeight(this) / 2 + 1);
+        }
+        int giWidth = 2 * roundUpToTile(halfWidth) + 1;
+        int giHeight = 2 * roundUpToTile(halfHeight) + 1;
+        dirtyTiles = new TGDirtyTiles(giWidth, giHeight, TGDirtyTiles.DEFAULT_TILE_SIZE);
+        graphicsImage = new BufferedImage(giWidth, giHeight, BufferedImage.TYPE_INT_RGB);
+        graphicsImageMaxed = false;
+        graphicsImageMaxPixels = GI_MAX_PIXELS;
         clearGraphicsImage();
     }
 
+    /*
+    * Return a new graphics Image extending halfWidth pixels to the left and
+    * right of its center and halfHeight pixels above and below it, null if
+    * there isn't enough memory for it. In the latter case no Image that
+    * big is tried again until the graphics Image is reinitialized.
+     */
+    private BufferedImage newGraphicsImage(int halfWidth, int halfHeight) {
+        int width = 2 * halfWidth + 1;
+        int height = 2 * halfHeight + 1;
+        try {
+            return new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+        } catch (OutOfMemoryError oome) {
+            graphicsImageMaxPixels = Math.min(graphicsImageMaxPixels, (long) width * height - 1);
+            return null;
+        }
+    }
+
+    /*
+    * Complain, once, that graphicsImage can not grow any bigger.
+     */
+    private void noteGraphicsImageMaxed() {
+        if (!graphicsImageMaxed) {
+            graphicsImageMaxed = true;
+            sysErr("ensureGraphicsImageCovers(): graphics image at maximum size, drawing clipped");
+        }
+    }
+
+    /*
+    * Return the smallest multiple of the tile size at least as big as a
+    * provided length.
+     */
+    private static int roundUpToTile(double length) {
+        int tileSize = TGDirtyTiles.DEFAULT_TILE_SIZE;
+        return (int) Math.ceil(length / tileSize) * tileSize;
+    }
+
 
     /*
     * Return a Logo color number given a java.awt.Color object.
@@ -683,182 +1104,846 @@ public class TGCanvas extends Component
 
 
     /*
-    * Apply all outstanding graphics operations to graphicsImage and
-    * return a clipRect for area changed.
-     */
-    private Rectangle renderGraphics() {
-        int giLeftX = GI_WIDTH;
-        int giRightX = -1;
-        int giUpperY = GI_HEIGHT;
-        int giLowerY = -1;
-        if (graphicsImage == null) {
-            initGraphicsImage();
-            giLeftX = 0;
-            giRightX = GI_WIDTH - 1;
-            giUpperY = 0;
-            giLowerY = GI_HEIGHT - 1;
-        }
-        synchronized (graphicsOps) {
-            for (int opIdx = 0; opIdx < numGraphicsOps; opIdx++) {
-                TGGraphicsOp op = graphicsOps[opIdx];
-                graphicsOps[opIdx] = null;
-                Rectangle clipRect = null;
-                try {
-                    clipRect = op.doIt(graphicsImage);
-                } catch (NullPointerException npe) {
-                    sysErr("renderGraphics(): " + npe + " performing " + op);
-                }
-                if (clipRect != null) {
-                    if (clipRect.x < giLeftX) {
-                        giLeftX = clipRect.x;
-                    }
-                    if (clipRect.y < giUpperY) {
-                        giUpperY = clipRect.y;
-                    }
-                    int coord = clipRect.x + clipRect.width - 1;
-                    if (coord > giRightX) {
-                        giRightX = coord;
-                    }
-                    coord = clipRect.y + clipRect.height - 1;
-                    if (coord > giLowerY) {
-                        giLowerY = coord;
-                    }
-                }
+    * Note that an area of the canvas must be completely redrawn by the
+    * next paint().
+     */
+    private void addRefreshRect(Rectangle rect) {
+        synchronized (refreshLock) {
+            if (refreshRect == null) {
+                refreshRect = new Rectangle(rect);
+            } else {
+                refreshRect.add(rect);
             }
-            numGraphicsOps = 0;
-            graphicsOps.notifyAll();
-        }
-        int width = (giRightX + 1) - giLeftX;
-        int widthInset = (GI_WIDTH - canvasWidth) / 2;
-        int canvasLeftX = giLeftX - widthInset;
-        if (canvasLeftX < 0) // if negative, at least some of the
-        {                         // painted pixels are to the left of
-            width += canvasLeftX;  // the canvas, so adjust width
-            canvasLeftX = 0;       // appropriately and reset left-most
-        }                         // pixel number
-        if (width > canvasWidth) {
-            width = canvasWidth;
-        }
-        int height = (giLowerY + 1) - giUpperY;
-        int heightInset = (GI_HEIGHT - canvasHeight) / 2;
-        int canvasUpperY = giUpperY - heightInset;
-        if (canvasUpperY < 0) {
-            height += canvasUpperY;
-            canvasUpperY = 0;
-        }
-        if (height > canvasHeight) {
-            height = canvasHeight;
-        }
-        if (height > 0 && width > 0) {
-            return new Rectangle(canvasLeftX, canvasUpperY, width, height);
-        }
-        return null;
-
-    } // end renderGraphics()
+        }
+    }
 
 
     /*
-    * print an error message to console tying it to this class
+    * Apply all outstanding graphics operations to graphicsImage, marking
+    * the tiles they change dirty. Runs of connected lines drawn with the
+    * same pen are drawn as one TGPolylineOp. Lines and arcs share one
+    * Graphics2D, see TGRenderContext.
+    *
+    * Only the operations queued when we start are performed so that a
+    * busy turtle can not keep us here forever; ones that arrive while
+    * we work are left for the next paint().
      */
-    private void sysErr(String errTxt) {
-        System.err.println(CLASS_NAME + "." + errTxt);
+    private void renderGraphics() {
+        renderGraphics(Integer.MAX_VALUE);
     }
 
-    //
-    // Overridden Component methods
-    // ---------- --------- -------
-    /**
-     * Paints this Component.
-     * <p>
-     * Something has occured that requires updating the graphics canvas. As an
-     * example, TGGraphicsOps have been queued to be performed, or a Sprite
-     * whose image is being displayed has moved or rotated, or the AWT has
-     * decided we need to redraw at least some subset of our pixels, e.g.,
-     * partially covered stuff (by some other application on the desktop) has
-     * moved/gone away, etc...
+
+    /*
+    * Apply up to maxOps of the oldest outstanding graphics operations to
+    * graphicsImage.
      */
-    public void paint(Graphics g) {
-        Rectangle rect = g.getClipBounds();
-        int heightDiff = (GI_HEIGHT - canvasHeight) / 2;
-        int widthDiff = (GI_WIDTH - canvasWidth) / 2;
-        switch (paintState) {
-            case PAINT_REFRESH:
-                if (graphicsImage == null) {
-                    g.setColor(backgroundColor);
-                    g.fillRect(0, 0, canvasWidth, canvasHeight);
-                } else {
-                    if (!g.drawImage(graphicsImage, -widthDiff, -heightDiff, this)) {
-                        return;
-                    }
-                }
-                paintState = PAINT_DRAW_GRAPHICS;
-            case PAINT_DRAW_GRAPHICS:
-                rect = renderGraphics();
-                if (rect != null) {
-                    g.setClip(rect);
-                    if (!g.drawImage(graphicsImage, -widthDiff, -heightDiff, this)) {
-                        return;
-                    }
+    private void renderGraphics(int maxOps) {
+        synchronized (renderLock) {
+            if (graphicsImage == null) {
+                initGraphicsImage();
+            } else {
+                ensureGraphicsImageCovers(canvasWidth / 2 + 1, canvasHeight / 2 + 1);
+            }
+            int numPending = Math.min(maxOps, graphicsOps.size() + numSpilledOps);
+            while (numPending > 0) {
+                int numOps = drainGraphOps(opBatch, numPending);
+                if (numOps == 0) {
+                    break;
                 }
-                paintState = PAINT_ERASE_TURTLES;
-                paintSpriteNum = 0;
-            case PAINT_ERASE_TURTLES:
-                while (paintSpriteNum < spriteClipRect.length) {
-                    if ((rect = spriteClipRect[paintSpriteNum]) != null) {
-                        g.setClip(rect);
-                        if (!g.drawImage(graphicsImage, -widthDiff, -heightDiff, this)) {
-                            return;
+                numPending -= numOps;
+                numOpsPerformed += numOps;
+                renderContext.setAntialiasing(antialiasedLines);
+                for (int opIdx = 0; opIdx < numOps; opIdx++) {
+                    TGGraphicsOp op = opBatch[opIdx];
+                    int numLines = TGPolylineOp.chainLength(opBatch, opIdx, numOps);
+                    if (numLines > 1) {
+                        op = new TGPolylineOp(opBatch, opIdx, numLines);
+                        while (--numLines > 0) {
+                            opBatch[opIdx++] = null;
                         }
-                        spriteClipRect[paintSpriteNum] = null;
                     }
-                    paintSpriteNum++;
-                }
-                paintState = PAINT_DRAW_TURTLES;
-                paintSpriteNum = 0;
-            case PAINT_DRAW_TURTLES:
-                while (paintSpriteNum < sprites.length) {
-                    Sprite sprite = sprites[paintSpriteNum];
-                    if (sprite != null) {
-                        int spriteX = (int) Math.rint(sprite.xcor() + xCenter);
-                        int spriteY = (int) Math.rint(yCenter - sprite.ycor());
-                        int imgSz = sprite.getImageSideSize();
-                        int imgLeftX = spriteX - imgSz / 2;
-                        int imgTopY = spriteY - imgSz / 2;
-                        g.setClip(imgLeftX, imgTopY, imgSz, imgSz);
-                        if (!g.drawImage(sprite.getImage(), imgLeftX, imgTopY, this)) {
-                            return;
+                    opBatch[opIdx] = null;
+                    if (op instanceof TGPolylineOp) {
+                        // stop addLine() from growing it past the bounds
+                        // the Image is made to cover
+                        numRunLines.addAndGet(-((TGPolylineOp) op).seal());
+                    }
+                    Rectangle clipRect = null;
+                    try {
+                        if (op instanceof TGBoundedOp) {
+                            Rectangle2D bounds = ((TGBoundedOp) op).getTurtleBounds();
+                            ensureGraphicsImageCovers(Math.max(-bounds.getMinX(), bounds.getMaxX()) + 1,
+                                    Math.max(-bounds.getMinY(), bounds.getMaxY()) + 1);
                         }
-                        spriteClipRect[paintSpriteNum] = new Rectangle(imgLeftX, imgTopY, imgSz, imgSz);
+                        if (op instanceof TGContextOp) {
+                            renderContext.setImage(graphicsImage);
+                            clipRect = ((TGContextOp) op).doIt(renderContext);
+                        } else {
+                            clipRect = op.doIt(graphicsImage);
+                        }
+                    } catch (NullPointerException npe) {
+                        sysErr("renderGraphics(): " + npe + " performing " + op);
+                    }
+                    if (clipRect != null) {
+                        dirtyTiles.mark(clipRect);
                     }
-                    paintSpriteNum++;
                 }
-                paintState = PAINT_REFRESH;
+            }
+            renderContext.dispose();
+            renderLock.notifyAll();
         }
 
-    } //end paint()
+    } // end renderGraphics()
 
-    /**
-     * Moves and resizes this Component. The new location of the top-left corner
-     * is specified by x and y. The new size is specified by width and height.
-     */
-    public void setBounds(int x, int y, int width, int height) {
-        super.setBounds(x, y, width, height);
-        canvasWidth = width;
-        canvasHeight = height;
-        xCenter = width / 2;
-        yCenter = height / 2;
-        repaint();
+
+    /*
+    * Body of the render Thread. Perform queued graphics operations as
+    * they arrive and ask AWT to paint the tiles changed. Producers
+    * unpark() us in addGraphOp(), as does resizing the canvas, which may
+    * make graphicsImage too small. We exit when we are no longer the
+    * current renderThread.
+     */
+    private void renderLoop() {
+        Thread me = Thread.currentThread();
+        while (renderThread == me) {
+            BufferedImage image = graphicsImage;
+            if (!hasPendingOps() && image != null && imageCoversCanvas(image)) {
+                LockSupport.park(this);
+                continue;
+            }
+            renderGraphics();
+            repaintDirtyTiles();
+        }
     }
 
-    /**
-     * Resizes this Component to have the specified width and height.
+
+    /*
+    * Ask AWT to paint the part of the canvas covered by dirty tiles. Used
+    * when tiles are changed outside of paint(), by the render Thread or
+    * flush().
      */
-    public void setSize(int width, int height) {
-        super.setSize(width, height);
-        canvasWidth = width;
-        canvasHeight = height;
-        xCenter = width / 2;
+    private void repaintDirtyTiles() {
+        TGDirtyTiles tiles = dirtyTiles;
+        if (tiles == null) {
+            return;
+        }
+        Rectangle rect = tiles.getBounds();
+        if (rect == null) {
+            return;
+        }
+        rect.translate(-(tiles.getImageWidth() - canvasWidth) / 2, -(tiles.getImageHeight() - canvasHeight) / 2);
+        rect = rect.intersection(new Rectangle(0, 0, canvasWidth, canvasHeight));
+        if (!rect.isEmpty()) {
+            requestRepaint(rect);
+        }
+    }
+
+
+    /*
+    * Ask for an area of the canvas to be repainted with the next frame.
+    * If one is due, the AWT is asked right away; if not, a task is put on
+    * repaintTimer to ask when it is. Requests in between are merged.
+     */
+    private void requestRepaint(Rectangle rect) {
+        requestRepaint(rect.x, rect.y, rect.width, rect.height);
+    }
+
+    private void requestRepaint(int x, int y, int width, int height) {
+        if (!isDisplayable()) {
+            return;
+        }
+        synchronized (repaintLock) {
+            if (pendingRepaint == null) {
+                pendingRepaint = new Rectangle(x, y, width, height);
+            } else {
+                pendingRepaint.add(x, y);
+                pendingRepaint.add(x + width, y + height);
+            }
+            if (repaintScheduled || frameRate == 0) {
+                return;
+            }
+            long delay = frameDue - System.nanoTime();
+            if (delay > 0) {
+                repaintScheduled = true;
+                getRepaintTimer().schedule(new TimerTask() {
+                    public void run() {
+                        sendRepaint();
+                    }
+                }, (delay + 999999) / 1000000);
+                return;
+            }
+        }
+        sendRepaint();
+    }
+
+
+    /*
+    * Ask the AWT to repaint the area waiting for the next frame, now, and
+    * start timing the next frame.
+     */
+    private void sendRepaint() {
+        Rectangle rect;
+        synchronized (repaintLock) {
+            repaintScheduled = false;
+            rect = pendingRepaint;
+            pendingRepaint = null;
+            if (frameRate > 0) {
+                frameDue = System.nanoTime() + 1000000000L / frameRate;
+            }
+        }
+        if (rect != null) {
+            synchronized (refreshLock) {
+                if (repaintAsked == null) {
+                    repaintAsked = new Rectangle(rect);
+                } else {
+                    repaintAsked.add(rect);
+                }
+            }
+            super.repaint(rect.x, rect.y, rect.width, rect.height);
+        }
+    }
+
+
+    /*
+    * Return the Timer for sending paced repaint requests, creating it if
+    * need be. Its Thread is a daemon so it does not keep programs from
+    * exiting.
+     */
+    private static synchronized Timer getRepaintTimer() {
+        if (repaintTimer == null) {
+            repaintTimer = new Timer(REPAINT_TIMER_NAME, true);
+        }
+        return repaintTimer;
+    }
+
+
+    /*
+    * Return the area paint() must completely redraw given the area the
+    * AWT has asked it to paint (clip), null if none. Any of the area to be
+    * redrawn outside of clip is left for a later paint().
+     */
+    private Rectangle takeRefreshRect(Rectangle clip) {
+        if (clip == null) {
+            clip = new Rectangle(0, 0, canvasWidth, canvasHeight);
+        }
+        synchronized (refreshLock) {
+            Rectangle asked = repaintAsked;
+            repaintAsked = null;
+            if (asked == null || !asked.contains(clip)) {
+                // we're being painted for some reason other than our own
+                // repaint() requests, e.g., something that was covering us
+                // has gone away
+                if (refreshRect == null) {
+                    refreshRect = new Rectangle(clip);
+                } else {
+                    refreshRect.add(clip);
+                }
+            }
+            Rectangle rect = refreshRect;
+            if (rect == null) {
+                return null;
+            }
+            refreshRect = remainder(rect, clip);
+            rect = rect.intersection(clip);
+            if (rect.isEmpty()) {
+                return null;
+            }
+            return rect;
+        }
+    }
+
+
+    /*
+    * Return a Rectangle bounding the part of rect outside of clip, null if
+    * there is none.
+     */
+    private static Rectangle remainder(Rectangle rect, Rectangle clip) {
+        if (clip.contains(rect)) {
+            return null;
+        }
+        int left = rect.x;
+        int top = rect.y;
+        int right = rect.x + rect.width;
+        int bottom = rect.y + rect.height;
+        int clipRight = clip.x + clip.width;
+        int clipBottom = clip.y + clip.height;
+        if (clip.x <= left && clipRight >= right) {
+            // clip spans rect, so only rows above and/or below it are left
+            if (clip.y <= top) {
+                top = Math.max(top, clipBottom);
+            } else if (clipBottom >= bottom) {
+                bottom = Math.min(bottom, clip.y);
+            }
+        } else if (clip.y <= top && clipBottom >= bottom) {
+            if (clip.x <= left) {
+                left = Math.max(left, clipRight);
+            } else if (clipRight >= right) {
+                right = Math.min(right, clip.x);
+            }
+        }
+        return new Rectangle(left, top, right - left, bottom - top);
+    }
+
+
+    /*
+    * Discard all pending operations, queued and spilled. Must be invoked
+    * holding renderLock.
+     */
+    private void clearGraphOps() {
+        TGPolylineOp run = lineRun;
+        lineRun = null;
+        if (run != null) {
+            run.seal();
+        }
+        numRunLines.set(0);
+        graphicsOps.clear();
+        synchronized (spillLock) {
+            spilledOps.clear();
+            numSpilledOps = 0;
+            spilling = false;
+            spillFull = false;
+        }
+    }
+
+
+    /*
+    * Throw away the operations collected so far in the current Thread's
+    * batch, if it has one open, e.g., because they were drawn before a
+    * clean() which is to erase them. The batch stays open. Must be invoked
+    * holding renderLock.
+     */
+    private void discardOpenBatch() {
+        if (numOpenBatches.get() > 0) {
+            OpBatch batch = openBatch.get();
+            if (batch.depth > 0 && batch.numOps > 0) {
+                for (int idx = 0; idx < batch.numOps; idx++) {
+                    if (batch.ops[idx] instanceof TGPolylineOp) {
+                        numRunLines.addAndGet(-((TGPolylineOp) batch.ops[idx]).seal());
+                    }
+                }
+                batch.clear();
+            }
+        }
+    }
+
+
+    /*
+    * Remove pending operations, oldest first, into batch; return how many.
+    * Spilled operations are only taken once the queue is empty since they
+    * were added after everything in it. No more than maxOps are removed.
+    * Must be invoked holding renderLock.
+     */
+    private int drainGraphOps(TGGraphicsOp[] batch, int maxOps) {
+        int numOps = graphicsOps.drain(batch, maxOps);
+        if (numOps == 0 && spilling) {
+            synchronized (spillLock) {
+                if (graphicsOps.isEmpty()) {
+                    numOps = spilledOps.drain(batch, maxOps);
+                    numSpilledOps = spilledOps.size();
+                    if (numSpilledOps == 0) {
+                        spilling = false;
+                        spillFull = false;
+                    }
+                }
+            }
+        }
+        return numOps;
+    }
+
+
+    /*
+    * Return true if there are graphics operations waiting to be performed.
+     */
+    private boolean hasPendingOps() {
+        return !graphicsOps.isEmpty() || numSpilledOps > 0;
+    }
+
+
+    /*
+    * About to queue numOps more operations: apply queuePolicy if this
+    * would overfill the queue. Return false if the operations must be
+    * spilled instead, to keep them in order behind those already spilled
+    * or because that is the policy.
+     */
+    private boolean makeRoom(int numOps) {
+        if (spillFull) {
+            waitForSpillRoom();
+        }
+        if (spilling) {
+            return false;
+        }
+        int limit = queueLimit;
+        if (limit <= 0 || graphicsOps.size() + numRunLines.get() + numOps <= limit) {
+            return true;
+        }
+        if (queuePolicy == QUEUE_SPILL) {
+            return false;
+        }
+        if (queuePolicy == QUEUE_BLOCK) {
+            waitForRoom(limit, numOps);
+        } else {
+            renderGraphics();
+            repaintDirtyTiles();
+        }
+        return true;
+    }
+
+
+    /*
+    * Append a solid line to a polyline addLine() has instantiated, see
+    * TGPolylineOp.append(). A line appended to the polyline last queued is
+    * recorded here, since the polyline was recorded when it was queued, as
+    * long as the polyline is still the newest operation queued.
+     */
+    private boolean appendLine(TGPolylineOp run, boolean queued, double x1, double y1, double x2,
+            double y2, Color color, int width, int lineCap) {
+        TGRecorder rec = recorder;
+        if (rec == null || !queued) {
+            return run.append(x1, y1, x2, y2, color, width, lineCap);
+        }
+        synchronized (recordLock) {
+            if (lineRun != run || !run.append(x1, y1, x2, y2, color, width, lineCap)) {
+                return false;
+            }
+            rec.recordLine(x1, y1, x2, y2, color, width, null, lineCap);
+            return true;
+        }
+    }
+
+
+    /*
+    * Clear the graphics canvas to a new background color, or, given null,
+    * the one it has; see clean() and setbg().
+     */
+    private void clearGraphics(Color newBackground) {
+        synchronized (renderLock) {
+            discardOpenBatch();
+            clearGraphOps();
+            if (newBackground != null) {
+                backgroundColor = newBackground;
+            }
+            if (graphicsImage != null) {
+                initGraphicsImage();
+            }
+        }
+    }
+
+
+    /*
+    * Queue, or spill, a graphics operation and wake up the render Thread.
+    * A polyline addLine() instantiated becomes lineRun.
+     */
+    private void enqueueGraphOp(TGGraphicsOp grafOp) {
+        boolean queued = makeRoom(1);
+        lineRun = (queued && grafOp instanceof TGPolylineOp) ? (TGPolylineOp) grafOp : null;
+        if (queued) {
+            noteQueueDepth(graphicsOps.add(grafOp) + numSpilledOps);
+        } else {
+            int depth;
+            synchronized (spillLock) {
+                spillGraphOp(grafOp);
+                numSpilledOps = spilledOps.size();
+                spilling = true;
+                spillFull = spilledOps.isFull();
+                depth = graphicsOps.size() + numSpilledOps;
+            }
+            noteQueueDepth(depth);
+        }
+        unparkRenderThread();
+    }
+
+
+    /*
+    * Queue, or spill, numOps operations from ops[] and wake up the render
+    * Thread.
+     */
+    private void enqueueGraphOps(TGGraphicsOp[] ops, int numOps) {
+        lineRun = null;
+        if (makeRoom(numOps)) {
+            noteQueueDepth(graphicsOps.addAll(ops, numOps) + numSpilledOps);
+        } else {
+            int depth;
+            synchronized (spillLock) {
+                for (int idx = 0; idx < numOps; idx++) {
+                    spillGraphOp(ops[idx]);
+                }
+                numSpilledOps = spilledOps.size();
+                spilling = true;
+                spillFull = spilledOps.isFull();
+                depth = graphicsOps.size() + numSpilledOps;
+            }
+            noteQueueDepth(depth);
+        }
+        unparkRenderThread();
+    }
+
+
+    /*
+    * Add an operation to spilledOps. A polyline is sealed first; its
+    * lines are the spill's to count now. Must be invoked holding
+    * spillLock.
+     */
+    private void spillGraphOp(TGGraphicsOp grafOp) {
+        if (grafOp instanceof TGPolylineOp) {
+            numRunLines.addAndGet(-((TGPolylineOp) grafOp).seal());
+        }
+        spilledOps.add(grafOp);
+    }
+
+
+    /*
+    * Queue numOps operations from ops[], see enqueueGraphOps(), recording
+    * them first if the canvas is being recorded.
+     */
+    private void publishGraphOps(TGGraphicsOp[] ops, int numOps) {
+        TGRecorder rec = recorder;
+        if (rec == null) {
+            enqueueGraphOps(ops, numOps);
+            return;
+        }
+        synchronized (recordLock) {
+            for (int idx = 0; idx < numOps; idx++) {
+                rec.recordOp(ops[idx]);
+            }
+            enqueueGraphOps(ops, numOps);
+        }
+    }
+
+
+    /*
+    * Append an operation to the queue, or the current Thread's batch;
+    * see addGraphOp().
+     */
+    private void queueGraphOp(TGGraphicsOp grafOp) {
+        if (numOpenBatches.get() > 0) {
+            OpBatch batch = openBatch.get();
+            if (batch.depth > 0) {
+                batch.add(grafOp);
+                batch.lineRun = null;
+                int limit = queueLimit;
+                if (limit > 0 && batch.numOps >= limit) {
+                    publishGraphOps(batch.ops, batch.numOps);
+                    batch.clear();
+                } else if (batch.maxOps > 0 && batch.numOps + batch.numRunLines >= batch.maxOps) {
+                    publishBatch(batch);
+                }
+                return;
+            }
+        }
+        TGRecorder rec = recorder;
+        if (rec == null) {
+            enqueueGraphOp(grafOp);
+            return;
+        }
+        synchronized (recordLock) {
+            rec.recordOp(grafOp);
+            enqueueGraphOp(grafOp);
+        }
+    }
+
+
+    /*
+    * Queue the operations collected so far in the current Thread's batch,
+    * if it has one open.
+     */
+    private void publishOpenBatch() {
+        if (numOpenBatches.get() > 0) {
+            OpBatch batch = openBatch.get();
+            if (batch.numOps > 0) {
+                publishGraphOps(batch.ops, batch.numOps);
+                batch.clear();
+            }
+        }
+    }
+
+
+    /*
+    * Queue the operations collected so far in a batch and pass on the
+    * repaint it has put off, leaving it open.
+     */
+    private void publishBatch(OpBatch batch) {
+        if (batch.numOps > 0) {
+            publishGraphOps(batch.ops, batch.numOps);
+            batch.clear();
+        }
+        if (batch.repaintWanted) {
+            batch.repaintWanted = false;
+            requestRepaint(0, 0, canvasWidth, canvasHeight);
+        }
+    }
+
+
+    /**
+     * If the current Thread has a batch open, queue the operations it has
+     * collected so far and do any repaint it has put off. The batch stays
+     * open. Sprites do this before waiting to take a paced step so what they
+     * have drawn can be seen while they wait.
+     */
+    void publishBatch() {
+        if (numOpenBatches.get() > 0) {
+            OpBatch batch = openBatch.get();
+            if (batch.depth > 0) {
+                publishBatch(batch);
+            }
+        }
+    }
+
+
+    /*
+    * Record the number of pending operations if it is a new high.
+     */
+    private void noteQueueDepth(int depth) {
+        int highWater = queueHighWater.get();
+        while (depth > highWater) {
+            if (queueHighWater.compareAndSet(highWater, depth)) {
+                return;
+            }
+            highWater = queueHighWater.get();
+        }
+    }
+
+
+    /*
+    * The queue is full and the QUEUE_BLOCK policy is in effect: wait for
+    * whoever performs graphics operations to make room. If nobody does
+    * for QUEUE_BLOCK_TIMEOUT, e.g., the window is iconified and never gets
+    * painted, or if nobody ever will (we are the AWT event dispatching
+    * Thread which does the painting, or there is no display and no render
+    * Thread), perform the queued operations ourself.
+     */
+    private void waitForRoom(int limit, int numOps) {
+        int maxQueued = Math.max(limit - numOps, 0);
+        boolean somebodyDrains = renderThread != null || isDisplayable();
+        if (somebodyDrains && !EventQueue.isDispatchThread()) {
+            synchronized (renderLock) {
+                while (graphicsOps.size() > maxQueued) {
+                    long numPerformed = numOpsPerformed;
+                    try {
+                        renderLock.wait(QUEUE_BLOCK_TIMEOUT);
+                    } catch (InterruptedException ie) {
+                        Thread.currentThread().interrupt();
+                        break;
+                    }
+                    if (numOpsPerformed == numPerformed) {
+                        break;
+                    }
+                }
+            }
+        }
+        if (graphicsOps.size() > maxQueued) {
+            renderGraphics();
+            repaintDirtyTiles();
+        }
+    }
+
+
+    /*
+    * The spill is full: wait, as waitForRoom() does, for whoever performs
+    * graphics operations to empty it, or perform them ourself.
+     */
+    private void waitForSpillRoom() {
+        boolean somebodyDrains = renderThread != null || isDisplayable();
+        if (somebodyDrains && !EventQueue.isDispatchThread()) {
+            synchronized (renderLock) {
+                while (spillFull) {
+                    long numPerformed = numOpsPerformed;
+                    try {
+                        renderLock.wait(QUEUE_BLOCK_TIMEOUT);
+                    } catch (InterruptedException ie) {
+                        Thread.currentThread().interrupt();
+                        break;
+                    }
+                    if (numOpsPerformed == numPerformed) {
+                        break;
+                    }
+                }
+            }
+        }
+        if (spillFull) {
+            renderGraphics();
+            repaintDirtyTiles();
+        }
+    }
+
+
+    /*
+    * Wake up the render Thread, if there is one.
+     */
+    private void unparkRenderThread() {
+        Thread rt = renderThread;
+        if (rt != null) {
+            LockSupport.unpark(rt);
+        }
+    }
+
+
+    /*
+    * print an error message to console tying it to this class
+     */
+    private void sysErr(String errTxt) {
+        System.err.println(CLASS_NAME + "." + errTxt);
+    }
+
+    //
+    // Overridden Component methods
+    // ---------- --------- -------
+    /**
+     * Makes this Component displayable.
+     * <p>
+     * Overridden in TGCanvas so that everything gets drawn the first time we
+     * are painted.
+     */
+    public void addNotify() {
+        super.addNotify();
+        addRefreshRect(new Rectangle(0, 0, canvasWidth, canvasHeight));
+    }
+
+    /**
+     * Paints this Component.
+     * <p>
+     * Something has occured that requires updating the graphics canvas. As an
+     * example, TGGraphicsOps have been queued to be performed, or a Sprite
+     * whose image is being displayed has moved or rotated, or the AWT has
+     * decided we need to redraw at least some subset of our pixels, e.g.,
+     * partially covered stuff (by some other application on the desktop) has
+     * moved/gone away, etc...
+     * <p>
+     * In render Thread mode queued operations are not performed here, only
+     * the pixels the render Thread has finished are copied to the display.
+     * <p>
+     * Only the tiles of the graphics Image which have changed are copied to
+     * the display, plus whatever the AWT asks us to paint that we have not
+     * asked it to repaint, e.g., areas which have been exposed.
+     */
+    public void paint(Graphics g) {
+        Rectangle rect = g.getClipBounds();
+        if (paintState == PAINT_REFRESH && renderThread == null) {
+            renderGraphics();
+        }
+        TGDirtyTiles tiles = dirtyTiles;
+        BufferedImage image = graphicsImage;
+        int heightDiff = 0;
+        int widthDiff = 0;
+        if (image != null) {
+            heightDiff = (image.getHeight() - canvasHeight) / 2;
+            widthDiff = (image.getWidth() - canvasWidth) / 2;
+        }
+        switch (paintState) {
+            case PAINT_REFRESH:
+                if (image == null || !imageCoversCanvas(image)) {
+                    g.setColor(backgroundColor);
+                    g.fillRect(0, 0, canvasWidth, canvasHeight);
+                    if (image != null) {
+                        addRefreshRect(new Rectangle(0, 0, canvasWidth, canvasHeight));
+                    }
+                }
+                if (image != null && (rect = takeRefreshRect(rect)) != null) {
+                    g.setClip(rect);
+                    if (!g.drawImage(image, -widthDiff, -heightDiff, this)) {
+                        addRefreshRect(rect);
+                        return;
+                    }
+                }
+                paintState = PAINT_DRAW_GRAPHICS;
+                paintTiles = null;
+            case PAINT_DRAW_GRAPHICS:
+                if (paintTiles == null) {
+                    paintTiles = new Rectangle[0];
+                    if (image != null && tiles != null) {
+                        paintTiles = tiles.takeRuns();
+                    }
+                    paintTileNum = 0;
+                }
+                while (paintTileNum < paintTiles.length) {
+                    rect = paintTiles[paintTileNum];
+                    g.setClip(rect.x - widthDiff, rect.y - heightDiff, rect.width, rect.height);
+                    if (!g.drawImage(image, -widthDiff, -heightDiff, this)) {
+                        return;
+                    }
+                    paintTileNum++;
+                }
+                paintTiles = null;
+                paintState = PAINT_ERASE_TURTLES;
+                paintSpriteNum = 0;
+            case PAINT_ERASE_TURTLES:
+                while (paintSpriteNum < spriteClipRect.length) {
+                    if ((rect = spriteClipRect[paintSpriteNum]) != null) {
+                        g.setClip(rect);
+                        if (image != null && !g.drawImage(image, -widthDiff, -heightDiff, this)) {
+                            return;
+                        }
+                        spriteClipRect[paintSpriteNum] = null;
+                    }
+                    paintSpriteNum++;
+                }
+                paintState = PAINT_DRAW_TURTLES;
+                paintSpriteNum = 0;
+            case PAINT_DRAW_TURTLES:
+                while (paintSpriteNum < sprites.length) {
+                    Sprite sprite = sprites[paintSpriteNum];
+                    if (sprite != null) {
+                        int spriteX = (int) Math.rint(sprite.xcor() + xCenter);
+                        int spriteY = (int) Math.rint(yCenter - sprite.ycor());
+                        int imgSz = sprite.getImageSideSize();
+                        int imgLeftX = spriteX - imgSz / 2;
+                        int imgTopY = spriteY - imgSz / 2;
+                        g.setClip(imgLeftX, imgTopY, imgSz, imgSz);
+                        if (!g.drawImage(sprite.getSharedImage(), imgLeftX, imgTopY, this)) {
+                            return;
+                        }
+                        spriteClipRect[paintSpriteNum] = new Rectangle(imgLeftX, imgTopY, imgSz, imgSz);
+                    }
+                    paintSpriteNum++;
+                }
+                paintState = PAINT_REFRESH;
+        }
+
+    } //end paint()
+
+    /**
+     * Repaints this Component.
+     * <p>
+     * Overridden in TGCanvas to pace repaints, see setFrameRate(). Also, while
+     * the current Thread has a batch open, the repaint is put off until the
+     * batch ends.
+     */
+    public void repaint() {
+        if (numOpenBatches.get() > 0) {
+            OpBatch batch = openBatch.get();
+            if (batch.depth > 0) {
+                batch.repaintWanted = true;
+                return;
+            }
+        }
+        requestRepaint(0, 0, canvasWidth, canvasHeight);
+    }
+
+    /**
+     * Moves and resizes this Component. The new location of the top-left corner
+     * is specified by x and y. The new size is specified by width and height.
+     */
+    public void setBounds(int x, int y, int width, int height) {
+        super.setBounds(x, y, width, height);
+        canvasWidth = width;
+        canvasHeight = height;
+        xCenter = width / 2;
         yCenter = height / 2;
+        addRefreshRect(new Rectangle(0, 0, width, height));
+        unparkRenderThread();
+        repaint();
+    }
+
+    /**
+     * Resizes this Component to have the specified width and height.
+     */
+    public void setSize(int width, int height) {
+        super.setSize(width, height);
+        canvasWidth = width;
+        canvasHeight = height;
+        xCenter = width / 2;
+        yCenter = height / 2;
+        addRefreshRect(new Rectangle(0, 0, width, height));
+        unparkRenderThread();
         repaint();
     }
 
@@ -878,13 +1963,64 @@ public class TGCanvas extends Component
     /**
      * Append a graphics operation, a TGGraphicsOp object, to the queue of
      * outstanding operations.
+     * <p>
+     * Any number of Threads may do this at the same time; none of them wait
+     * for each other. Nor do they wait for the painting of queued operations
+     * unless the queue is full, see setQueueLimit().
      */
     public void addGraphOp(TGGraphicsOp grafOp) {
-        synchronized (graphicsOps) {
-            if (numGraphicsOps == graphicsOps.length) {
-                expandGraphicsOps();
+        queueGraphOp(grafOp);
+    }
+
+    /**
+     * Append a line between two points in TurtleSpace, (x1,y1) and (x2,y2),
+     * to the queue of outstanding operations. The same as adding a TGLineOp
+     * with addGraphOp(), but a solid line starting where the line before it
+     * ended, drawn with the same pen, usually just adds a point to the
+     * polyline that line went into instead of queueing an operation of its
+     * own. A turtle walking around with its pen down creates next to no
+     * garbage. While the current Thread has a batch open, the polyline is one
+     * in its batch, so Threads drawing at the same time do not interrupt each
+     * other's polylines.
+     *
+     * @param color AWT Color for line's pixels
+     * @param width number of pixels for width of the line
+     * @param pattern dashed line pattern, null for a solid line
+     * @param lineCap type of endcaps on the line
+     */
+    public void addLine(double x1, double y1, double x2, double y2, Color color, int width,
+            float[] pattern, int lineCap) {
+        if (pattern != null) {
+            queueGraphOp(new TGLineOp(new TGPoint(x1, y1), new TGPoint(x2, y2), color, width, pattern, lineCap));
+            return;
+        }
+        OpBatch batch = null;
+        if (numOpenBatches.get() > 0) {
+            batch = openBatch.get();
+            if (batch.depth == 0) {
+                batch = null;
             }
-            graphicsOps[numGraphicsOps++] = grafOp;
+        }
+        TGPolylineOp run = (batch != null) ? batch.lineRun : lineRun;
+        if (run != null) {
+            int limit = queueLimit;
+            if (limit <= 0 || graphicsOps.size() + numRunLines.get() < limit) {
+                if (appendLine(run, batch == null, x1, y1, x2, y2, color, width, lineCap)) {
+                    numRunLines.incrementAndGet();
+                    if (batch != null) {
+                        batch.numRunLines++;
+                        if (batch.maxOps > 0 && batch.numOps + batch.numRunLines >= batch.maxOps) {
+                            publishBatch(batch);
+                        }
+                    }
+                    return;
+                }
+            }
+        }
+        run = new TGPolylineOp(x1, y1, x2, y2, color, width, lineCap);
+        queueGraphOp(run);
+        if (batch != null && batch.numOps > 0) {
+            batch.lineRun = run;
         }
     }
 
@@ -959,6 +2095,63 @@ public class TGCanvas extends Component
         repaint();
     }
 
+    /**
+     * Perform body as a batch: every graphics operation it adds is queued at
+     * once when it is done and the canvas is repainted once.
+     *
+     * @param body the drawing to be done
+     * @see #beginBatch
+     */
+    public void batch(Runnable body) {
+        beginBatch();
+        try {
+            body.run();
+        } finally {
+            endBatch();
+        }
+    }
+
+    /**
+     * Start batching up the current Thread's drawing.
+     * <p>
+     * Until the matching endBatch(), graphics operations added by this Thread
+     * are collected in a buffer of its own instead of being queued one at a
+     * time, and requests to repaint() the whole canvas are put off. Drawing
+     * 100000 lines then costs one trip through the queue and one repaint.
+     * Batches may be nested; only the outermost endBatch() publishes.
+     * <p>
+     * Operations are queued early if a batch grows to the queue's limit, see
+     * setQueueLimit(), or when this Thread looks at pixels (getPixels()) or
+     * invokes flush(). Operations collected before this Thread invokes
+     * clean(), setbg() or loadPicture() are thrown away, as queued ones are.
+     *
+     * @see #batch
+     * @see #endBatch
+     */
+    public void beginBatch() {
+        beginBatch(0);
+    }
+
+    /**
+     * Start batching up the current Thread's drawing, as beginBatch() does,
+     * but queue the operations collected, and do any repaint put off, every
+     * time maxOps operations (lines added to a polyline included) have been
+     * collected. This keeps the cost of queueing down for a Thread drawing at
+     * the same time as others while what it draws still shows up as it goes.
+     * If a batch is already open, it is only nested; maxOps is ignored.
+     *
+     * @param maxOps operations collected before they are queued; zero for
+     * no limit
+     * @see #endBatch
+     */
+    public void beginBatch(int maxOps) {
+        OpBatch batch = openBatch.get();
+        if (batch.depth++ == 0) {
+            batch.maxOps = Math.max(maxOps, 0);
+            numOpenBatches.incrementAndGet();
+        }
+    }
+
     /**
      * Return the height of the graphics canvas.
      */
@@ -977,15 +2170,94 @@ public class TGCanvas extends Component
      * Clean graphics off of the display.
      */
     public void clean() {
-        synchronized (graphicsOps) {
-            while (numGraphicsOps > 0) {
-                graphicsOps[--numGraphicsOps] = null;
+        TGRecorder rec = recorder;
+        if (rec == null) {
+            clearGraphics(null);
+        } else {
+            synchronized (recordLock) {
+                rec.recordClean();
+                clearGraphics(null);
             }
         }
-        clearGraphicsImage();
         repaint();
     }
 
+    /**
+     * End a batch started by beginBatch(). When the outermost batch ends, the
+     * graphics operations collected are queued and, if anything asked for it,
+     * the canvas is repainted.
+     *
+     * @see #beginBatch
+     */
+    public void endBatch() {
+        OpBatch batch = openBatch.get();
+        if (batch.depth == 0) {
+            sysErr("endBatch: no batch open");
+            return;
+        }
+        if (--batch.depth > 0) {
+            return;
+        }
+        if (batch.numOps > 0) {
+            publishGraphOps(batch.ops, batch.numOps);
+            batch.clear();
+        }
+        batch.maxOps = 0;
+        numOpenBatches.decrementAndGet();
+        if (batch.repaintWanted) {
+            batch.repaintWanted = false;
+            repaint();
+        }
+    }
+
+    /**
+     * Write the contents of the graphics canvas, overlaid with Sprite images,
+     * to a file in the specified format, e.g., "png". All queued graphics
+     * operations are performed first.
+     * <p>
+     * This is the way to get at the results when running without a display,
+     * e.g., rendering drawings in a batch job with java.awt.headless=true.
+     *
+     * @param file where to write the picture
+     * @param formatName informal name of an ImageIO format, e.g., "png"
+     * @throws IOException if there is no writer for the format or the write
+     * fails
+     */
+    public void exportPicture(File file, String formatName) throws IOException {
+        flush();
+        BufferedImage picture = getPicture();
+        if (picture == null) {
+            throw new IOException(CLASS_NAME + ".exportPicture: no picture");
+        }
+        if (!ImageIO.write(picture, formatName, file)) {
+            throw new IOException(CLASS_NAME + ".exportPicture: no writer for " + formatName);
+        }
+    }
+
+    /**
+     * Perform all queued graphics operations now, in the current Thread,
+     * instead of waiting for paint() or the render Thread to do it, and have
+     * the changes painted right away, without waiting for the next frame.
+     * <p>
+     * Without a display (java.awt.headless=true) nothing else ever performs
+     * the queued operations, so this must be invoked before looking at the
+     * results.
+     */
+    public void flush() {
+        publishOpenBatch();
+        renderGraphics();
+        repaintDirtyTiles();
+        sendRepaint();
+    }
+
+    /**
+     * Return the clock which paces the steps of Sprites drawing on the canvas.
+     * Pausing it stops them; see TGAnimationClock.
+     */
+    public TGAnimationClock getAnimationClock() {
+        return animationClock;
+    }
+
     /**
      * Return the background Logo color number. Values zero through fifteen
      * (inclusive) are fixed Logo colors (black, blue, etc...) other values are
@@ -995,19 +2267,36 @@ public class TGCanvas extends Component
         return javaColorToLogoColor(backgroundColor);
     }
 
+    /**
+     * Return the maximum number of times per second the canvas is repainted,
+     * zero if it is only repainted by flush().
+     *
+     * @see #setFrameRate
+     */
+    public int getFrameRate() {
+        synchronized (repaintLock) {
+            return frameRate;
+        }
+    }
+
     /**
      * Return the contents of the graphics canvas overlaid with existing Sprite
      * images as a composite BufferedImage.
      */
     public BufferedImage getPicture() {
-        if (graphicsImage == null) {
+        BufferedImage image = graphicsImage;
+        if (image == null) {
             return null;
         }
         BufferedImage bufImg = new BufferedImage(canvasWidth, canvasHeight, BufferedImage.TYPE_INT_ARGB);
         Graphics g = bufImg.getGraphics();
-        int heightDiff = (GI_HEIGHT - canvasHeight) / 2;
-        int widthDiff = (GI_WIDTH - canvasWidth) / 2;
-        if (!g.drawImage(graphicsImage, -widthDiff, -heightDiff, this)) {
+        if (!imageCoversCanvas(image)) {
+            g.setColor(backgroundColor);
+            g.fillRect(0, 0, canvasWidth, canvasHeight);
+        }
+        int heightDiff = (image.getHeight() - canvasHeight) / 2;
+        int widthDiff = (image.getWidth() - canvasWidth) / 2;
+        if (!g.drawImage(image, -widthDiff, -heightDiff, this)) {
             return null;
         }
         for (int spriteNum = 0; spriteNum < sprites.length; spriteNum++) {
@@ -1018,7 +2307,7 @@ public class TGCanvas extends Component
                 int imgSz = sprite.getImageSideSize();
                 int imgLeftX = spriteX - imgSz / 2;
                 int imgTopY = spriteY - imgSz / 2;
-                if (!g.drawImage(sprite.getImage(), imgLeftX, imgTopY, this)) {
+                if (!g.drawImage(sprite.getSharedImage(), imgLeftX, imgTopY, this)) {
                     return bufImg;
                 }
             }
@@ -1031,69 +2320,130 @@ public class TGCanvas extends Component
      * canvas defined by a top-left corner (in TurtleSpace coordinates) and its
      * width and height.
      * <p>
-     * Since all drawing operations are queued to be performed by the paint()
-     * method, we must wait for all outstanding operations to complete before we
-     * grab pixels.
+     * Since all drawing operations are queued, all outstanding operations are
+     * performed, in the current Thread, before the pixels are copied.
+     *
+     * @see #peekPixels
      */
     public int[] getPixels(TGPoint topLeft, int width, int height) {
-        synchronized (graphicsOps) {
-            while (numGraphicsOps > 0) {
-                try {
-                    graphicsOps.wait();
-                } catch (InterruptedException ie) {
+        publishOpenBatch();
+        int[] rgbArray;
+        synchronized (renderLock) {
+            renderGraphics();
+            rgbArray = copyPixels(topLeft, width, height);
+        }
+        repaintDirtyTiles();
+        return rgbArray;
+    }
+
+    /**
+     * Return an array of pixel RGB values, like getPixels(), but only perform
+     * the outstanding graphics operations needed to get them right: the oldest
+     * ones through the last one which may paint in the requested area. Drawing
+     * queued elsewhere on the canvas is left for later.
+     * <p>
+     * This is the cheap way to look at a few pixels, e.g., what a Sprite is
+     * sitting on, while there is a lot of drawing queued up.
+     *
+     * @see #getPixels
+     */
+    public int[] peekPixels(TGPoint topLeft, int width, int height) {
+        publishOpenBatch();
+        int[] rgbArray;
+        synchronized (renderLock) {
+            if (hasPendingOps()) {
+                int numOps = Integer.MAX_VALUE;
+                if (numSpilledOps == 0) {
+                    // widened a pixel all around for imageX()/imageY() rounding
+                    Rectangle2D area = new Rectangle2D.Double(topLeft.xDoubleValue() - 1,
+                            topLeft.yDoubleValue() - height - 1, width + 2, height + 2);
+                    numOps = graphicsOps.countThrough(area);
+                }
+                if (numOps > 0) {
+                    renderGraphics(numOps);
                 }
             }
+            rgbArray = copyPixels(topLeft, width, height);
         }
+        repaintDirtyTiles();
+        return rgbArray;
+    }
+
+    /*
+    * Copy a rectangular area of graphicsImage, top-left corner in TurtleSpace
+    * coordinates, into a new array of RGB values, a row at a time straight out
+    * of the Image's int[] of pixels. Must be invoked holding renderLock.
+     */
+    private int[] copyPixels(TGPoint topLeft, int width, int height) {
         int backgroundRGB = backgroundColor.getRGB() & 0xffffff;
         int[] rgbArray = new int[width * height];
-        for (int idx = 0; idx < rgbArray.length; idx++) {
-            rgbArray[idx] = backgroundRGB;
-        }
-        if (graphicsImage == null) {
+        BufferedImage image = graphicsImage;
+        if (image == null) {
+            Arrays.fill(rgbArray, backgroundRGB);
             return rgbArray;
         }
 
+        // pixels off the graphics Image have never been drawn on, they are
+        // left the background color
+        int giWidth = image.getWidth();
+        int giHeight = image.getHeight();
         int grabWidth = width;
-        int imageLeftX = topLeft.imageX(GI_WIDTH);
+        int arrayLeftX = 0;
+        int imageLeftX = topLeft.imageX(giWidth);
         if (imageLeftX < 0) {
             grabWidth += imageLeftX;
+            arrayLeftX = -imageLeftX;
             imageLeftX = 0;
         }
-        if ((imageLeftX + grabWidth) > GI_WIDTH) {
-            grabWidth -= (imageLeftX + grabWidth) - GI_WIDTH;
+        if ((imageLeftX + grabWidth) > giWidth) {
+            grabWidth -= (imageLeftX + grabWidth) - giWidth;
         }
         int grabHeight = height;
-        int imageTopY = topLeft.imageY(GI_HEIGHT);
+        int arrayTopY = 0;
+        int imageTopY = topLeft.imageY(giHeight);
         if (imageTopY < 0) {
             grabHeight += imageTopY;
+            arrayTopY = -imageTopY;
             imageTopY = 0;
         }
-        if ((imageTopY + grabHeight) > GI_HEIGHT) {
-            grabHeight -= (imageTopY + grabHeight) - GI_HEIGHT;
-        }
-
-        if (grabWidth == width && grabHeight == height) {
-            PixelGrabber pg = new PixelGrabber(graphicsImage, // image to retrieve pixels from
-                    imageLeftX, imageTopY, // top-left corner of rectangle
-                    grabWidth, grabHeight, // width, height of rectangle
-                    rgbArray, // destination array of RGB ints
-                    0, // destination offset into array
-                    grabWidth // row width of destination image
-            );
-            try {
-                pg.grabPixels();
-            } catch (InterruptedException e) {
-                sysErr("getPixels(): grabPixels interrupted");
-            }
-        } else {
-            sysErr("getPixels(): some desired pixels off image");
+        if ((imageTopY + grabHeight) > giHeight) {
+            grabHeight -= (imageTopY + grabHeight) - giHeight;
+        }
+
+        if (grabWidth <= 0 || grabHeight <= 0) {
+            Arrays.fill(rgbArray, backgroundRGB);
+            return rgbArray;
         }
-        for (int idx = 0; idx < rgbArray.length; idx++) {
-            rgbArray[idx] &= 0xffffff;
+        if (grabWidth < width || grabHeight < height) {
+            Arrays.fill(rgbArray, backgroundRGB);
+        }
+
+        // graphicsImage is TYPE_INT_RGB, giWidth int pixels per row; the
+        // unused top byte is not always zero
+        int[] imagePixels = ((DataBufferInt) image.getRaster().getDataBuffer()).getData();
+        for (int row = 0; row < grabHeight; row++) {
+            int arrayIdx = (arrayTopY + row) * width + arrayLeftX;
+            System.arraycopy(imagePixels, (imageTopY + row) * giWidth + imageLeftX,
+                    rgbArray, arrayIdx, grabWidth);
+            for (int idx = arrayIdx; idx < arrayIdx + grabWidth; idx++) {
+                rgbArray[idx] &= 0xffffff;
+            }
         }
         return rgbArray;
 
-    } // end getPixels()
+    } // end copyPixels()
+
+    /**
+     * Return the largest number of graphics operations that have been waiting
+     * to be performed at one time, queued or spilled, since this TGCanvas was
+     * created or resetQueueHighWaterMark() was invoked. Useful for picking a
+     * queue limit.
+     *
+     * @see #setQueueLimit
+     */
+    public int getQueueHighWaterMark() {
+        return queueHighWater.get();
+    }
 
     /**
      * Load the provided array of pixels into the background.
@@ -1102,8 +2452,13 @@ public class TGCanvas extends Component
      * current graphics is cleared.
      */
     public void loadPicture(Image pictureImage) {
-        backgroundPicture = pictureImage;
-        clearGraphicsImage();
+        synchronized (renderLock) {
+            discardOpenBatch();
+            backgroundPicture = pictureImage;
+            if (graphicsImage != null) {
+                initGraphicsImage();
+            }
+        }
         repaint();
     }
 
@@ -1202,6 +2557,15 @@ public class TGCanvas extends Component
         sysErr("removeSprite: Sprite missing!");
     }
 
+    /**
+     * Start tracking the high water mark of pending graphics operations over.
+     *
+     * @see #getQueueHighWaterMark
+     */
+    public void resetQueueHighWaterMark() {
+        queueHighWater.set(0);
+    }
+
     /**
      * Return a Logo pen color number given an ARGB or RGB value.
      */
@@ -1218,6 +2582,125 @@ public class TGCanvas extends Component
         return rgbValue;
     }
 
+    /**
+     * Set whether lines one pixel wide are drawn anti-aliased. Thin solid lines
+     * are drawn straight into the graphics Image's pixels; with anti-aliasing
+     * their edges are blended into what is under them (Xiaolin Wu's algorithm)
+     * instead of being stair-stepped. Anti-aliasing is initially off since
+     * an anti-aliased line can not be erased by redrawing it in the
+     * background color. Only affects lines drawn after this is invoked.
+     *
+     * @param antialiased true for smooth lines
+     */
+    public void setAntialiasedLines(boolean antialiased) {
+        antialiasedLines = antialiased;
+    }
+
+    /**
+     * Set the maximum number of times per second the canvas is repainted.
+     * <p>
+     * Every turtle move asks for a repaint. Instead of passing each request on
+     * to the AWT, which paints whenever it gets around to it, requests are
+     * collected and passed on once per frame. This keeps the work done
+     * painting, and the smoothness of animation, independent of how fast the
+     * turtles draw. The initial rate is 60 frames per second.
+     *
+     * @param framesPerSecond maximum repaints per second; zero means only
+     * repaint when flush() is invoked
+     */
+    public void setFrameRate(int framesPerSecond) {
+        synchronized (repaintLock) {
+            frameRate = Math.max(framesPerSecond, 0);
+            frameDue = System.nanoTime();
+        }
+        repaint();
+    }
+
+    /**
+     * Set the maximum number of graphics operations which may be queued,
+     * waiting to be performed, and what happens when a turtle adds one more.
+     * <p>
+     * A turtle program which outruns the painting of its graphics, e.g., with
+     * its window iconified, would otherwise queue operations until it ran out of
+     * memory. The policies are:
+     * <ul>
+     * <li>
+     * QUEUE_BLOCK - wait for room. If nobody makes any for a little while,
+     * e.g., the window is not being painted, perform the queued operations
+     * instead. This is the initial policy.
+     * </li>
+     * <li>
+     * QUEUE_RENDER_INLINE - perform the queued operations in the Thread adding
+     * the operation.
+     * </li>
+     * <li>
+     * QUEUE_SPILL - keep adding, but in a compact form which takes a fraction
+     * of the memory, until the queue has been emptied. Lines, the polylines
+     * they are collected into, and fills are encoded; other operations are
+     * kept as they are. Once the spill holds about 32 MB, as with
+     * QUEUE_BLOCK, wait for it to be emptied, or empty it.
+     * </li>
+     * </ul>
+     *
+     * @param maxOps maximum number of operations queued, zero for no limit
+     * @param policy QUEUE_BLOCK, QUEUE_RENDER_INLINE, or QUEUE_SPILL
+     */
+    public void setQueueLimit(int maxOps, int policy) {
+        if (policy != QUEUE_BLOCK && policy != QUEUE_RENDER_INLINE && policy != QUEUE_SPILL) {
+            sysErr("setQueueLimit: bad policy " + policy);
+            return;
+        }
+        queuePolicy = policy;
+        queueLimit = Math.max(maxOps, 0);
+    }
+
+    /**
+     * Start recording the graphics operations added to the canvas, by Sprites
+     * or addGraphOp(), and clean() and setbg(), into a log TGPlayer can
+     * replay; or, given null, stop. Operations are recorded as they are
+     * queued, those collected in a batch when it is queued, so the log has
+     * them in the order they are drawn. The recorder is not flushed or closed
+     * here; that is up to the caller.
+     *
+     * @param newRecorder where operations are recorded, null for nowhere
+     */
+    public void setRecorder(TGRecorder newRecorder) {
+        recorder = newRecorder;
+    }
+
+    /**
+     * Turn render Thread mode on or off.
+     * <p>
+     * Normally queued graphics operations are performed by paint(), on the AWT
+     * event dispatching Thread. A big FILL or thousands of lines then keep AWT
+     * from handling input and repainting windows. In render Thread mode a
+     * background Thread performs the operations as they are queued and paint()
+     * only copies the finished pixels to the display.
+     *
+     * @param on true to start a render Thread, false to go back to performing
+     * operations in paint()
+     */
+    public synchronized void setRenderThread(boolean on) {
+        Thread oldThread = renderThread;
+        if (on == (oldThread != null)) {
+            return;
+        }
+        if (on) {
+            Thread newThread = new Thread(new Runnable() {
+                public void run() {
+                    renderLoop();
+                }
+            }, RENDER_THREAD_NAME);
+            newThread.setDaemon(true);
+            renderThread = newThread;
+            newThread.start();
+        } else {
+            renderThread = null;
+            LockSupport.unpark(oldThread);
+            repaint();
+        }
+    }
+
     /**
      * Set the background color of the graphics canvas.
      * <p>
@@ -1225,13 +2708,16 @@ public class TGCanvas extends Component
      * current graphics is cleared.
      */
     public void setbg(int logoColor) {
-        synchronized (graphicsOps) {
-            while (numGraphicsOps > 0) {
-                graphicsOps[--numGraphicsOps] = null;
+        Color newBackground = logoColorToJavaColor(logoColor);
+        TGRecorder rec = recorder;
+        if (rec == null) {
+            clearGraphics(newBackground);
+        } else {
+            synchronized (recordLock) {
+                rec.recordBackground(logoColor);
+                clearGraphics(newBackground);
             }
         }
-        backgroundColor = logoColorToJavaColor(logoColor);
-        clearGraphicsImage();
         repaint();
     }
 
@@ -0,0 +1,24 @@
+package com.guyhaas.tg;
+
+import java.awt.Rectangle;
+
+/**
+ * TGContextOp is implemented by TGGraphicsOp classes which can draw with a
+ * TGRenderContext, sharing its Graphics2D and strokes with the operations
+ * performed before and after them.
+ * <p>
+ * TGCanvas performs these operations with the context of its render pass
+ * instead of calling their doIt(BufferedImage) method.
+ */
+interface TGContextOp {
+
+    /**
+     * Perform this operation on the context's Image and return a Rectangle
+     * which is a cliprect for the area of the Image that was changed.
+     *
+     * @param context the render pass' drawing state
+     * @return Rectangle bounds of the pixels in the Image that were changed
+     */
+    public Rectangle doIt(TGRenderContext context);
+
+} // end interface TGContextOp
@@ -0,0 +1,215 @@
+package com.guyhaas.tg;
+
+import java.awt.Rectangle;
+
+/**
+ * TGDirtyTiles keeps track of which parts of TGCanvas' graphics Image have
+ * been changed and not yet copied to the display.
+ * <p>
+ * The Image is divided up into a grid of square tiles. Changed areas are
+ * rounded out to whole tiles, so two short lines in opposite corners of the
+ * Image mark a few tiles each instead of a bounding box covering everything
+ * between them.
+ * <p>
+ * Methods are synchronized; tiles are marked by whoever performs graphics
+ * operations and taken by paint().
+ */
+class TGDirtyTiles {
+
+    //
+    // Symbolic Constants
+    // -------- ---------
+    /**
+     * Default width and height of a tile, in pixels.
+     */
+    static final int DEFAULT_TILE_SIZE = 64;
+
+    //
+    // Class Fields
+    // ----- ------
+
+    /*
+    * Dimensions of the Image the grid covers.
+     */
+    private final int imageWidth;
+    private final int imageHeight;
+
+    /*
+    * Width/height of a tile and the number of them across and down.
+     */
+    private final int tileSize;
+    private final int numCols;
+    private final int numRows;
+
+    /*
+    * One bit per tile, row after row of tiles.
+     */
+    private final long[] dirtyBits;
+
+    /*
+    * Number of bits set in dirtyBits.
+     */
+    private int numDirty;
+
+    //
+    // Constructors
+    // ------------
+    /**
+     * Instantiate a grid of tiles, all clean, covering an Image of the
+     * specified dimensions.
+     */
+    TGDirtyTiles(int imageWidth, int imageHeight, int tileSize) {
+        this.imageWidth = imageWidth;
+        this.imageHeight = imageHeight;
+        this.tileSize = tileSize;
+        numCols = (imageWidth + tileSize - 1) / tileSize;
+        numRows = (imageHeight + tileSize - 1) / tileSize;
+        dirtyBits = new long[(numCols * numRows + 63) / 64];
+    }
+
+    //
+    // Methods
+    // -------
+    /**
+     * Return the height of the Image the grid covers.
+     */
+    int getImageHeight() {
+        return imageHeight;
+    }
+
+    /**
+     * Return the width of the Image the grid covers.
+     */
+    int getImageWidth() {
+        return imageWidth;
+    }
+
+    /**
+     * Return true if no tiles are dirty.
+     */
+    synchronized boolean isEmpty() {
+        return numDirty == 0;
+    }
+
+    /**
+     * Mark all tiles touched by a Rectangle (in Image coordinates) dirty. The
+     * parts of the Rectangle outside of the Image are ignored.
+     */
+    synchronized void mark(Rectangle rect) {
+        int leftX = Math.max(rect.x, 0);
+        int topY = Math.max(rect.y, 0);
+        int rightX = Math.min(rect.x + rect.width, imageWidth) - 1;
+        int bottomY = Math.min(rect.y + rect.height, imageHeight) - 1;
+        if (rightX < leftX || bottomY < topY) {
+            return;
+        }
+        int firstCol = leftX / tileSize;
+        int lastCol = rightX / tileSize;
+        int lastRow = bottomY / tileSize;
+        for (int row = topY / tileSize; row <= lastRow; row++) {
+            for (int col = firstCol; col <= lastCol; col++) {
+                setBit(row * numCols + col);
+            }
+        }
+    }
+
+    /**
+     * Mark every tile dirty.
+     */
+    synchronized void markAll() {
+        for (int idx = 0; idx < numCols * numRows; idx++) {
+            setBit(idx);
+        }
+    }
+
+    /**
+     * Return the bounds (in Image coordinates) of all dirty tiles, null if
+     * there are none.
+     */
+    synchronized Rectangle getBounds() {
+        if (numDirty == 0) {
+            return null;
+        }
+        Rectangle bounds = null;
+        for (int row = 0; row < numRows; row++) {
+            for (int col = 0; col < numCols; col++) {
+                if (isBitSet(row * numCols + col)) {
+                    Rectangle tile = tileRect(row, col, col);
+                    if (bounds == null) {
+                        bounds = tile;
+                    } else {
+                        bounds.add(tile);
+                    }
+                }
+            }
+        }
+        return bounds;
+    }
+
+    /**
+     * Return the dirty tiles as Rectangles (in Image coordinates) and mark them
+     * clean. Horizontally adjacent dirty tiles are merged into one Rectangle.
+     * Returns an empty array if nothing is dirty.
+     */
+    synchronized Rectangle[] takeRuns() {
+        if (numDirty == 0) {
+            return new Rectangle[0];
+        }
+        Rectangle[] runs = new Rectangle[numDirty];
+        int numRuns = 0;
+        for (int row = 0; row < numRows; row++) {
+            int col = 0;
+            while (col < numCols) {
+                if (!isBitSet(row * numCols + col)) {
+                    col++;
+                    continue;
+                }
+                int firstCol = col;
+                while (col < numCols && isBitSet(row * numCols + col)) {
+                    clearBit(row * numCols + col);
+                    col++;
+                }
+                runs[numRuns++] = tileRect(row, firstCol, col - 1);
+            }
+        }
+        Rectangle[] retArray = new Rectangle[numRuns];
+        System.arraycopy(runs, 0, retArray, 0, numRuns);
+        return retArray;
+    }
+
+    //
+    // Private Methods
+    // ------- -------
+    private void clearBit(int idx) {
+        long mask = 1L << (idx & 63);
+        if ((dirtyBits[idx >>> 6] & mask) != 0) {
+            dirtyBits[idx >>> 6] &= ~mask;
+            numDirty--;
+        }
+    }
+
+    private boolean isBitSet(int idx) {
+        return (dirtyBits[idx >>> 6] & (1L << (idx & 63))) != 0;
+    }
+
+    private void setBit(int idx) {
+        long mask = 1L << (idx & 63);
+        if ((dirtyBits[idx >>> 6] & mask) == 0) {
+            dirtyBits[idx >>> 6] |= mask;
+            numDirty++;
+        }
+    }
+
+    /*
+    * Return the Rectangle covered by a run of tiles in one row, clipped
+    * to the Image.
+     */
+    private Rectangle tileRect(int row, int firstCol, int lastCol) {
+        int x = firstCol * tileSize;
+        int y = row * tileSize;
+        int width = Math.min((lastCol + 1) * tileSize, imageWidth) - x;
+        int height = Math.min(y + tileSize, imageHeight) - y;
+        return new Rectangle(x, y, width, height);
+    }
+
+} // end class TGDirtyTiles
@@ -2,7 +2,13 @@ package com.guyhaas.tg;
 
 import java.awt.Color;
 import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferInt;
 import java.awt.Rectangle;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.atomic.AtomicIntegerArray;
 
 /**
  * Perform a TurtleGraphics FILL graphics operation.
@@ -11,24 +17,244 @@ import java.awt.Rectangle;
  */
 public class TGFillOp implements TGGraphicsOp {
 
+    //
+    // Symbolic Constants
+    // -------- ---------
+
+    /*
+    * Initial number of seeds (x,y pairs) room is allocated for on a stack
+    * of spans waiting to be filled.
+     */
+    private static final int INIT_STACK_SIZE = 256;
+
+    /*
+    * Initial number of filled pixels beyond which the rest of a fill is
+    * done in parallel; see setParallelThreshold().
+     */
+    private static final int INIT_PARALLEL_THRESHOLD = 1000000;
+
+    /*
+    * In a parallel fill, rows are divided into segments this many pixels
+    * wide. A span never crosses into another segment so that Threads can
+    * work on different parts of the same rows.
+     */
+    private static final int SEGMENT_WIDTH = 256;
+
+    /*
+    * Fork off part of a parallel fill only while fewer than this many
+    * tasks are waiting for a Thread.
+     */
+    private static final int MAX_SURPLUS_TASKS = 3;
+
     //
     // Class Fields
     // ----- ------
     private Color fillColor;    // new Color pixels will be set to
     private TGPoint fillPoint;  // initial point of the FILL operation
 
-    // Image that's the source of pixels to be examined and
-    // conditionally changed to fillColor.
-    private BufferedImage sourceImage;
+    // fills which get bigger than this many pixels are finished in
+    // parallel, zero or less means never
+    private static volatile int parallelThreshold = INIT_PARALLEL_THRESHOLD;
+
+    // Image pixels being examined and conditionally changed to
+    // fillColor, one int per pixel, row after row
+    private int[] pixels;
     private int sourceHeight;
     private int sourceWidth;
 
-    // maximum and minimum X and Y values computed so that we can
-    // return the rectangle that encompasses the modified pixels
-    private int maxFloodX;
-    private int maxFloodY;
-    private int minFloodX;
-    private int minFloodY;
+    // color of the pixels being changed and what they are changed to
+    private int curRGB;
+    private int newRGB;
+
+    // width of the segments of a row a span may cover, and when filling
+    // in parallel, a lock on each segment of each row
+    private int segmentWidth;
+    private int numSegments;
+    private AtomicIntegerArray segmentLocks;
+
+    //
+    // Nested Classes
+    // ------ -------
+
+    /*
+    * A stack of seeds, x and y pairs, of spans waiting to be filled and
+    * the extent of the pixels filled from them.
+     */
+    private final class SpanFiller {
+
+        private int[] seedStack = new int[INIT_STACK_SIZE * 2];
+        private int stackTop;
+
+        // maximum and minimum X and Y values computed so that we can
+        // return the rectangle that encompasses the modified pixels
+        int maxFloodX = -1;
+        int maxFloodY = -1;
+        int minFloodX = Integer.MAX_VALUE;
+        int minFloodY = Integer.MAX_VALUE;
+
+        long numFilled;
+
+        /*
+        * Pop a seed and fill the span of curRGB pixels through it, within
+        * its segment of the row. Push seeds for the runs of curRGB pixels
+        * bordering the span above and below, and for where it continues
+        * into the next segments.
+         */
+        void fillNextSpan() {
+            int seedY = seedStack[--stackTop];
+            int seedX = seedStack[--stackTop];
+            int segmentLeft = (seedX / segmentWidth) * segmentWidth;
+            int segmentRight = Math.min(segmentLeft + segmentWidth, sourceWidth) - 1;
+            int lockIdx = seedY * numSegments + seedX / segmentWidth;
+            if (segmentLocks != null) {
+                while (!segmentLocks.compareAndSet(lockIdx, 0, 1)) {
+                    // spin, spans are filled quickly
+                }
+            }
+            int rowIdx = seedY * sourceWidth;
+            int leftLimit = seedX;
+            int rightLimit = seedX;
+            boolean filled = false;
+            try {
+                if ((pixels[rowIdx + seedX] & 0xFFFFFF) == curRGB) {
+                    while (leftLimit > segmentLeft && (pixels[rowIdx + leftLimit - 1] & 0xFFFFFF) == curRGB) {
+                        leftLimit--;
+                    }
+                    while (rightLimit < segmentRight && (pixels[rowIdx + rightLimit + 1] & 0xFFFFFF) == curRGB) {
+                        rightLimit++;
+                    }
+                    for (int idx = rowIdx + leftLimit; idx <= rowIdx + rightLimit; idx++) {
+                        pixels[idx] = (pixels[idx] & 0xFF000000) | newRGB;
+                    }
+                    filled = true;
+                }
+            } finally {
+                if (segmentLocks != null) {
+                    segmentLocks.set(lockIdx, 0);
+                }
+            }
+            if (!filled) {
+                return;
+            }
+            numFilled += (rightLimit + 1) - leftLimit;
+            minFloodX = Math.min(minFloodX, leftLimit);
+            maxFloodX = Math.max(maxFloodX, rightLimit);
+            minFloodY = Math.min(minFloodY, seedY);
+            maxFloodY = Math.max(maxFloodY, seedY);
+            if (leftLimit == segmentLeft && leftLimit > 0
+                    && (pixels[rowIdx + leftLimit - 1] & 0xFFFFFF) == curRGB) {
+                pushSeed(leftLimit - 1, seedY);
+            }
+            if (rightLimit == segmentRight && rightLimit < sourceWidth - 1
+                    && (pixels[rowIdx + rightLimit + 1] & 0xFFFFFF) == curRGB) {
+                pushSeed(rightLimit + 1, seedY);
+            }
+            if (seedY > 0) {
+                pushRuns(leftLimit, rightLimit, seedY - 1);
+            }
+            if (seedY < sourceHeight - 1) {
+                pushRuns(leftLimit, rightLimit, seedY + 1);
+            }
+        }
+
+        boolean isEmpty() {
+            return stackTop == 0;
+        }
+
+        /*
+        * Fold another SpanFiller's extent into this one's.
+         */
+        void merge(SpanFiller other) {
+            numFilled += other.numFilled;
+            minFloodX = Math.min(minFloodX, other.minFloodX);
+            maxFloodX = Math.max(maxFloodX, other.maxFloodX);
+            minFloodY = Math.min(minFloodY, other.minFloodY);
+            maxFloodY = Math.max(maxFloodY, other.maxFloodY);
+        }
+
+        int numSeeds() {
+            return stackTop / 2;
+        }
+
+        /*
+        * Push a seed for each run of curRGB pixels in row y between columns
+        * leftX and rightX, inclusive.
+         */
+        void pushRuns(int leftX, int rightX, int y) {
+            int rowIdx = y * sourceWidth;
+            boolean inRun = false;
+            for (int x = leftX; x <= rightX; x++) {
+                if ((pixels[rowIdx + x] & 0xFFFFFF) == curRGB) {
+                    if (!inRun) {
+                        pushSeed(x, y);
+                        inRun = true;
+                    }
+                } else {
+                    inRun = false;
+                }
+            }
+        }
+
+        void pushSeed(int x, int y) {
+            if (stackTop + 2 > seedStack.length) {
+                int[] newStack = new int[seedStack.length * 2];
+                System.arraycopy(seedStack, 0, newStack, 0, stackTop);
+                seedStack = newStack;
+            }
+            seedStack[stackTop++] = x;
+            seedStack[stackTop++] = y;
+        }
+
+        /*
+        * Move the older half of the seeds to a new SpanFiller.
+         */
+        SpanFiller split() {
+            SpanFiller other = new SpanFiller();
+            int numMoved = (numSeeds() / 2) * 2;
+            if (numMoved > other.seedStack.length) {
+                other.seedStack = new int[numMoved];
+            }
+            System.arraycopy(seedStack, 0, other.seedStack, 0, numMoved);
+            other.stackTop = numMoved;
+            System.arraycopy(seedStack, numMoved, seedStack, 0, stackTop - numMoved);
+            stackTop -= numMoved;
+            return other;
+        }
+
+    } // end class SpanFiller
+
+    /*
+    * Part of a parallel fill: fill spans until the SpanFiller's stack is
+    * empty, forking off half of the seeds whenever there are idle Threads
+    * that could be working on them.
+     */
+    private final class FillTask extends RecursiveAction {
+
+        private static final long serialVersionUID = 1L;
+
+        private final SpanFiller filler;
+
+        FillTask(SpanFiller filler) {
+            this.filler = filler;
+        }
+
+        protected void compute() {
+            List<FillTask> forked = new ArrayList<FillTask>();
+            while (!filler.isEmpty()) {
+                if (filler.numSeeds() >= 2 && getSurplusQueuedTaskCount() < MAX_SURPLUS_TASKS) {
+                    FillTask task = new FillTask(filler.split());
+                    task.fork();
+                    forked.add(task);
+                }
+                filler.fillNextSpan();
+            }
+            for (FillTask task : forked) {
+                task.join();
+                filler.merge(task.filler);
+            }
+        }
+
+    } // end class FillTask
 
     //
     // Constructor
@@ -45,6 +271,36 @@ public class TGFillOp implements TGGraphicsOp {
         fillPoint = point;
     }
 
+    //
+    // Class Methods
+    // ----- -------
+    /**
+     * Set how many pixels a fill must change before the rest of it is done by
+     * several Threads (the common ForkJoinPool) instead of just the one
+     * performing it. The result is the same either way; only large fills on
+     * machines with more than one processor gain. Initially one million.
+     *
+     * @param numPixels the threshold, zero or less to never fill in parallel
+     */
+    public static void setParallelThreshold(int numPixels) {
+        parallelThreshold = numPixels;
+    }
+
+    //
+    // Package Methods
+    // ------- -------
+    /*
+    * Accessors for the attributes of the fill, e.g., for TGRecorder
+    * encoding it.
+     */
+    Color getFillColor() {
+        return fillColor;
+    }
+
+    TGPoint getFillPoint() {
+        return fillPoint;
+    }
+
     //
     // TGGraphicsOp Interface Methods
     // ------------ --------- -------
@@ -58,7 +314,6 @@ public class TGFillOp implements TGGraphicsOp {
     //        the operation can not be performed.
     //        
     public Rectangle doIt(BufferedImage graphicsImage) {
-        sourceImage = graphicsImage;
         sourceWidth = graphicsImage.getWidth();
         sourceHeight = graphicsImage.getHeight();
         // convert TGPoint origin of the FILL operation to the x,y
@@ -71,20 +326,35 @@ public class TGFillOp implements TGGraphicsOp {
         if (imageY < 0 || imageY >= sourceHeight) {
             return null;
         }
-        int curRGB = graphicsImage.getRGB(imageX, imageY);
+        curRGB = graphicsImage.getRGB(imageX, imageY);
         curRGB &= 0xFFFFFF;
-        int newRGB = fillColor.getRGB();
+        newRGB = fillColor.getRGB();
         newRGB &= 0xFFFFFF;
         if (curRGB == newRGB) {
             return null;
         }
-        maxFloodX = minFloodX = imageX;
-        maxFloodY = minFloodY = imageY;
+
+        // work on the Image's own array of pixels when it has one we
+        // understand, else on a copy of them
+        boolean copied = false;
+        int imageType = graphicsImage.getType();
+        if ((imageType == BufferedImage.TYPE_INT_RGB || imageType == BufferedImage.TYPE_INT_ARGB)
+                && graphicsImage.getRaster().getDataBuffer() instanceof DataBufferInt) {
+            pixels = ((DataBufferInt) graphicsImage.getRaster().getDataBuffer()).getData();
+        } else {
+            pixels = graphicsImage.getRGB(0, 0, sourceWidth, sourceHeight, null, 0, sourceWidth);
+            copied = true;
+        }
         // perform the flood fill operation
-        floodFill(imageX, imageY, sourceWidth, sourceHeight, curRGB, newRGB);
-        int floodWidth = (maxFloodX + 1) - minFloodX;
-        int floodHeight = (maxFloodY + 1) - minFloodY;
-        return new Rectangle(minFloodX, minFloodY, floodWidth, floodHeight);
+        SpanFiller filler = floodFill(imageX, imageY);
+        int floodWidth = (filler.maxFloodX + 1) - filler.minFloodX;
+        int floodHeight = (filler.maxFloodY + 1) - filler.minFloodY;
+        if (copied) {
+            graphicsImage.setRGB(filler.minFloodX, filler.minFloodY, floodWidth, floodHeight, pixels,
+                    filler.minFloodY * sourceWidth + filler.minFloodX, sourceWidth);
+        }
+        pixels = null;
+        return new Rectangle(filler.minFloodX, filler.minFloodY, floodWidth, floodHeight);
 
     } // end doIt()
 
@@ -92,61 +362,37 @@ public class TGFillOp implements TGGraphicsOp {
     // Methods with scope limited to the class
     //
     //
-    // *NOTE* There is a simple, elegant algorithm for doing this. But it's
-    //        recursive and exceeds the default stack size Java gives us...
-    //        So... I've implemented a hybrid algorithm that's partially
-    //        recursive, partially iterative.
-    private void floodFill(int x, int y, int wd, int ht, int curRGB, int newRGB) {
-        //int pixIdx;
-        int pixel;
-
-        int leftLimit = x, rightLimit = x;
-        if (y < minFloodY) {
-            minFloodY = y;
-        }
-        if (y > maxFloodY) {
-            maxFloodY = y;
-        }
-        for (int i = x; i >= 0; i--) {
-            pixel = sourceImage.getRGB(i, y);
-            if ((pixel & 0xFFFFFF) != curRGB) {
-                break;
-            }
-            sourceImage.setRGB(i, y, (pixel & 0xFF000000) | newRGB);
-            leftLimit = i;
-        }
-        if (leftLimit < minFloodX) {
-            minFloodX = leftLimit;
-        }
-        for (int i = x + 1; i < wd; i++) {
-            pixel = sourceImage.getRGB(i, y);
-            if ((pixel & 0xFFFFFF) != curRGB) {
+    // *NOTE* The simple, elegant, recursive algorithm for doing this
+    //        exceeds the default stack size Java gives us... So spans
+    //        waiting to be filled are kept on a stack of our own: a seed
+    //        pixel is popped, the span of curRGB pixels through it is
+    //        filled, and a seed is pushed for each run of curRGB pixels
+    //        bordering the span above and below.
+    //
+    //        A span covers as much of a row as it can. Once the fill has
+    //        changed parallelThreshold pixels, what is left is handed to a
+    //        ForkJoinPool; from then on spans are limited to segments of
+    //        rows, each with a lock, so that Threads can share the work.
+    private SpanFiller floodFill(int x, int y) {
+        segmentWidth = sourceWidth;
+        numSegments = 1;
+        segmentLocks = null;
+        int threshold = parallelThreshold;
+        boolean mayGoParallel = threshold > 0 && ForkJoinPool.getCommonPoolParallelism() > 1;
+        SpanFiller filler = new SpanFiller();
+        filler.pushSeed(x, y);
+        while (!filler.isEmpty()) {
+            if (mayGoParallel && filler.numFilled > threshold) {
+                segmentWidth = SEGMENT_WIDTH;
+                numSegments = (sourceWidth + SEGMENT_WIDTH - 1) / SEGMENT_WIDTH;
+                segmentLocks = new AtomicIntegerArray(sourceHeight * numSegments);
+                ForkJoinPool.commonPool().invoke(new FillTask(filler));
+                segmentLocks = null;
                 break;
             }
-            sourceImage.setRGB(i, y, (pixel & 0xFF000000) | newRGB);
-            rightLimit = i;
-        }
-        if (rightLimit > maxFloodX) {
-            maxFloodX = rightLimit;
-        }
-        if (y > 0) {
-            for (int i = leftLimit; i <= rightLimit; i++) {
-                int newY = y - 1;
-                pixel = sourceImage.getRGB(i, newY);
-                if ((pixel & 0xFFFFFF) == curRGB) {
-                    floodFill(i, newY, wd, ht, curRGB, newRGB);
-                }
-            }
-        }
-        if (y < ht - 1) {
-            for (int i = leftLimit; i <= rightLimit; i++) {
-                int newY = y + 1;
-                pixel = sourceImage.getRGB(i, newY);
-                if ((pixel & 0xFFFFFF) == curRGB) {
-                    floodFill(i, newY, wd, ht, curRGB, newRGB);
-                }
-            }
+            filler.fillNextSpan();
         }
+        return filler;
 
     } // end floodFill
 
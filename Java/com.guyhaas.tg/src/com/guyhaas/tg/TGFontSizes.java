@@ -0,0 +1,264 @@
+package com.guyhaas.tg;
+
+import java.awt.Font;
+import java.awt.FontMetrics;
+import java.awt.Graphics;
+import java.awt.image.BufferedImage;
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Properties;
+
+/**
+ * TGFontSizes holds the tables Sprites use to turn the height of CAPITAL
+ * letters into the size of a Font, one table for each label font.
+ * <p>
+ * Building a table means creating a Font for every size up to one with a
+ * MAX_LABEL_ASCENT tall ascent and measuring it. The results only depend on
+ * the fonts installed, so each table is built once, the first time any Sprite
+ * needs it, and shared by all Sprites after that.
+ * <p>
+ * If the system property com.guyhaas.tg.fontSizesFile names a file, tables
+ * are also saved in it and read back by later runs instead of being built
+ * again. Each table is saved under a key made up of the OS, the Java runtime,
+ * and the name, style, and glyph count of the Font actually used, so a table
+ * built elsewhere, or before fonts changed, is not used. Problems reading or
+ * writing the file are ignored; tables are simply built.
+ * <p>
+ * Methods are thread-safe.
+ */
+class TGFontSizes {
+
+    //
+    // Symbolic Constants
+    // -------- ---------
+
+    /*
+    * System property naming the file tables are saved in.
+     */
+    private static final String FILE_PROPERTY = "com.guyhaas.tg.fontSizesFile";
+
+    //
+    // Class Fields
+    // ----- ------
+
+    /*
+    * Tables built or read so far, indexed by font number.
+     */
+    private static final short[][] tables = new short[Sprite.NUM_FONTS][];
+
+    //
+    // Constructor
+    // -----------
+    private TGFontSizes() {
+    }
+
+    //
+    // Methods
+    // -------
+    /**
+     * Return the table for a font number. Element n of the table is the size
+     * of the Font whose CAPITAL letters are closest to n pixels tall, for n
+     * from 1 through MAX_LABEL_ASCENT. The table is shared; callers must not
+     * change it.
+     *
+     * @param fontNumber the font number, 0 through NUM_FONTS-1
+     * @param fontName the font's family name
+     * @param fontStyle the font's style, e.g., Font.BOLD
+     * @param fudgeFactor percentage of a Font's maximum ascent its CAPITAL
+     *        letters are tall
+     */
+    static short[] getTable(int fontNumber, String fontName, int fontStyle, float fudgeFactor) {
+        synchronized (tables) {
+            short[] table = tables[fontNumber];
+            if (table == null) {
+                table = loadTable(fontName, fontStyle, fudgeFactor);
+                tables[fontNumber] = table;
+            }
+            return table;
+        }
+    }
+
+    //
+    // Private Methods
+    // ------- -------
+
+    /*
+    * Return the table for a font, from the file tables are saved in if it
+    * is there, else built and then saved.
+     */
+    private static short[] loadTable(String fontName, int fontStyle, float fudgeFactor) {
+        File file = null;
+        try {
+            String fileName = System.getProperty(FILE_PROPERTY);
+            if (fileName != null && fileName.length() > 0) {
+                file = new File(fileName);
+            }
+        } catch (SecurityException se) {
+        }
+        if (file == null) {
+            return buildTable(fontName, fontStyle, fudgeFactor);
+        }
+        String key = tableKey(fontName, fontStyle, fudgeFactor);
+        Properties saved = readFile(file);
+        short[] table = parseTable(saved.getProperty(key));
+        if (table == null) {
+            table = buildTable(fontName, fontStyle, fudgeFactor);
+            saved.setProperty(key, formatTable(table));
+            writeFile(file, saved);
+        }
+        return table;
+    }
+
+    /*
+    * Build the table for a font: step through Font sizes, measuring each,
+    * until its CAPITAL letters are at least as tall as each ascent.
+     */
+    private static short[] buildTable(String fontName, int fontStyle, float fudgeFactor) {
+        short[] table = new short[Sprite.MAX_LABEL_ASCENT + 1];
+        BufferedImage scratch = new BufferedImage(1, 1, BufferedImage.TYPE_INT_ARGB);
+        Graphics g = scratch.getGraphics();
+        try {
+            int fontSize = 1;
+            int capsAscent = capsAscent(g, new Font(fontName, fontStyle, fontSize), fudgeFactor);
+            for (int ascentHeightIdx = 1; ascentHeightIdx <= Sprite.MAX_LABEL_ASCENT; ascentHeightIdx++) {
+                while (ascentHeightIdx > capsAscent) {
+                    fontSize++;
+                    capsAscent = capsAscent(g, new Font(fontName, fontStyle, fontSize), fudgeFactor);
+                }
+                table[ascentHeightIdx] = (short) fontSize;
+            }
+        } finally {
+            g.dispose();
+        }
+        return table;
+    }
+
+    /*
+    * Return how tall a Font's CAPITAL letters are, in pixels.
+     */
+    private static int capsAscent(Graphics g, Font font, float fudgeFactor) {
+        FontMetrics fm = g.getFontMetrics(font);
+        return Math.round((fm.getMaxAscent() * fudgeFactor) / 100.0f);
+    }
+
+    /*
+    * Return the String a table is saved as, its sizes separated by commas.
+     */
+    private static String formatTable(short[] table) {
+        StringBuilder sb = new StringBuilder();
+        for (int idx = 1; idx < table.length; idx++) {
+            if (idx > 1) {
+                sb.append(',');
+            }
+            sb.append(table[idx]);
+        }
+        return sb.toString();
+    }
+
+    /*
+    * Return the table saved as a String by formatTable(), or null if there
+    * is no String or it is not a table.
+     */
+    private static short[] parseTable(String text) {
+        if (text == null) {
+            return null;
+        }
+        String[] sizes = text.split(",");
+        if (sizes.length != Sprite.MAX_LABEL_ASCENT) {
+            return null;
+        }
+        short[] table = new short[Sprite.MAX_LABEL_ASCENT + 1];
+        try {
+            for (int idx = 0; idx < sizes.length; idx++) {
+                table[idx + 1] = Short.parseShort(sizes[idx].trim());
+                if (table[idx + 1] <= 0 || (idx > 0 && table[idx + 1] < table[idx])) {
+                    return null;
+                }
+            }
+        } catch (NumberFormatException nfe) {
+            return null;
+        }
+        return table;
+    }
+
+    /*
+    * Return what a font's table is saved under. Anything that could change
+    * the table is part of it.
+     */
+    private static String tableKey(String fontName, int fontStyle, float fudgeFactor) {
+        Font font = new Font(fontName, fontStyle, Sprite.MAX_LABEL_ASCENT);
+        StringBuilder sb = new StringBuilder();
+        sb.append(System.getProperty("os.name")).append('/');
+        sb.append(System.getProperty("os.version")).append('/');
+        sb.append(System.getProperty("java.vendor")).append('/');
+        sb.append(System.getProperty("java.version")).append('/');
+        sb.append(fontName).append('/').append(fontStyle).append('/').append(fudgeFactor).append('/');
+        sb.append(font.getFontName()).append('/').append(font.getNumGlyphs());
+        return sb.toString();
+    }
+
+    /*
+    * Return the tables saved in a file, none if it can not be read.
+     */
+    private static Properties readFile(File file) {
+        Properties saved = new Properties();
+        if (!file.isFile()) {
+            return saved;
+        }
+        InputStream in = null;
+        try {
+            in = new FileInputStream(file);
+            saved.load(in);
+        } catch (IOException ioe) {
+            saved.clear();
+        } catch (IllegalArgumentException iae) {
+            saved.clear();
+        } catch (SecurityException se) {
+            saved.clear();
+        } finally {
+            close(in);
+        }
+        return saved;
+    }
+
+    /*
+    * Save tables in a file. It is written beside the file and renamed
+    * so that another program never reads half of it.
+     */
+    private static void writeFile(File file, Properties saved) {
+        File tmpFile = new File(file.getPath() + ".tmp");
+        OutputStream out = null;
+        try {
+            out = new FileOutputStream(tmpFile);
+            saved.store(out, "com.guyhaas.tg font size tables");
+            out.close();
+            out = null;
+            if (!tmpFile.renameTo(file)) {
+                file.delete();
+                tmpFile.renameTo(file);
+            }
+        } catch (IOException ioe) {
+        } catch (SecurityException se) {
+        } finally {
+            close(out);
+            if (tmpFile.exists()) {
+                tmpFile.delete();
+            }
+        }
+    }
+
+    private static void close(Closeable stream) {
+        if (stream != null) {
+            try {
+                stream.close();
+            } catch (IOException ioe) {
+            }
+        }
+    }
+
+} // end class TGFontSizes
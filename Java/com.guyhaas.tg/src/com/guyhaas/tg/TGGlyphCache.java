@@ -0,0 +1,168 @@
+package com.guyhaas.tg;
+
+import java.awt.Color;
+import java.awt.Font;
+import java.awt.FontMetrics;
+import java.awt.Graphics;
+import java.awt.image.BufferedImage;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * TGGlyphCache holds rasterized labels so that drawing the same text in the
+ * same Font again is a copy of pixels instead of another trip through text
+ * layout and glyph rendering.
+ * <p>
+ * A label is rendered once, in white on a transparent Image, exactly as
+ * TGLabelOp would draw it, and kept as a mask: the coverage (alpha) of each
+ * pixel in its clip rectangle. The mask does not depend on color, so one entry
+ * serves a label drawn in any color. Least recently used entries are dropped
+ * once there are more than MAX_ENTRIES of them.
+ * <p>
+ * Methods are thread-safe.
+ */
+class TGGlyphCache {
+
+    //
+    // Nested Classes
+    // ------ -------
+
+    /**
+     * A rasterized label. The mask covers the rectangle TGLabelOp clips the
+     * label to: width pixels wide, height pixels tall, with the baseline
+     * ascent pixels down from its top.
+     */
+    static final class Mask {
+
+        final int width;
+        final int height;
+        final int ascent;
+
+        /*
+        * Coverage of each pixel, 0 through 255, row after row.
+         */
+        final byte[] coverage;
+
+        Mask(int width, int height, int ascent, byte[] coverage) {
+            this.width = width;
+            this.height = height;
+            this.ascent = ascent;
+            this.coverage = coverage;
+        }
+
+    }
+
+    /*
+    * What a Mask is looked up by.
+     */
+    private static final class Key {
+
+        final Font font;
+        final String text;
+
+        Key(Font font, String text) {
+            this.font = font;
+            this.text = text;
+        }
+
+        public boolean equals(Object obj) {
+            if (!(obj instanceof Key)) {
+                return false;
+            }
+            Key key = (Key) obj;
+            return font.equals(key.font) && text.equals(key.text);
+        }
+
+        public int hashCode() {
+            return font.hashCode() * 31 + text.hashCode();
+        }
+
+    }
+
+    //
+    // Symbolic Constants
+    // -------- ---------
+
+    /*
+    * Maximum number of labels kept.
+     */
+    private static final int MAX_ENTRIES = 512;
+
+    /*
+    * Labels covering more pixels than this are not cached; they are not
+    * the kind that get drawn over and over.
+     */
+    private static final int MAX_MASK_PIXELS = 64 * 1024;
+
+    //
+    // Class Fields
+    // ----- ------
+
+    /*
+    * Cached Masks, least to most recently used.
+     */
+    private static final Map<Key, Mask> masks = new LinkedHashMap<Key, Mask>(64, 0.75f, true) {
+        protected boolean removeEldestEntry(Map.Entry<Key, Mask> eldest) {
+            return size() > MAX_ENTRIES;
+        }
+    };
+
+    //
+    // Constructor
+    // -----------
+    private TGGlyphCache() {
+    }
+
+    //
+    // Methods
+    // -------
+    /**
+     * Return the Mask for a label, rendering it if it is not in the cache.
+     * Returns null if the label is too big to be cached.
+     *
+     * @param font the label's Font
+     * @param text the label
+     */
+    static Mask getMask(Font font, String text) {
+        Key key = new Key(font, text);
+        synchronized (masks) {
+            Mask mask = masks.get(key);
+            if (mask != null) {
+                return mask;
+            }
+        }
+        // an Image's default Graphics renders text the same whatever
+        // the type of Image, so the label comes out as it would on
+        // TGCanvas' graphics Image
+        BufferedImage scratch = new BufferedImage(1, 1, BufferedImage.TYPE_INT_ARGB);
+        Graphics g = scratch.getGraphics();
+        g.setFont(font);
+        FontMetrics fm = g.getFontMetrics();
+        g.dispose();
+        int width = fm.stringWidth(text);
+        int height = fm.getHeight();
+        int ascent = fm.getMaxAscent();
+        if ((long) width * height > MAX_MASK_PIXELS) {
+            return null;
+        }
+        byte[] coverage = new byte[Math.max(width, 0) * Math.max(height, 0)];
+        if (width > 0 && height > 0) {
+            scratch = new BufferedImage(width, height, BufferedImage.TYPE_INT_ARGB);
+            g = scratch.getGraphics();
+            g.setColor(Color.WHITE);
+            g.setFont(font);
+            g.drawString(text, 0, ascent);
+            g.dispose();
+            int[] argb = scratch.getRGB(0, 0, width, height, null, 0, width);
+            for (int idx = 0; idx < argb.length; idx++) {
+                coverage[idx] = (byte) (argb[idx] >>> 24);
+            }
+        }
+        Mask mask = new Mask(width, height, ascent, coverage);
+        synchronized (masks) {
+            masks.put(key, mask);
+        }
+        return mask;
+    }
+
+} // end class TGGlyphCache
@@ -4,7 +4,10 @@ import java.awt.Color;
 import java.awt.Font;
 import java.awt.FontMetrics;
 import java.awt.Graphics;
+import java.awt.font.FontRenderContext;
+import java.awt.geom.Rectangle2D;
 import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferInt;
 import java.awt.Rectangle;
 
 /**
@@ -12,13 +15,16 @@ import java.awt.Rectangle;
  * <p>
  * @author Guy Haas
  */
-public class TGLabelOp implements TGGraphicsOp {
+public class TGLabelOp implements TGGraphicsOp, TGBoundedOp {
 
     private Color color;
     private Font font;
     private String text;
     private TGPoint where;
 
+    // computed the first time it is asked for
+    private Rectangle2D turtleBounds;
+
     //
     // constructor
     //
@@ -40,6 +46,16 @@ public class TGLabelOp implements TGGraphicsOp {
             return null;
         }
         int imageY = where.imageY(canvasHeight);
+        int imageType = inMemoryImage.getType();
+        if (color.getAlpha() == 255
+                && (imageType == BufferedImage.TYPE_INT_RGB || imageType == BufferedImage.TYPE_INT_ARGB)
+                && inMemoryImage.getRaster().getDataBuffer() instanceof DataBufferInt) {
+            TGGlyphCache.Mask mask = TGGlyphCache.getMask(font, text);
+            if (mask != null) {
+                int[] imagePixels = ((DataBufferInt) inMemoryImage.getRaster().getDataBuffer()).getData();
+                return blitMask(mask, imagePixels, canvasWidth, canvasHeight, imageX, imageY - mask.ascent);
+            }
+        }
         Graphics g = inMemoryImage.getGraphics();
         g.setColor(color);
         g.setFont(font);
@@ -55,4 +71,82 @@ public class TGLabelOp implements TGGraphicsOp {
         return clipRect;
     }
 
+    /*
+    * Paint the label's pixels, as rendered in a cached mask, in its color.
+    * The mask's top-left corner goes at (left, top) in the Image; the parts
+    * of it off the Image are skipped. Returns the mask's rectangle, as the
+    * Graphics path returns its clip rectangle.
+     */
+    private Rectangle blitMask(TGGlyphCache.Mask mask, int[] imagePixels, int imageWidth, int imageHeight,
+            int left, int top) {
+        int rgb = color.getRGB();
+        int firstCol = Math.max(0, -left);
+        int lastCol = Math.min(mask.width, imageWidth - left);
+        int firstRow = Math.max(0, -top);
+        int lastRow = Math.min(mask.height, imageHeight - top);
+        for (int row = firstRow; row < lastRow; row++) {
+            int maskIdx = row * mask.width;
+            int imageIdx = (top + row) * imageWidth + left;
+            for (int col = firstCol; col < lastCol; col++) {
+                int coverage = mask.coverage[maskIdx + col] & 0xFF;
+                if (coverage == 0) {
+                    continue;
+                }
+                if (coverage == 255) {
+                    imagePixels[imageIdx + col] = rgb;
+                } else {
+                    // blend as TGLineRaster does: coverage scaled to 0..256
+                    // keeps the sums within 32 bits (unsigned) and >>> 8
+                    // keeps red's remainder out of blue
+                    int alpha = coverage + (coverage >> 7);
+                    int under = imagePixels[imageIdx + col];
+                    int redBlue = ((rgb & 0xFF00FF) * alpha + (under & 0xFF00FF) * (256 - alpha)) >>> 8;
+                    int green = ((rgb & 0x00FF00) * alpha + (under & 0x00FF00) * (256 - alpha)) >>> 8;
+                    imagePixels[imageIdx + col] = 0xFF000000 | (redBlue & 0xFF00FF) | (green & 0x00FF00);
+                }
+            }
+        }
+        return new Rectangle(left, top, mask.width, mask.height);
+    }
+
+    /**
+     * Return the area of TurtleSpace this label may paint. The text starts at
+     * where and sits on a baseline through it.
+     */
+    public Rectangle2D getTurtleBounds() {
+        Rectangle2D bounds = turtleBounds;
+        if (bounds == null) {
+            FontRenderContext frc = new FontRenderContext(null, false, false);
+            Rectangle2D textBounds = font.getStringBounds(text, frc);
+            bounds = new Rectangle2D.Double(where.xDoubleValue() + textBounds.getX() - 1,
+                    where.yDoubleValue() - textBounds.getMaxY() - 1,
+                    textBounds.getWidth() + 2, textBounds.getHeight() + 2);
+            turtleBounds = bounds;
+        }
+        return bounds;
+    }
+
+    //
+    // Package Methods
+    // ------- -------
+    /*
+    * Accessors for the attributes of the label, e.g., for TGRecorder
+    * encoding it.
+     */
+    Color getColor() {
+        return color;
+    }
+
+    Font getFont() {
+        return font;
+    }
+
+    String getText() {
+        return text;
+    }
+
+    TGPoint getWhere() {
+        return where;
+    }
+
 } // end class TGLabelOp
@@ -2,10 +2,10 @@ package com.guyhaas.tg;
 
 import java.awt.BasicStroke;
 import java.awt.Color;
-import java.awt.Graphics;
 import java.awt.Graphics2D;
 import java.awt.image.BufferedImage;
 import java.awt.geom.Line2D;
+import java.awt.geom.Rectangle2D;
 import java.awt.Rectangle;
 
 /**
@@ -32,7 +32,7 @@ import java.awt.Rectangle;
  * generate a line that has a different width.  The above sequence
  * with the turtle heading at 45 degrees is a good example.
  */
-public class TGLineOp implements TGGraphicsOp {
+public class TGLineOp implements TGGraphicsOp, TGBoundedOp, TGContextOp {
 
     //
     // Symbolic Constants
@@ -164,12 +164,31 @@ public class TGLineOp implements TGGraphicsOp {
      *
      * @param inMemoryImage where to draw
      */
+    public Rectangle doIt(BufferedImage inMemoryImage) {
+        TGRenderContext context = new TGRenderContext(inMemoryImage);
+        try {
+            return doIt(context);
+        } finally {
+            context.dispose();
+        }
+    }
+
+    //
+    // TGContextOp interface methods
+    // ----------- --------- -------
+    /**
+     * Draw the line defined by this TGLineOp object with the render pass'
+     * Graphics2D.
+     *
+     * @param context where and with what to draw
+     */
     /*
     * Due to rounding issues, the clipping rectangle's width and
     * height are increased by two pixels and the origin is up and
     * left a single pixel.
      */
-    public Rectangle doIt(BufferedImage inMemoryImage) {
+    public Rectangle doIt(TGRenderContext context) {
+        BufferedImage inMemoryImage = context.getImage();
         int imageWidth = inMemoryImage.getWidth();
         if (imageWidth <= 0) {
             return null;
@@ -178,30 +197,65 @@ public class TGLineOp implements TGGraphicsOp {
         if (imageHeight <= 0) {
             return null;
         }
-        Graphics2D g2 = (Graphics2D) inMemoryImage.getGraphics();
-        g2.setColor(penColor);
-        BasicStroke bs = null;
-        if (penPattern == null) {
-            bs = new BasicStroke((float) penWidth, typeLineCap, BasicStroke.JOIN_BEVEL);
-        } else {
-            bs = new BasicStroke((float) penWidth, typeLineCap, BasicStroke.JOIN_BEVEL, 0, penPattern, 0);
-        }
-        g2.setStroke(bs);
         double p1X = endPt1.imageX((double) imageWidth);
         double p1Y = endPt1.imageY((double) imageHeight);
         double p2X = endPt2.imageX((double) imageWidth);
         double p2Y = endPt2.imageY((double) imageHeight);
-        Line2D line = new Line2D.Double(p1X, p1Y, p2X, p2Y);
         Rectangle clipRect = new Rectangle((int) (Math.floor(p1X - (penWidth / 2.0))) - 1,
                 (int) (Math.floor((p1Y < p2Y ? p1Y : p2Y) - (penWidth / 2.0))) - 1,
                 (int) (Math.ceil(Math.abs(p1X - p2X) + penWidth)) + 2,
                 (int) (Math.ceil(Math.abs(p1Y - p2Y) + penWidth)) + 2);
-        g2.setClip(clipRect.x, clipRect.y, clipRect.width, clipRect.height);
+        if (TGLineRaster.canDraw(context, penWidth, typeLineCap, penPattern)
+                && TGLineRaster.inImage(context, p1X, p1Y) && TGLineRaster.inImage(context, p2X, p2Y)) {
+            TGLineRaster.drawLine(context, p1X, p1Y, p2X, p2Y, penColor.getRGB(), penWidth);
+            return clipRect;
+        }
+        Line2D line = new Line2D.Double(p1X, p1Y, p2X, p2Y);
+        Graphics2D g2 = context.getGraphics(penColor, (float) penWidth, typeLineCap,
+                BasicStroke.JOIN_BEVEL, penPattern, clipRect);
         g2.draw(line);
-        g2.dispose();
         return clipRect;
     }
 
+    //
+    // TGBoundedOp interface methods
+    // ----------- --------- -------
+    /**
+     * Return the area of TurtleSpace this line may paint: the box around its
+     * end points widened by the pen's width (enough for any line cap).
+     */
+    public Rectangle2D getTurtleBounds() {
+        double minY = Math.min(endPt1.yDoubleValue(), endPt2.yDoubleValue());
+        double maxY = Math.max(endPt1.yDoubleValue(), endPt2.yDoubleValue());
+        return new Rectangle2D.Double(endPt1.xDoubleValue() - penWidth, minY - penWidth,
+                (endPt2.xDoubleValue() - endPt1.xDoubleValue()) + 2 * penWidth,
+                (maxY - minY) + 2 * penWidth);
+    }
+
+
+    //
+    // Package Methods
+    // ------- -------
+    /*
+    * Accessors for the attributes of the line, e.g., for TGOpSpill
+    * encoding it.
+     */
+    int getLineCap() {
+        return typeLineCap;
+    }
+
+    Color getPenColor() {
+        return penColor;
+    }
+
+    float[] getPenPattern() {
+        return penPattern;
+    }
+
+    int getPenWidth() {
+        return penWidth;
+    }
+
 
     /*
    * return String: "TGLineOp[color=xx, width=nn, endPt1={x,y}, endPt2={x,y}]"
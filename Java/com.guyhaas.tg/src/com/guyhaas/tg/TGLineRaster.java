@@ -0,0 +1,290 @@
+package com.guyhaas.tg;
+
+import java.awt.BasicStroke;
+
+/**
+ * TGLineRaster draws thin, solid lines by writing straight into the pixels of
+ * TGCanvas' graphics Image, skipping Java2D's stroking machinery.
+ * <p>
+ * Most turtle drawings are made of short lines, one to three pixels wide, and
+ * setting up Java2D to stroke each of them costs far more than setting the
+ * handful of pixels they cover. Lines are drawn with Bresenham's algorithm; a
+ * line wider than one pixel is drawn as a run of pixels across its minor axis
+ * at each step, long enough to give it the pen's width. Lines one pixel wide
+ * can instead be drawn anti-aliased with Xiaolin Wu's algorithm.
+ * <p>
+ * Lines are drawn in the direction they are given, so callers must give a line
+ * the same way each time it is drawn: TGLineOp's end points are ordered left
+ * to right so that redrawing a line in the background color erases it. (This
+ * does not hold for anti-aliased lines; their edges are blended with whatever
+ * is under them.) Which lines are drawn here depends only on their shape, not
+ * their color, so a line drawn with a translucent pen, whose color is blended
+ * into the pixels it covers, is erased by redrawing it with an opaque one.
+ * <p>
+ * The pixels set are not those Java2D's stroking would set. A line runs from
+ * the pixel containing one end point to the pixel containing the other, both
+ * included, where Java2D rounds end points to the nearest pixel corner and
+ * a butt cap stops short of the last pixel; so a line with fractional end
+ * points is often one pixel further left or up. A wider line's pixels are
+ * runs centered on the Bresenham pixel, not the pixels whose centers are
+ * inside the stroke's outline, so its edges differ too.
+ * <p>
+ * Wide, dashed, or capped lines are left to Java2D.
+ */
+class TGLineRaster {
+
+    //
+    // Symbolic Constants
+    // -------- ---------
+
+    /**
+     * Widest pen drawn here.
+     */
+    static final int MAX_PEN_WIDTH = 3;
+
+    //
+    // Constructor
+    // -----------
+    private TGLineRaster() {
+    }
+
+    //
+    // Methods
+    // -------
+    /**
+     * Return true if lines drawn with the specified pen can be drawn here, on
+     * the context's Image. The pen's color does not matter.
+     */
+    static boolean canDraw(TGRenderContext context, int penWidth, int lineCap, float[] pattern) {
+        return pattern == null && lineCap == BasicStroke.CAP_BUTT
+                && penWidth >= 1 && penWidth <= MAX_PEN_WIDTH
+                && context.getImagePixels() != null;
+    }
+
+    /**
+     * Draw a line between two points, in Image coordinates, both of which must
+     * be on the context's Image (see inImage()), in a color, an ARGB value.
+     * The pen must be one canDraw() approves of.
+     */
+    static void drawLine(TGRenderContext context, double x1, double y1, double x2, double y2,
+            int argb, int penWidth) {
+        int alpha = argb >>> 24;
+        alpha += alpha >> 7;
+        if (penWidth == 1 && context.isAntialiasing()) {
+            drawWuLine(context, x1, y1, x2, y2, argb & 0xffffff, alpha);
+        } else {
+            drawBresenhamLine(context, x1, y1, x2, y2, argb & 0xffffff, alpha, penWidth);
+        }
+    }
+
+    /**
+     * Return true if a point, in Image coordinates, is on the context's Image.
+     */
+    static boolean inImage(TGRenderContext context, double x, double y) {
+        return x >= 0 && y >= 0 && x < context.getImageWidth() && y < context.getImageHeight();
+    }
+
+    //
+    // Private Methods
+    // ------- -------
+
+    /*
+    * Bresenham's algorithm from the pixel containing (x1,y1) to the one
+    * containing (x2,y2). For wider pens, at each step a run of pixels
+    * across the minor axis is set, its length the pen's width divided by
+    * the cosine of the line's angle with the major axis. Each pixel gets
+    * alpha/256 of the color.
+     */
+    private static void drawBresenhamLine(TGRenderContext context, double x1, double y1, double x2, double y2,
+            int rgb, int alpha, int penWidth) {
+        int[] pixels = context.getImagePixels();
+        int imageWidth = context.getImageWidth();
+        int imageHeight = context.getImageHeight();
+        int curX = (int) Math.floor(x1);
+        int curY = (int) Math.floor(y1);
+        int endX = (int) Math.floor(x2);
+        int endY = (int) Math.floor(y2);
+        int deltaX = Math.abs(endX - curX);
+        int deltaY = Math.abs(endY - curY);
+        int stepX = (curX < endX) ? 1 : -1;
+        int stepY = (curY < endY) ? 1 : -1;
+        boolean xMajor = deltaX >= deltaY;
+        int runLength = 1;
+        if (penWidth > 1) {
+            double majorLength = Math.max(Math.abs(x2 - x1), Math.abs(y2 - y1));
+            double length = Math.hypot(x2 - x1, y2 - y1);
+            runLength = (int) Math.round(majorLength == 0 ? penWidth : penWidth * length / majorLength);
+        }
+        int runStart = -runLength / 2;
+        int error = deltaX - deltaY;
+        while (true) {
+            if (alpha < 256) {
+                blendRun(pixels, imageWidth, imageHeight, curX, curY, xMajor, runStart, runLength,
+                        rgb, alpha);
+            } else if (runLength == 1) {
+                pixels[curY * imageWidth + curX] = rgb;
+            } else if (xMajor) {
+                int firstY = Math.max(curY + runStart, 0);
+                int lastY = Math.min(curY + runStart + runLength, imageHeight) - 1;
+                for (int runY = firstY; runY <= lastY; runY++) {
+                    pixels[runY * imageWidth + curX] = rgb;
+                }
+            } else {
+                int firstX = Math.max(curX + runStart, 0);
+                int lastX = Math.min(curX + runStart + runLength, imageWidth) - 1;
+                int rowIdx = curY * imageWidth;
+                for (int runX = firstX; runX <= lastX; runX++) {
+                    pixels[rowIdx + runX] = rgb;
+                }
+            }
+            if (curX == endX && curY == endY) {
+                break;
+            }
+            int error2 = 2 * error;
+            if (error2 > -deltaY) {
+                error -= deltaY;
+                curX += stepX;
+            }
+            if (error2 < deltaX) {
+                error += deltaX;
+                curY += stepY;
+            }
+        }
+    }
+
+    /*
+    * Blend alpha/256 of a color into the run of pixels drawn at one step of
+    * drawBresenhamLine(), across the minor axis from (x,y).
+     */
+    private static void blendRun(int[] pixels, int imageWidth, int imageHeight, int x, int y,
+            boolean xMajor, int runStart, int runLength, int rgb, int alpha) {
+        if (runLength == 1) {
+            int idx = y * imageWidth + x;
+            pixels[idx] = mix(pixels[idx], rgb, alpha);
+        } else if (xMajor) {
+            int firstY = Math.max(y + runStart, 0);
+            int lastY = Math.min(y + runStart + runLength, imageHeight) - 1;
+            for (int runY = firstY; runY <= lastY; runY++) {
+                int idx = runY * imageWidth + x;
+                pixels[idx] = mix(pixels[idx], rgb, alpha);
+            }
+        } else {
+            int firstX = Math.max(x + runStart, 0);
+            int lastX = Math.min(x + runStart + runLength, imageWidth) - 1;
+            int rowIdx = y * imageWidth;
+            for (int runX = firstX; runX <= lastX; runX++) {
+                pixels[rowIdx + runX] = mix(pixels[rowIdx + runX], rgb, alpha);
+            }
+        }
+    }
+
+    /*
+    * Xiaolin Wu's anti-aliased line algorithm. Each step along the major
+    * axis blends the color into the two pixels straddling the line, in
+    * proportion to how close the line passes to their centers, scaled by
+    * alpha/256.
+     */
+    private static void drawWuLine(TGRenderContext context, double x1, double y1, double x2, double y2,
+            int rgb, int alpha) {
+        // work with pixel centers at integer coordinates
+        x1 -= 0.5;
+        y1 -= 0.5;
+        x2 -= 0.5;
+        y2 -= 0.5;
+        boolean steep = Math.abs(y2 - y1) > Math.abs(x2 - x1);
+        if (steep) {
+            double swap = x1;
+            x1 = y1;
+            y1 = swap;
+            swap = x2;
+            x2 = y2;
+            y2 = swap;
+        }
+        if (x1 > x2) {
+            double swap = x1;
+            x1 = x2;
+            x2 = swap;
+            swap = y1;
+            y1 = y2;
+            y2 = swap;
+        }
+        double opacity = alpha / 256.0;
+        double deltaX = x2 - x1;
+        double gradient = (deltaX == 0) ? 1.0 : (y2 - y1) / deltaX;
+
+        // first end point
+        double endX = Math.rint(x1);
+        double endY = y1 + gradient * (endX - x1);
+        double gapX = 1.0 - fraction(x1 + 0.5);
+        int firstX = (int) endX;
+        int firstY = (int) Math.floor(endY);
+        blendPair(context, steep, firstX, firstY, fraction(endY), gapX * opacity, rgb);
+        double intersectY = endY + gradient;
+
+        // second end point
+        endX = Math.rint(x2);
+        endY = y2 + gradient * (endX - x2);
+        gapX = fraction(x2 + 0.5);
+        int lastX = (int) endX;
+        int lastY = (int) Math.floor(endY);
+        blendPair(context, steep, lastX, lastY, fraction(endY), gapX * opacity, rgb);
+
+        for (int curX = firstX + 1; curX < lastX; curX++) {
+            int curY = (int) Math.floor(intersectY);
+            blendPair(context, steep, curX, curY, intersectY - curY, opacity, rgb);
+            intersectY += gradient;
+        }
+    }
+
+    /*
+    * Blend the pair of pixels at (major, minor) and (major, minor+1), the
+    * first getting 1-frac and the second frac of the color, both scaled by
+    * coverage.
+     */
+    private static void blendPair(TGRenderContext context, boolean steep, int major, int minor,
+            double frac, double coverage, int rgb) {
+        if (steep) {
+            blend(context, minor, major, (1.0 - frac) * coverage, rgb);
+            blend(context, minor + 1, major, frac * coverage, rgb);
+        } else {
+            blend(context, major, minor, (1.0 - frac) * coverage, rgb);
+            blend(context, major, minor + 1, frac * coverage, rgb);
+        }
+    }
+
+    /*
+    * Mix amount (0.0 through 1.0) of the color into the pixel at (x,y),
+    * if it is on the Image.
+     */
+    private static void blend(TGRenderContext context, int x, int y, double amount, int rgb) {
+        if (x < 0 || y < 0 || x >= context.getImageWidth() || y >= context.getImageHeight()) {
+            return;
+        }
+        int alpha = (int) Math.round(amount * 256);
+        if (alpha <= 0) {
+            return;
+        }
+        int[] pixels = context.getImagePixels();
+        int idx = y * context.getImageWidth() + x;
+        if (alpha >= 256) {
+            pixels[idx] = rgb;
+            return;
+        }
+        pixels[idx] = mix(pixels[idx], rgb, alpha);
+    }
+
+    /*
+    * Return alpha/256 (0 through 256) of a color mixed with the rest of the
+    * pixel under it.
+     */
+    private static int mix(int under, int rgb, int alpha) {
+        int redBlue = ((rgb & 0xff00ff) * alpha + (under & 0xff00ff) * (256 - alpha)) >>> 8;
+        int green = ((rgb & 0x00ff00) * alpha + (under & 0x00ff00) * (256 - alpha)) >>> 8;
+        return (redBlue & 0xff00ff) | (green & 0x00ff00);
+    }
+
+    private static double fraction(double value) {
+        return value - Math.floor(value);
+    }
+
+} // end class TGLineRaster
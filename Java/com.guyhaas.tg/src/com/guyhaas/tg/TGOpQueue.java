@@ -0,0 +1,255 @@
+package com.guyhaas.tg;
+
+import java.awt.geom.Rectangle2D;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * TGOpQueue is the queue of TGGraphicsOp objects waiting to be performed by
+ * TGCanvas.
+ * <p>
+ * Any number of Threads (one per turtle, say) may append operations at the same
+ * time without ever blocking; an append is a single atomic swap of the queue's
+ * head. Only one Thread at a time may remove operations. TGCanvas guarantees
+ * this by holding its render lock while it drains the queue.
+ * <p>
+ * The implementation is a linked list of nodes with a permanent "stub" node at
+ * its tail, i.e., the intrusive multi-producer/single-consumer queue described
+ * by Dmitry Vyukov.
+ */
+class TGOpQueue {
+
+    //
+    // Nested Classes
+    // ------ -------
+
+    /*
+    * A link in the queue. The op field is cleared once the operation
+    * has been handed to the consumer so the node does not keep a
+    * completed operation alive.
+     */
+    private static final class Node {
+
+        TGGraphicsOp op;
+        volatile Node next;
+
+        Node(TGGraphicsOp op) {
+            this.op = op;
+        }
+
+    }
+
+    //
+    // Class Fields
+    // ----- ------
+
+    /*
+    * Most recently appended node. Producers swap themselves in here.
+     */
+    private final AtomicReference<Node> head;
+
+    /*
+    * Node preceding the oldest pending operation. Only touched by the
+    * consumer.
+     */
+    private Node tail;
+
+    /*
+    * Number of operations appended but not yet removed.
+     */
+    private final AtomicInteger size;
+
+    /*
+    * Newest node countThrough() has looked at, or tail, and how many
+    * pending nodes, oldest first, it has looked at. Each one looked at is
+    * numbered, from one, and marked in pendingTiles. numRemoved counts
+    * nodes removed since numbering started; a node numbered seq is the
+    * (seq - numRemoved)th oldest one pending. Only touched by the
+    * consumer.
+     */
+    private Node scanned;
+    private int numScanned;
+    private int lastSeq;
+    private int numRemoved;
+    private final TGPendingTiles pendingTiles = new TGPendingTiles();
+
+    //
+    // Constructor
+    // -----------
+    /**
+     * Instantiate an empty queue.
+     */
+    TGOpQueue() {
+        Node stub = new Node(null);
+        head = new AtomicReference<Node>(stub);
+        tail = stub;
+        size = new AtomicInteger();
+        resetScan();
+    }
+
+    //
+    // Producer Methods
+    // -------- -------
+    /**
+     * Append an operation to the queue. Never blocks. Return the number of
+     * operations in the queue, including this one.
+     */
+    int add(TGGraphicsOp op) {
+        Node node = new Node(op);
+        int newSize = size.incrementAndGet();
+        Node prev = head.getAndSet(node);
+        prev.next = node;
+        return newSize;
+    }
+
+    /**
+     * Append numOps operations, ops[0] through ops[numOps-1], to the queue in
+     * one step. Never blocks. Return the number of operations in the queue,
+     * including these.
+     */
+    int addAll(TGGraphicsOp[] ops, int numOps) {
+        if (numOps <= 0) {
+            return size.get();
+        }
+        Node first = new Node(ops[0]);
+        Node last = first;
+        for (int idx = 1; idx < numOps; idx++) {
+            Node node = new Node(ops[idx]);
+            last.next = node;
+            last = node;
+        }
+        int newSize = size.addAndGet(numOps);
+        Node prev = head.getAndSet(last);
+        prev.next = first;
+        return newSize;
+    }
+
+    //
+    // Consumer Methods
+    // -------- -------
+    /**
+     * Return the number of operations, counting from the oldest, through the
+     * newest one which may paint within area (in TurtleSpace coordinates).
+     * Operations which are not TGBoundedOps may paint anywhere. Zero means
+     * none of the pending operations touch area.
+     * <p>
+     * The bounds of each operation are only asked for once, when it is first
+     * looked at, and kept in a TGPendingTiles index; after that this only
+     * costs a look at the tiles area touches, no matter how many operations
+     * are pending. The answer is rounded up to the newest operation in those
+     * tiles. A TGPolylineOp is sealed when it is looked at so its bounds stay
+     * put.
+     * <p>
+     * Must only be invoked by one Thread at a time.
+     */
+    int countThrough(Rectangle2D area) {
+        for (Node node = scanned.next; node != null; node = node.next) {
+            TGGraphicsOp op = node.op;
+            if (op instanceof TGPolylineOp) {
+                ((TGPolylineOp) op).stopAppends();
+            }
+            lastSeq++;
+            if (op instanceof TGBoundedOp) {
+                pendingTiles.mark(((TGBoundedOp) op).getTurtleBounds(), lastSeq);
+            } else {
+                pendingTiles.markAnywhere(lastSeq);
+            }
+            scanned = node;
+            numScanned++;
+        }
+        return Math.max(pendingTiles.newest(area) - numRemoved, 0);
+    }
+
+    /**
+     * Remove up to batch.length of the oldest operations, storing them into
+     * batch in queue order. Return the number of operations removed.
+     * <p>
+     * Must only be invoked by one Thread at a time.
+     */
+    int drain(TGGraphicsOp[] batch) {
+        return drain(batch, batch.length);
+    }
+
+    /**
+     * Remove up to maxOps (no more than batch.length) of the oldest operations,
+     * storing them into batch in queue order. Return the number of operations
+     * removed.
+     * <p>
+     * Must only be invoked by one Thread at a time.
+     */
+    int drain(TGGraphicsOp[] batch, int maxOps) {
+        int count = 0;
+        int limit = Math.min(maxOps, batch.length);
+        Node node = tail;
+        while (count < limit) {
+            Node next = node.next;
+            if (next == null) {
+                break;
+            }
+            batch[count++] = next.op;
+            next.op = null;
+            node = next;
+        }
+        if (count > 0) {
+            tail = node;
+            size.addAndGet(-count);
+            numRemoved += count;
+            numScanned -= count;
+            if (numScanned <= 0) {
+                resetScan();
+            }
+        }
+        return count;
+    }
+
+    /**
+     * Remove and discard all pending operations. Must only be invoked by one
+     * Thread at a time.
+     */
+    void clear() {
+        Node node = tail;
+        int count = 0;
+        Node next;
+        while ((next = node.next) != null) {
+            next.op = null;
+            node = next;
+            count++;
+        }
+        tail = node;
+        if (count > 0) {
+            size.addAndGet(-count);
+        }
+        resetScan();
+    }
+
+    /*
+    * Forget what countThrough() has looked at, none of which is pending.
+     */
+    private void resetScan() {
+        scanned = tail;
+        numScanned = 0;
+        lastSeq = 0;
+        numRemoved = 0;
+        pendingTiles.clear();
+    }
+
+    //
+    // Methods Usable by Any Thread
+    // ------- ------ -- --- ------
+    /**
+     * Return true if there are no operations waiting to be removed.
+     * <p>
+     * An append still in progress on another Thread may not yet be visible.
+     */
+    boolean isEmpty() {
+        return size.get() == 0;
+    }
+
+    /**
+     * Return the number of operations waiting to be removed.
+     */
+    int size() {
+        return size.get();
+    }
+
+} // end class TGOpQueue
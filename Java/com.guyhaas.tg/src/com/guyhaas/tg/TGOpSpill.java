@@ -0,0 +1,301 @@
+package com.guyhaas.tg;
+
+import java.awt.Color;
+
+/**
+ * TGOpSpill holds graphics operations that did not fit in TGCanvas' bounded
+ * queue when its overflow policy is TGCanvas.QUEUE_SPILL.
+ * <p>
+ * Operations are kept in the order they were added. Solid lines, the polylines
+ * TGCanvas.addLine() builds out of them (by far the most common operation),
+ * and fills are not kept as objects but encoded into arrays of primitives,
+ * coordinates and attributes, and turned back into operations as they are
+ * removed. A polyline takes 16 bytes per point plus a few more. Other
+ * operations are kept as they are.
+ * <p>
+ * The spill is full once what has been added to it since it was last empty
+ * takes up MAX_BYTES, counting other operations as OTHER_OP_BYTES (plus their
+ * text for labels). TGCanvas then stops adding until it has been emptied, see
+ * TGCanvas.setQueueLimit(). Polylines must be sealed before they are added.
+ * <p>
+ * TGOpSpill is not thread-safe; TGCanvas only touches it holding its spill
+ * lock.
+ */
+class TGOpSpill {
+
+    //
+    // Symbolic Constants
+    // -------- ---------
+
+    /**
+     * Bytes of operations the spill holds before it is full.
+     */
+    static final int MAX_BYTES = 32 * 1024 * 1024;
+
+    /*
+    * Bytes an operation which is not encoded is counted as.
+     */
+    private static final int OTHER_OP_BYTES = 128;
+
+    /*
+    * Kinds of entries.
+     */
+    private static final byte KIND_LINE = 0;
+    private static final byte KIND_POLYLINE = 1;
+    private static final byte KIND_FILL = 2;
+    private static final byte KIND_OTHER = 3;
+
+    /*
+    * Initial number of entries room is allocated for. The arrays shrink
+    * back to this when the spill is emptied.
+     */
+    private static final int INIT_CAPACITY = 1024;
+
+    //
+    // Class Fields
+    // ----- ------
+
+    /*
+    * Kind of each entry, in order added.
+     */
+    private byte[] kinds;
+
+    /*
+    * Encoded entries, in order added:
+    *   KIND_LINE      coords x1, y1, x2, y2; attrs ARGB color, pen width,
+    *                  line cap
+    *   KIND_POLYLINE  coords x, y of each point; attrs ARGB color, pen
+    *                  width, line cap, number of points
+    *   KIND_FILL      coords x, y; attrs ARGB color
+     */
+    private double[] coords;
+    private int[] attrs;
+
+    /*
+    * Operations which are not encoded.
+     */
+    private TGGraphicsOp[] otherOps;
+
+    /*
+    * Number of entries, coords, attrs, and other operations added, and
+    * removed, since the spill was last empty.
+     */
+    private int numAdded, numCoordsAdded, numAttrsAdded, numOthersAdded;
+    private int numRemoved, numCoordsRemoved, numAttrsRemoved, numOthersRemoved;
+
+    /*
+    * Bytes of entries added since the spill was last empty.
+     */
+    private long numBytes;
+
+    /*
+    * Most recently decoded pen color, reused while it does not change.
+     */
+    private Color lastColor;
+
+    //
+    // Constructor
+    // -----------
+    TGOpSpill() {
+        allocate();
+    }
+
+    //
+    // Methods
+    // -------
+    /**
+     * Append an operation. A TGPolylineOp must be sealed.
+     */
+    void add(TGGraphicsOp op) {
+        if (numAdded == kinds.length) {
+            kinds = grow(kinds, kinds.length * 2);
+        }
+        if (op instanceof TGPolylineOp) {
+            TGPolylineOp polyline = (TGPolylineOp) op;
+            double[] points = polyline.getPoints();
+            ensureCoords(points.length);
+            System.arraycopy(points, 0, coords, numCoordsAdded, points.length);
+            numCoordsAdded += points.length;
+            ensureAttrs(4);
+            attrs[numAttrsAdded++] = polyline.getPenColor().getRGB();
+            attrs[numAttrsAdded++] = polyline.getPenWidth();
+            attrs[numAttrsAdded++] = polyline.getLineCap();
+            attrs[numAttrsAdded++] = points.length / 2;
+            kinds[numAdded++] = KIND_POLYLINE;
+        } else if (op instanceof TGLineOp && ((TGLineOp) op).getPenPattern() == null) {
+            TGLineOp lineOp = (TGLineOp) op;
+            ensureCoords(4);
+            coords[numCoordsAdded++] = lineOp.endPt1.xDoubleValue();
+            coords[numCoordsAdded++] = lineOp.endPt1.yDoubleValue();
+            coords[numCoordsAdded++] = lineOp.endPt2.xDoubleValue();
+            coords[numCoordsAdded++] = lineOp.endPt2.yDoubleValue();
+            ensureAttrs(3);
+            attrs[numAttrsAdded++] = lineOp.getPenColor().getRGB();
+            attrs[numAttrsAdded++] = lineOp.getPenWidth();
+            attrs[numAttrsAdded++] = lineOp.getLineCap();
+            kinds[numAdded++] = KIND_LINE;
+        } else if (op instanceof TGFillOp) {
+            TGFillOp fill = (TGFillOp) op;
+            ensureCoords(2);
+            coords[numCoordsAdded++] = fill.getFillPoint().xDoubleValue();
+            coords[numCoordsAdded++] = fill.getFillPoint().yDoubleValue();
+            ensureAttrs(1);
+            attrs[numAttrsAdded++] = fill.getFillColor().getRGB();
+            kinds[numAdded++] = KIND_FILL;
+        } else {
+            if (numOthersAdded == otherOps.length) {
+                TGGraphicsOp[] newOps = new TGGraphicsOp[otherOps.length * 2];
+                System.arraycopy(otherOps, 0, newOps, 0, otherOps.length);
+                otherOps = newOps;
+            }
+            otherOps[numOthersAdded++] = op;
+            numBytes += OTHER_OP_BYTES;
+            if (op instanceof TGLabelOp) {
+                numBytes += 2 * ((TGLabelOp) op).getText().length();
+            }
+            kinds[numAdded++] = KIND_OTHER;
+        }
+        numBytes++;
+    }
+
+    /**
+     * Remove all operations.
+     */
+    void clear() {
+        allocate();
+    }
+
+    /**
+     * Remove up to maxOps (no more than batch.length) of the oldest operations,
+     * storing them into batch in order. Return the number of operations
+     * removed.
+     */
+    int drain(TGGraphicsOp[] batch, int maxOps) {
+        int count = 0;
+        int limit = Math.min(maxOps, batch.length);
+        while (count < limit && numRemoved < numAdded) {
+            switch (kinds[numRemoved++]) {
+                case KIND_LINE: {
+                    int coordIdx = numCoordsRemoved;
+                    numCoordsRemoved += 4;
+                    Color color = decodeColor(attrs[numAttrsRemoved]);
+                    batch[count++] = new TGLineOp(new TGPoint(coords[coordIdx], coords[coordIdx + 1]),
+                            new TGPoint(coords[coordIdx + 2], coords[coordIdx + 3]),
+                            color, attrs[numAttrsRemoved + 1], attrs[numAttrsRemoved + 2]);
+                    numAttrsRemoved += 3;
+                    break;
+                }
+                case KIND_POLYLINE: {
+                    Color color = decodeColor(attrs[numAttrsRemoved]);
+                    int numPoints = attrs[numAttrsRemoved + 3];
+                    batch[count++] = new TGPolylineOp(coords, numCoordsRemoved, numPoints, color,
+                            attrs[numAttrsRemoved + 1], attrs[numAttrsRemoved + 2]);
+                    numCoordsRemoved += 2 * numPoints;
+                    numAttrsRemoved += 4;
+                    break;
+                }
+                case KIND_FILL: {
+                    Color color = decodeColor(attrs[numAttrsRemoved++]);
+                    batch[count++] = new TGFillOp(new TGPoint(coords[numCoordsRemoved],
+                            coords[numCoordsRemoved + 1]), color);
+                    numCoordsRemoved += 2;
+                    break;
+                }
+                default:
+                    batch[count++] = otherOps[numOthersRemoved];
+                    otherOps[numOthersRemoved++] = null;
+            }
+        }
+        if (numRemoved == numAdded) {
+            allocate();
+        }
+        return count;
+    }
+
+    /**
+     * Return true if the spill is full; see the class comment.
+     */
+    boolean isFull() {
+        return numBytes >= MAX_BYTES;
+    }
+
+    /**
+     * Return the number of operations waiting to be removed.
+     */
+    int size() {
+        return numAdded - numRemoved;
+    }
+
+    //
+    // Private Methods
+    // ------- -------
+
+    /*
+    * Start over, empty, with arrays of the initial capacity.
+     */
+    private void allocate() {
+        if (kinds == null || kinds.length != INIT_CAPACITY || coords.length != 4 * INIT_CAPACITY
+                || attrs.length != 3 * INIT_CAPACITY) {
+            kinds = new byte[INIT_CAPACITY];
+            coords = new double[4 * INIT_CAPACITY];
+            attrs = new int[3 * INIT_CAPACITY];
+            otherOps = new TGGraphicsOp[INIT_CAPACITY];
+        } else {
+            for (int idx = 0; idx < numOthersAdded; idx++) {
+                otherOps[idx] = null;
+            }
+        }
+        numAdded = numCoordsAdded = numAttrsAdded = numOthersAdded = 0;
+        numRemoved = numCoordsRemoved = numAttrsRemoved = numOthersRemoved = 0;
+        numBytes = 0;
+    }
+
+    /*
+    * Return a Color for an ARGB value.
+     */
+    private Color decodeColor(int argb) {
+        if (lastColor == null || lastColor.getRGB() != argb) {
+            lastColor = new Color(argb, true);
+        }
+        return lastColor;
+    }
+
+    /*
+    * Make room for count more coords.
+     */
+    private void ensureCoords(int count) {
+        if (numCoordsAdded + count > coords.length) {
+            coords = grow(coords, Math.max(coords.length * 2, numCoordsAdded + count));
+        }
+        numBytes += 8 * count;
+    }
+
+    /*
+    * Make room for count more attrs.
+     */
+    private void ensureAttrs(int count) {
+        if (numAttrsAdded + count > attrs.length) {
+            attrs = grow(attrs, attrs.length * 2);
+        }
+        numBytes += 4 * count;
+    }
+
+    private static byte[] grow(byte[] array, int newLength) {
+        byte[] newArray = new byte[newLength];
+        System.arraycopy(array, 0, newArray, 0, array.length);
+        return newArray;
+    }
+
+    private static double[] grow(double[] array, int newLength) {
+        double[] newArray = new double[newLength];
+        System.arraycopy(array, 0, newArray, 0, array.length);
+        return newArray;
+    }
+
+    private static int[] grow(int[] array, int newLength) {
+        int[] newArray = new int[newLength];
+        System.arraycopy(array, 0, newArray, 0, array.length);
+        return newArray;
+    }
+
+} // end class TGOpSpill
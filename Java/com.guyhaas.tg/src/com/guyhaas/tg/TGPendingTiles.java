@@ -0,0 +1,215 @@
+package com.guyhaas.tg;
+
+import java.awt.geom.Rectangle2D;
+import java.util.Arrays;
+
+/**
+ * TGPendingTiles keeps track of where in TurtleSpace graphics operations
+ * waiting in TGOpQueue may paint, so TGCanvas.peekPixels() can tell which of
+ * them must be performed before it looks at some pixels.
+ * <p>
+ * TurtleSpace is divided up into a grid of square tiles, unbounded in every
+ * direction. Each operation is given a sequence number, increasing in queue
+ * order, and every tile its bounds touch remembers the newest sequence number
+ * marked in it. Only tiles something has been marked in take up room. An
+ * operation whose bounds cover more than MAX_OP_TILES tiles, or which may
+ * paint anywhere, is remembered as touching all of them.
+ * <p>
+ * Not synchronized; only used by TGOpQueue's consumer.
+ */
+class TGPendingTiles {
+
+    //
+    // Symbolic Constants
+    // -------- ---------
+    /**
+     * Width and height of a tile, in TurtleSpace units.
+     */
+    static final int TILE_SIZE = 64;
+
+    /*
+    * Most tiles an operation is marked in one at a time.
+     */
+    private static final int MAX_OP_TILES = 256;
+
+    /*
+    * Initial number of slots in the table, always a power of two.
+     */
+    private static final int INIT_CAPACITY = 256;
+
+    //
+    // Class Fields
+    // ----- ------
+
+    /*
+    * Open addressing hash table of tiles: a tile's column and row packed
+    * into a long, and the newest sequence number marked in it; zero marks
+    * an empty slot. numUsed slots are in use.
+     */
+    private long[] tileKeys = new long[INIT_CAPACITY];
+    private int[] tileSeqs = new int[INIT_CAPACITY];
+    private int numUsed;
+
+    /*
+    * Newest sequence number marked everywhere, zero if none.
+     */
+    private int anywhereSeq;
+
+    /*
+    * Columns and rows of tiles the Rectangle last given to findTiles()
+    * touches.
+     */
+    private long minCol;
+    private long minRow;
+    private long maxCol;
+    private long maxRow;
+
+    //
+    // Methods
+    // -------
+    /**
+     * Forget everything marked.
+     */
+    void clear() {
+        if (numUsed > 0) {
+            if (tileSeqs.length > INIT_CAPACITY) {
+                tileKeys = new long[INIT_CAPACITY];
+                tileSeqs = new int[INIT_CAPACITY];
+            } else {
+                Arrays.fill(tileSeqs, 0);
+            }
+            numUsed = 0;
+        }
+        anywhereSeq = 0;
+    }
+
+    /**
+     * Mark the tiles an operation may paint, bounds in TurtleSpace, with its
+     * sequence number, which must be greater than zero and than any marked
+     * before it.
+     */
+    void mark(Rectangle2D bounds, int seq) {
+        if (!findTiles(bounds)) {
+            anywhereSeq = seq;
+            return;
+        }
+        for (long row = minRow; row <= maxRow; row++) {
+            for (long col = minCol; col <= maxCol; col++) {
+                put(tileKey(col, row), seq);
+            }
+        }
+    }
+
+    /**
+     * Mark all tiles, now and to come, with an operation's sequence number,
+     * e.g., because it may paint anywhere.
+     */
+    void markAnywhere(int seq) {
+        anywhereSeq = seq;
+    }
+
+    /**
+     * Return the newest sequence number marked in a tile area (TurtleSpace)
+     * touches, zero if none.
+     */
+    int newest(Rectangle2D area) {
+        int newest = anywhereSeq;
+        if (!findTiles(area)) {
+            for (int idx = 0; idx < tileSeqs.length; idx++) {
+                newest = Math.max(newest, tileSeqs[idx]);
+            }
+            return newest;
+        }
+        for (long row = minRow; row <= maxRow; row++) {
+            for (long col = minCol; col <= maxCol; col++) {
+                newest = Math.max(newest, get(tileKey(col, row)));
+            }
+        }
+        return newest;
+    }
+
+    //
+    // Private Methods
+    // ------- -------
+
+    private int get(long key) {
+        int mask = tileKeys.length - 1;
+        for (int slot = slotFor(key, mask); tileSeqs[slot] != 0; slot = (slot + 1) & mask) {
+            if (tileKeys[slot] == key) {
+                return tileSeqs[slot];
+            }
+        }
+        return 0;
+    }
+
+    private void put(long key, int seq) {
+        int mask = tileKeys.length - 1;
+        int slot = slotFor(key, mask);
+        while (tileSeqs[slot] != 0) {
+            if (tileKeys[slot] == key) {
+                tileSeqs[slot] = seq;
+                return;
+            }
+            slot = (slot + 1) & mask;
+        }
+        tileKeys[slot] = key;
+        tileSeqs[slot] = seq;
+        if (++numUsed * 2 > tileKeys.length) {
+            rehash();
+        }
+    }
+
+    /*
+    * Double the size of the table.
+     */
+    private void rehash() {
+        long[] oldKeys = tileKeys;
+        int[] oldSeqs = tileSeqs;
+        tileKeys = new long[oldKeys.length * 2];
+        tileSeqs = new int[oldSeqs.length * 2];
+        int mask = tileKeys.length - 1;
+        for (int idx = 0; idx < oldSeqs.length; idx++) {
+            if (oldSeqs[idx] != 0) {
+                int slot = slotFor(oldKeys[idx], mask);
+                while (tileSeqs[slot] != 0) {
+                    slot = (slot + 1) & mask;
+                }
+                tileKeys[slot] = oldKeys[idx];
+                tileSeqs[slot] = oldSeqs[idx];
+            }
+        }
+    }
+
+    private static int slotFor(long key, int mask) {
+        long hash = key * 0x9E3779B97F4A7C15L;
+        return (int) (hash >>> 40) & mask;
+    }
+
+    private static long tileKey(long col, long row) {
+        return (col << 32) | (row & 0xFFFFFFFFL);
+    }
+
+    /*
+    * Set minCol, minRow, maxCol and maxRow to the tiles a Rectangle in
+    * TurtleSpace touches. Return false if it touches more than MAX_OP_TILES
+    * of them, or is not a Rectangle we can work with (e.g., has NaN or huge
+    * coordinates).
+     */
+    private boolean findTiles(Rectangle2D bounds) {
+        double firstCol = Math.floor(bounds.getMinX() / TILE_SIZE);
+        double firstRow = Math.floor(bounds.getMinY() / TILE_SIZE);
+        double lastCol = Math.floor(bounds.getMaxX() / TILE_SIZE);
+        double lastRow = Math.floor(bounds.getMaxY() / TILE_SIZE);
+        if (!((lastCol - firstCol + 1) * (lastRow - firstRow + 1) <= MAX_OP_TILES)
+                || !(firstCol >= Integer.MIN_VALUE) || !(lastCol <= Integer.MAX_VALUE)
+                || !(firstRow >= Integer.MIN_VALUE) || !(lastRow <= Integer.MAX_VALUE)) {
+            return false;
+        }
+        minCol = (long) firstCol;
+        minRow = (long) firstRow;
+        maxCol = (long) lastCol;
+        maxRow = (long) lastRow;
+        return true;
+    }
+
+} // end class TGPendingTiles
@@ -0,0 +1,355 @@
+package com.guyhaas.tg;
+
+import java.awt.Color;
+import java.awt.Font;
+import java.io.EOFException;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * TGPlayer replays a log written by TGRecorder onto a TGCanvas, adding the
+ * graphics operations it holds, in order, as if they were being drawn again.
+ * <p>
+ * Replaying does none of the work that went into deciding what to draw, only
+ * the drawing. Lines are added with TGCanvas.addLine(), so a run of them
+ * becomes a polyline, and the operations are added in batches (see
+ * TGCanvas.beginBatch(int)).
+ */
+public class TGPlayer {
+
+    //
+    // Symbolic Constants
+    // -------- ---------
+
+    /*
+    * Operations collected before they are queued.
+     */
+    private static final int BATCH_OPS = 4096;
+
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    //
+    // Class Fields
+    // ----- ------
+
+    private final ReadableByteChannel channel;
+    private final ByteBuffer buffer = ByteBuffer.allocateDirect(BUFFER_SIZE);
+    private final TGCanvas canvas;
+
+    /*
+    * The pen lines and arcs are drawn with.
+     */
+    private Color penColor = Color.BLACK;
+    private int penWidth = 1;
+    private int penCap;
+    private float[] penPattern;
+
+    /*
+    * The previous point.
+     */
+    private double curX;
+    private double curY;
+
+    /*
+    * The most recent blocks of pixels read, most recent at pixelBlocks[0].
+     */
+    private final int[][] pixelBlocks = new int[TGRecorder.PIXEL_BLOCKS][];
+    private final int[] pixelBlockWidths = new int[TGRecorder.PIXEL_BLOCKS];
+
+    //
+    // Constructor
+    // -----------
+    private TGPlayer(ReadableByteChannel channel, TGCanvas canvas) {
+        this.channel = channel;
+        this.canvas = canvas;
+        buffer.flip();
+    }
+
+    //
+    // Class Methods
+    // ----- -------
+    /**
+     * Replay the log in a file onto a canvas.
+     *
+     * @throws IOException if the file can not be read or is not a log
+     */
+    public static void replay(File file, TGCanvas canvas) throws IOException {
+        FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ);
+        try {
+            replay(channel, canvas);
+        } finally {
+            channel.close();
+        }
+    }
+
+    /**
+     * Replay the log read from a channel onto a canvas. The channel is read to
+     * its end and left open.
+     *
+     * @throws IOException if the channel can not be read or does not hold a
+     * log
+     */
+    public static void replay(ReadableByteChannel channel, TGCanvas canvas) throws IOException {
+        new TGPlayer(channel, canvas).replay();
+    }
+
+    //
+    // Private Methods
+    // ------- -------
+
+    /*
+    * Make sure numBytes, no more than the buffer's capacity, can be read
+    * from the buffer. Returns false if the channel ends before any more
+    * bytes; throws an EOFException if it ends part way.
+     */
+    private boolean fill(int numBytes) throws IOException {
+        if (buffer.remaining() >= numBytes) {
+            return true;
+        }
+        buffer.compact();
+        try {
+            while (buffer.position() < numBytes) {
+                if (channel.read(buffer) < 0) {
+                    if (buffer.position() == 0) {
+                        return false;
+                    }
+                    throw new EOFException("TGPlayer: log ends part way through a record");
+                }
+            }
+        } finally {
+            buffer.flip();
+        }
+        return true;
+    }
+
+    private byte getByte() throws IOException {
+        need(1);
+        return buffer.get();
+    }
+
+    /*
+    * Return a coord, coordinate of a point, given the same coordinate of the
+    * previous point; see TGRecorder.
+     */
+    private double getCoord(double prevCoord) throws IOException {
+        long code = getVarint();
+        if ((code & 1) != 0) {
+            return getDouble();
+        }
+        long zigzag = code >>> 1;
+        long steps = (zigzag >>> 1) ^ -(zigzag & 1);
+        return prevCoord + steps / TGRecorder.COORD_SCALE;
+    }
+
+    private double getDouble() throws IOException {
+        need(8);
+        return buffer.getDouble();
+    }
+
+    private int getInt() throws IOException {
+        need(4);
+        return buffer.getInt();
+    }
+
+    private String getString() throws IOException {
+        int length = getVarintInt();
+        byte[] bytes = new byte[length];
+        int offset = 0;
+        while (offset < length) {
+            need(1);
+            int count = Math.min(buffer.remaining(), length - offset);
+            buffer.get(bytes, offset, count);
+            offset += count;
+        }
+        return new String(bytes, TGRecorder.UTF8);
+    }
+
+    private long getVarint() throws IOException {
+        long value = 0;
+        for (int shift = 0; shift < 64; shift += 7) {
+            byte next = getByte();
+            value |= (long) (next & 0x7F) << shift;
+            if (next >= 0) {
+                return value;
+            }
+        }
+        throw new IOException("TGPlayer: bad varint");
+    }
+
+    /*
+    * Return a varint which must be a count or size.
+     */
+    private int getVarintInt() throws IOException {
+        long value = getVarint();
+        if (value < 0 || value > Integer.MAX_VALUE) {
+            throw new IOException("TGPlayer: bad count " + value);
+        }
+        return (int) value;
+    }
+
+    /*
+    * Make a recent block of pixels the most recent one, as TGRecorder does
+    * when the block is referred to.
+     */
+    private void moveToFront(int blockIdx) {
+        int[] block = pixelBlocks[blockIdx];
+        int width = pixelBlockWidths[blockIdx];
+        System.arraycopy(pixelBlocks, 0, pixelBlocks, 1, blockIdx);
+        System.arraycopy(pixelBlockWidths, 0, pixelBlockWidths, 1, blockIdx);
+        pixelBlocks[0] = block;
+        pixelBlockWidths[0] = width;
+    }
+
+    private void need(int numBytes) throws IOException {
+        if (!fill(numBytes)) {
+            throw new EOFException("TGPlayer: log ends part way through a record");
+        }
+    }
+
+    private void readLine(double startX, double startY, double endX, double endY) {
+        canvas.addLine(startX, startY, endX, endY, penColor, penWidth, penPattern, penCap);
+        curX = endX;
+        curY = endY;
+    }
+
+    private void readPen() throws IOException {
+        int rgb = getInt();
+        if (penColor.getRGB() != rgb) {
+            penColor = new Color(rgb, true);
+        }
+        penWidth = getVarintInt();
+        penCap = getVarintInt();
+        int numDashes = getVarintInt();
+        if (numDashes == 0) {
+            penPattern = null;
+        } else {
+            penPattern = new float[numDashes];
+            for (int idx = 0; idx < numDashes; idx++) {
+                need(4);
+                penPattern[idx] = buffer.getFloat();
+            }
+        }
+    }
+
+    private void readPixels() throws IOException {
+        double x = getDouble();
+        double y = getDouble();
+        int width = getVarintInt();
+        int blockNum = getVarintInt();
+        int[] pixels;
+        if (blockNum > 0) {
+            if (blockNum > TGRecorder.PIXEL_BLOCKS || pixelBlocks[blockNum - 1] == null) {
+                throw new IOException("TGPlayer: bad pixel block " + blockNum);
+            }
+            moveToFront(blockNum - 1);
+            pixels = pixelBlocks[0];
+        } else {
+            int height = getVarintInt();
+            pixels = new int[width * height];
+            int pixelIdx = 0;
+            while (pixelIdx < pixels.length) {
+                int count = getVarintInt();
+                int pixel = getInt();
+                if (count > pixels.length - pixelIdx) {
+                    throw new IOException("TGPlayer: bad pixel run");
+                }
+                for (int runEnd = pixelIdx + count; pixelIdx < runEnd; pixelIdx++) {
+                    pixels[pixelIdx] = pixel;
+                }
+            }
+            System.arraycopy(pixelBlocks, 0, pixelBlocks, 1, TGRecorder.PIXEL_BLOCKS - 1);
+            System.arraycopy(pixelBlockWidths, 0, pixelBlockWidths, 1, TGRecorder.PIXEL_BLOCKS - 1);
+            pixelBlocks[0] = pixels;
+            pixelBlockWidths[0] = width;
+        }
+        canvas.addGraphOp(new TGSetPixelsOp(new TGPoint(x, y), width, pixels));
+    }
+
+    /*
+    * Read records and add what they hold to the canvas until the channel
+    * ends.
+     */
+    private void replay() throws IOException {
+        need(TGRecorder.MAGIC.length);
+        for (int idx = 0; idx < TGRecorder.MAGIC.length; idx++) {
+            if (buffer.get() != TGRecorder.MAGIC[idx]) {
+                throw new IOException("TGPlayer: not a TGRecorder log");
+            }
+        }
+        canvas.beginBatch(BATCH_OPS);
+        try {
+            while (fill(1)) {
+                byte tag = buffer.get();
+                switch (tag) {
+                    case TGRecorder.TAG_PEN:
+                        readPen();
+                        break;
+                    case TGRecorder.TAG_LINE: {
+                        double startX = getCoord(curX);
+                        double startY = getCoord(curY);
+                        double endX = getCoord(startX);
+                        double endY = getCoord(startY);
+                        readLine(startX, startY, endX, endY);
+                        break;
+                    }
+                    case TGRecorder.TAG_LINE_RUN: {
+                        int numLines = getVarintInt();
+                        for (int lineNum = 0; lineNum < numLines; lineNum++) {
+                            double endX = getCoord(curX);
+                            double endY = getCoord(curY);
+                            readLine(curX, curY, endX, endY);
+                        }
+                        break;
+                    }
+                    case TGRecorder.TAG_ARC: {
+                        double originX = getDouble();
+                        double originY = getDouble();
+                        double radius = getDouble();
+                        double startAngle = getDouble();
+                        double arcAngle = getDouble();
+                        canvas.addGraphOp(new TGArcOp(originX, originY, radius, startAngle, arcAngle,
+                                penColor, penWidth, penPattern));
+                        break;
+                    }
+                    case TGRecorder.TAG_FILL: {
+                        Color color = new Color(getInt(), true);
+                        double x = getDouble();
+                        double y = getDouble();
+                        canvas.addGraphOp(new TGFillOp(new TGPoint(x, y), color));
+                        break;
+                    }
+                    case TGRecorder.TAG_LABEL: {
+                        Color color = new Color(getInt(), true);
+                        double x = getDouble();
+                        double y = getDouble();
+                        String fontName = getString();
+                        int fontStyle = getVarintInt();
+                        int fontSize = getVarintInt();
+                        String text = getString();
+                        canvas.addGraphOp(new TGLabelOp(text, new TGPoint(x, y),
+                                new Font(fontName, fontStyle, fontSize), color));
+                        break;
+                    }
+                    case TGRecorder.TAG_PIXELS:
+                        readPixels();
+                        break;
+                    case TGRecorder.TAG_CLEAN:
+                        canvas.clean();
+                        break;
+                    case TGRecorder.TAG_BACKGROUND:
+                        canvas.setbg(getInt());
+                        break;
+                    default:
+                        throw new IOException("TGPlayer: bad record tag " + tag);
+                }
+            }
+        } finally {
+            canvas.endBatch();
+        }
+    }
+
+} // end class TGPlayer
@@ -178,20 +178,37 @@ public class TGPoint implements Cloneable {
      * Berkeley Logo - absolutely necessary to make graphics look pretty
      */
     public TGPoint otherEndPoint(double radians, double length) {
-        double sine = Math.sin(radians);
-        double cosine = Math.cos(radians);
-        double deltaX = cosine * length;
-        if ((deltaX < 0 && deltaX > -0.0001) || (deltaX > 0 && deltaX < 0.0001)) {
-            deltaX = 0;
-        }
-        double deltaY = sine * length;
-        if ((deltaY < 0 && deltaY > -0.0001) || (deltaY > 0 && deltaY < 0.0001)) {
-            deltaY = 0;
-        }
-        TGPoint p2 = new TGPoint(x + deltaX, y + deltaY);
+        TGPoint p2 = new TGPoint(x + deltaX(radians, length), y + deltaY(radians, length));
         return p2;
     }
 
+    /**
+     * Return the change in X along a line of the given heading (in radians)
+     * and length, rounded to zero when close, as otherEndPoint() does.
+     */
+    static double deltaX(double radians, double length) {
+        return roundDelta(Math.cos(radians) * length);
+    }
+
+    /**
+     * Return the change in Y along a line of the given heading (in radians)
+     * and length, rounded to zero when close, as otherEndPoint() does.
+     */
+    static double deltaY(double radians, double length) {
+        return roundDelta(Math.sin(radians) * length);
+    }
+
+    /**
+     * Return a change in X or Y, rounded to zero when close. For callers who
+     * keep coordinates as doubles and work out the change themselves.
+     */
+    static double roundDelta(double delta) {
+        if ((delta < 0 && delta > -0.0001) || (delta > 0 && delta < 0.0001)) {
+            return 0;
+        }
+        return delta;
+    }
+
     /**
      * Returns the X coordinate of this point in double precision.
      */
@@ -0,0 +1,424 @@
+package com.guyhaas.tg;
+
+import java.awt.BasicStroke;
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.image.BufferedImage;
+import java.awt.geom.Line2D;
+import java.awt.geom.Rectangle2D;
+import java.awt.Rectangle;
+
+/**
+ * TGPolylineOp draws a connected run of lines as one operation.
+ * <p>
+ * A turtle walking around with its pen down queues a TGLineOp per step, each
+ * one starting where the last one ended. When TGCanvas gets a batch of queued
+ * operations it replaces runs of such lines, drawn with the same solid pen,
+ * with a TGPolylineOp. This saves a queue entry, Graphics2D, BasicStroke,
+ * etc... for every step.
+ * <p>
+ * Each line is still drawn just as the TGLineOp it stands for would draw it,
+ * so the pixels painted do not depend on where one run ends and the next
+ * begins, which depends on when lines happen to be drawn. Erasing a path by
+ * drawing it again in the background color (see the NOTE in TGLineOp) works
+ * however the two drawings were split into runs.
+ * <p>
+ * TGCanvas.addLine() builds TGPolylineOps too, without TGLineOps: while the
+ * newest pending operation is a polyline drawn with the same pen and ending
+ * where a new line starts, the line is appended to it. Once TGCanvas starts
+ * to draw a polyline, it is sealed and nothing more can be appended.
+ * <p>
+ * Dashed lines are not merged. Their patterns start over with each line and
+ * would not if drawn as one path.
+ */
+class TGPolylineOp implements TGGraphicsOp, TGBoundedOp, TGContextOp {
+
+    //
+    // Symbolic Constants
+    // -------- ---------
+
+    /*
+    * Room for points a polyline started by TGCanvas.addLine() is given,
+    * and the most points it may grow to.
+     */
+    private static final int INIT_POINTS = 8;
+    private static final int MAX_POINTS = 1024;
+
+    //
+    // Class Fields
+    // ----- ------
+
+    /*
+    * TurtleSpace coordinates of the points along the polyline, in the
+    * order they are connected; only the first numPoints are in use.
+     */
+    private double[] xCoords;
+    private double[] yCoords;
+    private int numPoints;
+
+    /*
+    * Once true, no more points may be appended; and once seal() has
+    * returned the number of lines appended. Guarded by this.
+     */
+    private boolean sealed;
+    private boolean linesCounted;
+
+    /*
+    * The Thread which may append points, the one which instantiated
+    * the polyline with its first line. Another Thread's lines could be
+    * held back with the polyline in the first Thread's open batch.
+     */
+    private Thread appender;
+
+    /*
+    * The pen it is drawn with.
+     */
+    private final Color penColor;
+    private final int penWidth;
+    private final int typeLineCap;
+
+    //
+    // Constructor
+    // -----------
+    /**
+     * Instantiate a polyline from numLines TGLineOps in ops, starting at
+     * startIdx, which chainLength() has said are connected.
+     */
+    TGPolylineOp(TGGraphicsOp[] ops, int startIdx, int numLines) {
+        TGLineOp firstLine = (TGLineOp) ops[startIdx];
+        TGLineOp secondLine = (TGLineOp) ops[startIdx + 1];
+        penColor = firstLine.getPenColor();
+        penWidth = firstLine.getPenWidth();
+        typeLineCap = firstLine.getLineCap();
+        xCoords = new double[numLines + 1];
+        yCoords = new double[numLines + 1];
+        numPoints = numLines + 1;
+        sealed = true;
+        linesCounted = true;
+
+        // a TGLineOp's end points are ordered left to right, so which end
+        // of the first line we start at depends on which end the second
+        // line is connected to
+        TGPoint curPoint = firstLine.endPt2;
+        if (!sharesEndPoint(secondLine, curPoint)) {
+            curPoint = firstLine.endPt1;
+        }
+        TGPoint startPoint = (curPoint == firstLine.endPt2) ? firstLine.endPt1 : firstLine.endPt2;
+        xCoords[0] = startPoint.xDoubleValue();
+        yCoords[0] = startPoint.yDoubleValue();
+        xCoords[1] = curPoint.xDoubleValue();
+        yCoords[1] = curPoint.yDoubleValue();
+        for (int lineNum = 1; lineNum < numLines; lineNum++) {
+            curPoint = otherEndPoint((TGLineOp) ops[startIdx + lineNum], curPoint);
+            xCoords[lineNum + 1] = curPoint.xDoubleValue();
+            yCoords[lineNum + 1] = curPoint.yDoubleValue();
+        }
+    }
+
+    /**
+     * Instantiate a sealed polyline through numPoints points whose TurtleSpace
+     * coordinates are in coords, starting at coords[offset]: x and y of the
+     * first point, then of the second, etc..., as getPoints() returns them.
+     */
+    TGPolylineOp(double[] coords, int offset, int numPoints, Color color, int width, int lineCap) {
+        penColor = color;
+        penWidth = width;
+        typeLineCap = lineCap;
+        xCoords = new double[numPoints];
+        yCoords = new double[numPoints];
+        for (int idx = 0; idx < numPoints; idx++) {
+            xCoords[idx] = coords[offset + 2 * idx];
+            yCoords[idx] = coords[offset + 2 * idx + 1];
+        }
+        this.numPoints = numPoints;
+        sealed = true;
+        linesCounted = true;
+    }
+
+    /**
+     * Instantiate a polyline, so far a single line from (x1,y1) to (x2,y2)
+     * in TurtleSpace, which more lines can be appended to.
+     */
+    TGPolylineOp(double x1, double y1, double x2, double y2, Color color, int width, int lineCap) {
+        penColor = color;
+        penWidth = width;
+        typeLineCap = lineCap;
+        xCoords = new double[INIT_POINTS];
+        yCoords = new double[INIT_POINTS];
+        xCoords[0] = x1;
+        yCoords[0] = y1;
+        xCoords[1] = x2;
+        yCoords[1] = y2;
+        numPoints = 2;
+        appender = Thread.currentThread();
+    }
+
+    //
+    // Package Methods
+    // ------- -------
+    /**
+     * Append a solid line from (x1,y1) to (x2,y2) in TurtleSpace, if this
+     * polyline has not been sealed or filled up, is drawn with the same pen,
+     * and ends at (x1,y1). Only the Thread which instantiated the polyline may
+     * append to it. Return true if the line was appended.
+     */
+    synchronized boolean append(double x1, double y1, double x2, double y2, Color color, int width, int lineCap) {
+        if (sealed || appender != Thread.currentThread() || numPoints == MAX_POINTS
+                || x1 != xCoords[numPoints - 1] || y1 != yCoords[numPoints - 1]
+                || width != penWidth || lineCap != typeLineCap || !color.equals(penColor)) {
+            return false;
+        }
+        if (numPoints == xCoords.length) {
+            int newLength = Math.min(2 * numPoints, MAX_POINTS);
+            double[] newXCoords = new double[newLength];
+            double[] newYCoords = new double[newLength];
+            System.arraycopy(xCoords, 0, newXCoords, 0, numPoints);
+            System.arraycopy(yCoords, 0, newYCoords, 0, numPoints);
+            xCoords = newXCoords;
+            yCoords = newYCoords;
+        }
+        xCoords[numPoints] = x2;
+        yCoords[numPoints] = y2;
+        numPoints++;
+        return true;
+    }
+
+    /**
+     * Return the number of TGLineOps, starting with ops[startIdx], which can be
+     * drawn as one polyline. Only ops[startIdx] through ops[endIdx - 1] are
+     * looked at. Zero or one means there is nothing to merge.
+     */
+    static int chainLength(TGGraphicsOp[] ops, int startIdx, int endIdx) {
+        if (!isSolidLine(ops[startIdx]) || startIdx + 1 >= endIdx) {
+            return 0;
+        }
+        TGLineOp firstLine = (TGLineOp) ops[startIdx];
+        if (!isSolidLine(ops[startIdx + 1]) || !samePen(firstLine, (TGLineOp) ops[startIdx + 1])) {
+            return 1;
+        }
+        TGLineOp secondLine = (TGLineOp) ops[startIdx + 1];
+        TGPoint curPoint;
+        if (sharesEndPoint(secondLine, firstLine.endPt2)) {
+            curPoint = firstLine.endPt2;
+        } else if (sharesEndPoint(secondLine, firstLine.endPt1)) {
+            curPoint = firstLine.endPt1;
+        } else {
+            return 1;
+        }
+        int numLines = 1;
+        while (startIdx + numLines < endIdx) {
+            TGGraphicsOp op = ops[startIdx + numLines];
+            if (!isSolidLine(op) || !samePen(firstLine, (TGLineOp) op)) {
+                break;
+            }
+            TGLineOp nextLine = (TGLineOp) op;
+            if (!sharesEndPoint(nextLine, curPoint)) {
+                break;
+            }
+            curPoint = otherEndPoint(nextLine, curPoint);
+            numLines++;
+        }
+        return numLines;
+    }
+
+    /**
+     * Return the line cap the polyline is drawn with.
+     */
+    int getLineCap() {
+        return typeLineCap;
+    }
+
+    /**
+     * Return the Color the polyline is drawn with.
+     */
+    Color getPenColor() {
+        return penColor;
+    }
+
+    /**
+     * Return the width of the pen the polyline is drawn with.
+     */
+    int getPenWidth() {
+        return penWidth;
+    }
+
+    /**
+     * Return the TurtleSpace coordinates of the points along the polyline, in
+     * the order they are connected: x and y of the first point, then of the
+     * second, etc...
+     */
+    synchronized double[] getPoints() {
+        double[] points = new double[2 * numPoints];
+        for (int idx = 0; idx < numPoints; idx++) {
+            points[2 * idx] = xCoords[idx];
+            points[2 * idx + 1] = yCoords[idx];
+        }
+        return points;
+    }
+
+    /**
+     * Seal the polyline; nothing more can be appended. Return the number of
+     * lines appended to it since it was instantiated the first time this is
+     * invoked, zero after that.
+     */
+    synchronized int seal() {
+        stopAppends();
+        if (linesCounted) {
+            return 0;
+        }
+        linesCounted = true;
+        return numPoints - 2;
+    }
+
+    /**
+     * Stop lines from being appended, e.g., once the polyline's bounds have
+     * been relied on, without taking the count seal() returns.
+     */
+    synchronized void stopAppends() {
+        sealed = true;
+        appender = null;
+    }
+
+    //
+    // TGGraphicsOp Interface Methods
+    // ------------ --------- -------
+    /**
+     * Draw the polyline.
+     *
+     * @param inMemoryImage where to draw
+     */
+    public Rectangle doIt(BufferedImage inMemoryImage) {
+        TGRenderContext context = new TGRenderContext(inMemoryImage);
+        try {
+            return doIt(context);
+        } finally {
+            context.dispose();
+        }
+    }
+
+    //
+    // TGContextOp Interface Methods
+    // ----------- --------- -------
+    /**
+     * Draw the polyline with the render pass' Graphics2D. This seals it.
+     *
+     * @param context where and with what to draw
+     */
+    public synchronized Rectangle doIt(TGRenderContext context) {
+        seal();
+        BufferedImage inMemoryImage = context.getImage();
+        int imageWidth = inMemoryImage.getWidth();
+        int imageHeight = inMemoryImage.getHeight();
+        if (imageWidth <= 0 || imageHeight <= 0) {
+            return null;
+        }
+        double xCenter = imageWidth / 2.0;
+        double yCenter = imageHeight / 2.0;
+        Rectangle2D pointBounds = pointBounds();
+        Rectangle2D bounds = new Rectangle2D.Double(xCenter + pointBounds.getMinX(),
+                yCenter - pointBounds.getMaxY(), pointBounds.getWidth(), pointBounds.getHeight());
+        Rectangle clipRect = new Rectangle((int) Math.floor(bounds.getMinX() - penWidth) - 1,
+                (int) Math.floor(bounds.getMinY() - penWidth) - 1,
+                (int) Math.ceil(bounds.getWidth() + 2 * penWidth) + 3,
+                (int) Math.ceil(bounds.getHeight() + 2 * penWidth) + 3);
+        boolean canRaster = TGLineRaster.canDraw(context, penWidth, typeLineCap, null);
+        for (int idx = 1; idx < numPoints; idx++) {
+            double x1 = xCenter + xCoords[idx - 1];
+            double y1 = yCenter - yCoords[idx - 1];
+            double x2 = xCenter + xCoords[idx];
+            double y2 = yCenter - yCoords[idx];
+            if (x1 <= x2) {
+                drawLine(context, canRaster, x1, y1, x2, y2);
+            } else {
+                drawLine(context, canRaster, x2, y2, x1, y1);
+            }
+        }
+        return clipRect;
+    }
+
+    //
+    // TGBoundedOp Interface Methods
+    // ----------- --------- -------
+    /**
+     * Return the area of TurtleSpace this polyline may paint: the box around
+     * its points widened by the pen's width.
+     */
+    public synchronized Rectangle2D getTurtleBounds() {
+        Rectangle2D bounds = pointBounds();
+        return new Rectangle2D.Double(bounds.getX() - penWidth, bounds.getY() - penWidth,
+                bounds.getWidth() + 2 * penWidth, bounds.getHeight() + 2 * penWidth);
+    }
+
+    /*
+    * return String: "TGPolylineOp[color=xx, width=nn, numPoints=nn]"
+     */
+    public synchronized String toString() {
+        return "TGPolylineOp[color=" + penColor + ",width=" + penWidth + ",numPoints=" + numPoints + "]";
+    }
+
+    //
+    // Private Methods
+    // ------- -------
+    private static boolean isSolidLine(TGGraphicsOp op) {
+        return op instanceof TGLineOp && ((TGLineOp) op).getPenPattern() == null;
+    }
+
+    /*
+    * Return the end of a line which is not the provided point. The point
+    * must be one of its ends.
+     */
+    private static TGPoint otherEndPoint(TGLineOp line, TGPoint point) {
+        if (line.endPt1.equals(point)) {
+            return line.endPt2;
+        }
+        return line.endPt1;
+    }
+
+    /*
+    * Return the box around the polyline's points, in TurtleSpace.
+     */
+    private Rectangle2D pointBounds() {
+        double minX = xCoords[0];
+        double maxX = minX;
+        double minY = yCoords[0];
+        double maxY = minY;
+        for (int idx = 1; idx < numPoints; idx++) {
+            minX = Math.min(minX, xCoords[idx]);
+            maxX = Math.max(maxX, xCoords[idx]);
+            minY = Math.min(minY, yCoords[idx]);
+            maxY = Math.max(maxY, yCoords[idx]);
+        }
+        return new Rectangle2D.Double(minX, minY, maxX - minX, maxY - minY);
+    }
+
+    /*
+    * Draw one line, given left to right in image coordinates, exactly as
+    * TGLineOp.doIt() draws it: with TGLineRaster when it can, else with a
+    * bevel-joined stroke clipped to the line's own area.
+     */
+    private void drawLine(TGRenderContext context, boolean canRaster, double p1X, double p1Y,
+            double p2X, double p2Y) {
+        if (canRaster && TGLineRaster.inImage(context, p1X, p1Y) && TGLineRaster.inImage(context, p2X, p2Y)) {
+            TGLineRaster.drawLine(context, p1X, p1Y, p2X, p2Y, penColor.getRGB(), penWidth);
+            return;
+        }
+        Rectangle clipRect = new Rectangle((int) (Math.floor(p1X - (penWidth / 2.0))) - 1,
+                (int) (Math.floor((p1Y < p2Y ? p1Y : p2Y) - (penWidth / 2.0))) - 1,
+                (int) (Math.ceil(Math.abs(p1X - p2X) + penWidth)) + 2,
+                (int) (Math.ceil(Math.abs(p1Y - p2Y) + penWidth)) + 2);
+        Graphics2D g2 = context.getGraphics(penColor, (float) penWidth, typeLineCap,
+                BasicStroke.JOIN_BEVEL, null, clipRect);
+        g2.draw(new Line2D.Double(p1X, p1Y, p2X, p2Y));
+    }
+
+    private static boolean samePen(TGLineOp line1, TGLineOp line2) {
+        return line1.getPenWidth() == line2.getPenWidth()
+                && line1.getLineCap() == line2.getLineCap()
+                && line1.getPenColor().equals(line2.getPenColor());
+    }
+
+    private static boolean sharesEndPoint(TGLineOp line, TGPoint point) {
+        return line.endPt1.equals(point) || line.endPt2.equals(point);
+    }
+
+} // end class TGPolylineOp
@@ -0,0 +1,560 @@
+package com.guyhaas.tg;
+
+import java.awt.Color;
+import java.awt.Font;
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.Charset;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+
+/**
+ * TGRecorder writes the graphics operations queued on a TGCanvas to a compact
+ * binary log, a display list, which TGPlayer can replay onto any canvas. See
+ * TGCanvas.setRecorder(). Operations are written in the order they are
+ * queued, which is the order they are drawn in: those collected in a batch
+ * when the batch is queued, and not at all if a clean() throws them away.
+ * <p>
+ * The log starts with the four bytes "TGR1". Each record after them is a tag
+ * byte and the tag's fields. Counts and sizes are unsigned varints (seven bits
+ * per byte, low bits first, the high bit set on all bytes but the last),
+ * colors are four byte ARGB ints, and other numbers are written as they are,
+ * big-endian.
+ * <p>
+ * Lines, by far the most common records, are written the most compactly.
+ * Each coordinate of an end point is written as a coord: when its difference
+ * from the previous point is a whole number of 1/COORD_SCALE pixels, and
+ * adding that back gives exactly the same double, the number, zigzag
+ * encoded (so small negative numbers are small too) and shifted left one
+ * bit, as a varint; else the varint 1 and the coordinate as a double. Nothing is rounded, a replay draws
+ * the same pixels, and a short line between points on the grid is two to four
+ * bytes. A line starting where the previous one ended, e.g., another step of
+ * a turtle, is collected into a run of such lines, written as one record. The
+ * pen is only written when it changes.
+ * <pre>
+ *   TAG_PEN        color, width, line cap, dash count, dash floats
+ *   TAG_LINE       start x, y from the previous point; end x, y from the
+ *                  start (coords)
+ *   TAG_LINE_RUN   count; count end x, y pairs, each from the previous end
+ *                  (coords)
+ *   TAG_ARC        origin x, y, radius, start angle, arc angle (doubles;
+ *                  angles in radians), drawn with the pen
+ *   TAG_FILL       color, x, y (doubles)
+ *   TAG_LABEL      color, x, y (doubles), font name, font style, font
+ *                  size, text (strings are a byte count and UTF-8 bytes)
+ *   TAG_PIXELS     x, y (doubles), width, block number; when the block
+ *                  number is zero, the block follows: its height, then runs
+ *                  of a count and an ARGB pixel until all its pixels are
+ *                  covered; else it is the same as one of the previous
+ *                  PIXEL_BLOCKS blocks, 1 being the most recent
+ *   TAG_CLEAN      (clean() was invoked)
+ *   TAG_BACKGROUND Logo color (setbg() was invoked)
+ * </pre>
+ * Operations of kinds not in this list are left out; the first time one is
+ * queued a message is printed on System.err.
+ * <p>
+ * Records are written to a buffer and the buffer to the channel when it
+ * fills. If writing fails, recording stops; the IOException is thrown by the
+ * next flush() or close().
+ * <p>
+ * Methods are thread-safe.
+ */
+public class TGRecorder implements Closeable {
+
+    //
+    // Symbolic Constants
+    // -------- ---------
+
+    private static final String CLASS_NAME = "TGRecorder";
+
+    /*
+    * The first bytes of a log.
+     */
+    static final byte[] MAGIC = {'T', 'G', 'R', '1'};
+
+    /*
+    * Record tags.
+     */
+    static final byte TAG_PEN = 1;
+    static final byte TAG_LINE = 2;
+    static final byte TAG_LINE_RUN = 3;
+    static final byte TAG_ARC = 4;
+    static final byte TAG_FILL = 5;
+    static final byte TAG_LABEL = 6;
+    static final byte TAG_PIXELS = 7;
+    static final byte TAG_CLEAN = 8;
+    static final byte TAG_BACKGROUND = 9;
+
+    /*
+    * Line end point differences which are whole numbers of 1/COORD_SCALE
+    * pixels are written as that number.
+     */
+    static final double COORD_SCALE = 1024.0;
+
+    /*
+    * Largest such number, so it and the point are exact doubles.
+     */
+    private static final double MAX_COORD_STEPS = 1L << 52;
+
+    /*
+    * Number of recent blocks of pixels TAG_PIXELS records refer back to.
+     */
+    static final int PIXEL_BLOCKS = 8;
+
+    static final Charset UTF8 = Charset.forName("UTF-8");
+
+    /*
+    * Most lines collected into one TAG_LINE_RUN record.
+     */
+    private static final int MAX_RUN_LINES = 4096;
+
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    //
+    // Class Fields
+    // ----- ------
+
+    private final WritableByteChannel channel;
+    private final ByteBuffer buffer = ByteBuffer.allocateDirect(BUFFER_SIZE);
+
+    /*
+    * The pen lines and arcs are drawn with, as last written.
+     */
+    private int penRGB;
+    private int penWidth;
+    private int penCap;
+    private float[] penPattern;
+    private boolean penWritten;
+
+    /*
+    * The previous point.
+     */
+    private double curX;
+    private double curY;
+
+    /*
+    * Where the lines collected for a TAG_LINE_RUN record not yet written
+    * start, and their end points, two coordinates per line.
+     */
+    private double runStartX;
+    private double runStartY;
+    private final double[] runEnds = new double[2 * MAX_RUN_LINES];
+    private int numRunLines;
+
+    /*
+    * Copies of the most recent blocks of pixels written, most recent at
+    * pixelBlocks[0].
+     */
+    private final int[][] pixelBlocks = new int[PIXEL_BLOCKS][];
+    private final int[] pixelBlockWidths = new int[PIXEL_BLOCKS];
+
+    /*
+    * Why recording stopped, null while it is going.
+     */
+    private IOException failure;
+    private boolean closed;
+    private boolean unknownOpReported;
+
+    //
+    // Constructors
+    // ------------
+    /**
+     * Instantiate a recorder writing to a file, replacing what is in it.
+     */
+    public TGRecorder(File file) throws IOException {
+        this(FileChannel.open(file.toPath(), StandardOpenOption.WRITE,
+                StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING));
+    }
+
+    /**
+     * Instantiate a recorder writing to a channel. The channel is closed by
+     * close().
+     */
+    public TGRecorder(WritableByteChannel channel) {
+        this.channel = channel;
+        buffer.put(MAGIC);
+    }
+
+    //
+    // Methods
+    // -------
+    /**
+     * Write what is recorded so far to the channel and close it. Nothing more
+     * is recorded.
+     *
+     * @throws IOException if writing failed, now or while recording
+     */
+    public synchronized void close() throws IOException {
+        if (closed) {
+            return;
+        }
+        try {
+            flush();
+        } finally {
+            closed = true;
+            channel.close();
+        }
+    }
+
+    /**
+     * Write what is recorded so far to the channel.
+     *
+     * @throws IOException if writing failed, now or while recording
+     */
+    public synchronized void flush() throws IOException {
+        if (failure == null && !closed) {
+            try {
+                writeRun();
+                drain();
+            } catch (IOException ioe) {
+                failure = ioe;
+            }
+        }
+        if (failure != null) {
+            throw failure;
+        }
+    }
+
+    /**
+     * Record setbg() having been invoked.
+     */
+    synchronized void recordBackground(int logoColor) {
+        if (!recording()) {
+            return;
+        }
+        try {
+            writeRun();
+            ensure(5);
+            buffer.put(TAG_BACKGROUND);
+            buffer.putInt(logoColor);
+        } catch (IOException ioe) {
+            fail(ioe);
+        }
+    }
+
+    /**
+     * Record clean() having been invoked.
+     */
+    synchronized void recordClean() {
+        if (!recording()) {
+            return;
+        }
+        try {
+            writeRun();
+            ensure(1);
+            buffer.put(TAG_CLEAN);
+        } catch (IOException ioe) {
+            fail(ioe);
+        }
+    }
+
+    /**
+     * Record a line TGCanvas.addLine() has appended to a TGPolylineOp which
+     * has been queued, and so recorded, already.
+     */
+    synchronized void recordLine(double x1, double y1, double x2, double y2, Color color, int width,
+            float[] pattern, int lineCap) {
+        if (!recording()) {
+            return;
+        }
+        try {
+            writePen(color.getRGB(), width, lineCap, pattern);
+            writeLine(x1, y1, x2, y2);
+        } catch (IOException ioe) {
+            fail(ioe);
+        }
+    }
+
+    /**
+     * Record an operation TGCanvas has queued.
+     */
+    synchronized void recordOp(TGGraphicsOp op) {
+        if (!recording()) {
+            return;
+        }
+        try {
+            if (op instanceof TGPolylineOp) {
+                writePolyline((TGPolylineOp) op);
+            } else if (op instanceof TGLineOp) {
+                TGLineOp line = (TGLineOp) op;
+                writePen(line.getPenColor().getRGB(), line.getPenWidth(), line.getLineCap(),
+                        line.getPenPattern());
+                writeLine(line.endPt1.xDoubleValue(), line.endPt1.yDoubleValue(),
+                        line.endPt2.xDoubleValue(), line.endPt2.yDoubleValue());
+            } else if (op instanceof TGArcOp) {
+                writeArc((TGArcOp) op);
+            } else if (op instanceof TGFillOp) {
+                writeFill((TGFillOp) op);
+            } else if (op instanceof TGLabelOp) {
+                writeLabel((TGLabelOp) op);
+            } else if (op instanceof TGSetPixelsOp) {
+                writePixels((TGSetPixelsOp) op);
+            } else if (!unknownOpReported) {
+                unknownOpReported = true;
+                sysErr("recordOp: can not record " + op.getClass().getName());
+            }
+        } catch (IOException ioe) {
+            fail(ioe);
+        }
+    }
+
+    //
+    // Private Methods
+    // ------- -------
+
+    /*
+    * Write the buffer to the channel.
+     */
+    private void drain() throws IOException {
+        buffer.flip();
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+        buffer.clear();
+    }
+
+    /*
+    * Make room in the buffer for numBytes more bytes, no more than its
+    * capacity.
+     */
+    private void ensure(int numBytes) throws IOException {
+        if (buffer.remaining() < numBytes) {
+            drain();
+        }
+    }
+
+    private void fail(IOException ioe) {
+        failure = ioe;
+        sysErr("recording stopped: " + ioe);
+    }
+
+    /*
+    * Make a recent block of pixels the most recent one, as TGPlayer does
+    * when the block is referred to.
+     */
+    private void moveToFront(int blockIdx) {
+        int[] block = pixelBlocks[blockIdx];
+        int width = pixelBlockWidths[blockIdx];
+        System.arraycopy(pixelBlocks, 0, pixelBlocks, 1, blockIdx);
+        System.arraycopy(pixelBlockWidths, 0, pixelBlockWidths, 1, blockIdx);
+        pixelBlocks[0] = block;
+        pixelBlockWidths[0] = width;
+    }
+
+    private void putBytes(byte[] bytes) throws IOException {
+        ensure(10);
+        putVarint(bytes.length);
+        int offset = 0;
+        while (offset < bytes.length) {
+            ensure(1);
+            int count = Math.min(buffer.remaining(), bytes.length - offset);
+            buffer.put(bytes, offset, count);
+            offset += count;
+        }
+    }
+
+    /*
+    * Put a coord, coordinate of a point, given the same coordinate of the
+    * previous point; see the class comment.
+     */
+    private void putCoord(double coord, double prevCoord) {
+        double steps = (coord - prevCoord) * COORD_SCALE;
+        if (Math.abs(steps) <= MAX_COORD_STEPS && steps == Math.rint(steps)
+                && Double.doubleToRawLongBits(prevCoord + steps / COORD_SCALE)
+                == Double.doubleToRawLongBits(coord)) {
+            long zigzag = ((long) steps << 1) ^ ((long) steps >> 63);
+            putVarint(zigzag << 1);
+        } else {
+            putVarint(1);
+            buffer.putDouble(coord);
+        }
+    }
+
+    private void putVarint(long value) {
+        while ((value & ~0x7FL) != 0) {
+            buffer.put((byte) ((value & 0x7F) | 0x80));
+            value >>>= 7;
+        }
+        buffer.put((byte) value);
+    }
+
+    private boolean recording() {
+        return failure == null && !closed;
+    }
+
+    /*
+    * print an error message to console tying it to this class
+     */
+    private static void sysErr(String errTxt) {
+        System.err.println(CLASS_NAME + "." + errTxt);
+    }
+
+    private void writeArc(TGArcOp arc) throws IOException {
+        writePen(arc.getPenColor().getRGB(), arc.getPenSize(), penCap, arc.getPenPattern());
+        writeRun();
+        ensure(1 + 5 * 8);
+        buffer.put(TAG_ARC);
+        buffer.putDouble(arc.getOriginX());
+        buffer.putDouble(arc.getOriginY());
+        buffer.putDouble(arc.getRadius());
+        buffer.putDouble(arc.getStartAngle());
+        buffer.putDouble(arc.getArcAngle());
+    }
+
+    private void writeFill(TGFillOp fill) throws IOException {
+        writeRun();
+        ensure(1 + 4 + 2 * 8);
+        buffer.put(TAG_FILL);
+        buffer.putInt(fill.getFillColor().getRGB());
+        buffer.putDouble(fill.getFillPoint().xDoubleValue());
+        buffer.putDouble(fill.getFillPoint().yDoubleValue());
+    }
+
+    private void writeLabel(TGLabelOp label) throws IOException {
+        writeRun();
+        Font font = label.getFont();
+        ensure(1 + 4 + 2 * 8);
+        buffer.put(TAG_LABEL);
+        buffer.putInt(label.getColor().getRGB());
+        buffer.putDouble(label.getWhere().xDoubleValue());
+        buffer.putDouble(label.getWhere().yDoubleValue());
+        putBytes(font.getName().getBytes(UTF8));
+        ensure(2 * 10);
+        putVarint(font.getStyle());
+        putVarint(font.getSize());
+        putBytes(label.getText().getBytes(UTF8));
+    }
+
+    /*
+    * Write a line with the pen last written, adding it to the run being
+    * collected if it starts where the previous line ended.
+     */
+    private void writeLine(double x1, double y1, double x2, double y2) throws IOException {
+        if (x1 == curX && y1 == curY) {
+            if (numRunLines == MAX_RUN_LINES) {
+                writeRun();
+            }
+            if (numRunLines == 0) {
+                runStartX = x1;
+                runStartY = y1;
+            }
+            runEnds[2 * numRunLines] = x2;
+            runEnds[2 * numRunLines + 1] = y2;
+            numRunLines++;
+        } else {
+            writeRun();
+            ensure(1 + 4 * (10 + 8));
+            buffer.put(TAG_LINE);
+            putCoord(x1, curX);
+            putCoord(y1, curY);
+            putCoord(x2, x1);
+            putCoord(y2, y1);
+        }
+        curX = x2;
+        curY = y2;
+    }
+
+    /*
+    * Write the pen if it differs from the one last written.
+     */
+    private void writePen(int rgb, int width, int cap, float[] pattern) throws IOException {
+        if (penWritten && rgb == penRGB && width == penWidth && cap == penCap
+                && Arrays.equals(pattern, penPattern)) {
+            return;
+        }
+        writeRun();
+        int numDashes = (pattern == null) ? 0 : pattern.length;
+        ensure(1 + 4 + 3 * 10);
+        buffer.put(TAG_PEN);
+        buffer.putInt(rgb);
+        putVarint(width);
+        putVarint(cap);
+        putVarint(numDashes);
+        for (int idx = 0; idx < numDashes; idx++) {
+            ensure(4);
+            buffer.putFloat(pattern[idx]);
+        }
+        penRGB = rgb;
+        penWidth = width;
+        penCap = cap;
+        penPattern = (pattern == null) ? null : pattern.clone();
+        penWritten = true;
+    }
+
+    private void writePixels(TGSetPixelsOp setPixels) throws IOException {
+        writeRun();
+        int[] pixels = setPixels.getPixels();
+        int width = setPixels.getWidth();
+        ensure(1 + 2 * 8 + 2 * 10);
+        buffer.put(TAG_PIXELS);
+        buffer.putDouble(setPixels.getTopLeft().xDoubleValue());
+        buffer.putDouble(setPixels.getTopLeft().yDoubleValue());
+        putVarint(width);
+        for (int blockIdx = 0; blockIdx < PIXEL_BLOCKS; blockIdx++) {
+            if (pixelBlocks[blockIdx] != null && pixelBlockWidths[blockIdx] == width
+                    && Arrays.equals(pixelBlocks[blockIdx], pixels)) {
+                putVarint(blockIdx + 1);
+                moveToFront(blockIdx);
+                return;
+            }
+        }
+        putVarint(0);
+        int height = (width > 0) ? pixels.length / width : 0;
+        putVarint(height);
+        int numPixels = width * height;
+        int pixelIdx = 0;
+        while (pixelIdx < numPixels) {
+            int pixel = pixels[pixelIdx];
+            int runEnd = pixelIdx + 1;
+            while (runEnd < numPixels && pixels[runEnd] == pixel) {
+                runEnd++;
+            }
+            ensure(10 + 4);
+            putVarint(runEnd - pixelIdx);
+            buffer.putInt(pixel);
+            pixelIdx = runEnd;
+        }
+        System.arraycopy(pixelBlocks, 0, pixelBlocks, 1, PIXEL_BLOCKS - 1);
+        System.arraycopy(pixelBlockWidths, 0, pixelBlockWidths, 1, PIXEL_BLOCKS - 1);
+        pixelBlocks[0] = pixels.clone();
+        pixelBlockWidths[0] = width;
+    }
+
+    /*
+    * Write the lines of a polyline.
+     */
+    private void writePolyline(TGPolylineOp polyline) throws IOException {
+        double[] points = polyline.getPoints();
+        writePen(polyline.getPenColor().getRGB(), polyline.getPenWidth(), polyline.getLineCap(), null);
+        for (int idx = 2; idx < points.length; idx += 2) {
+            writeLine(points[idx - 2], points[idx - 1], points[idx], points[idx + 1]);
+        }
+    }
+
+    /*
+    * Write the TAG_LINE_RUN record for the lines collected, if any.
+     */
+    private void writeRun() throws IOException {
+        if (numRunLines == 0) {
+            return;
+        }
+        ensure(1 + 10);
+        buffer.put(TAG_LINE_RUN);
+        putVarint(numRunLines);
+        double prevX = runStartX;
+        double prevY = runStartY;
+        for (int idx = 0; idx < 2 * numRunLines; idx += 2) {
+            ensure(2 * (10 + 8));
+            putCoord(runEnds[idx], prevX);
+            putCoord(runEnds[idx + 1], prevY);
+            prevX = runEnds[idx];
+            prevY = runEnds[idx + 1];
+        }
+        numRunLines = 0;
+    }
+
+} // end class TGRecorder
@@ -0,0 +1,270 @@
+package com.guyhaas.tg;
+
+import java.awt.BasicStroke;
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.Rectangle;
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferInt;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * TGRenderContext is the drawing state shared by the graphics operations
+ * TGCanvas performs in one pass over its queue.
+ * <p>
+ * Getting a Graphics2D for an Image, building a BasicStroke, and disposing of
+ * both costs more than drawing a short line. A TGRenderContext hangs on to one
+ * Graphics2D for the Image being drawn on and only changes its color or stroke
+ * when an operation's pen differs from the previous one's. BasicStrokes are
+ * kept in a small process-wide cache, least recently used ones are dropped.
+ * <p>
+ * A TGRenderContext is not thread-safe; TGCanvas only uses its one holding
+ * its render lock.
+ */
+class TGRenderContext {
+
+    //
+    // Nested Classes
+    // ------ -------
+
+    /*
+    * What a BasicStroke is looked up by in the stroke cache.
+     */
+    private static final class StrokeKey {
+
+        final float width;
+        final int cap;
+        final int join;
+        final float[] dash;
+
+        StrokeKey(float width, int cap, int join, float[] dash) {
+            this.width = width;
+            this.cap = cap;
+            this.join = join;
+            this.dash = dash;
+        }
+
+        public boolean equals(Object obj) {
+            if (!(obj instanceof StrokeKey)) {
+                return false;
+            }
+            StrokeKey key = (StrokeKey) obj;
+            return width == key.width && cap == key.cap && join == key.join
+                    && Arrays.equals(dash, key.dash);
+        }
+
+        public int hashCode() {
+            return ((Float.floatToIntBits(width) * 31 + cap) * 31 + join) * 31 + Arrays.hashCode(dash);
+        }
+
+    }
+
+    //
+    // Symbolic Constants
+    // -------- ---------
+
+    /*
+    * Maximum number of BasicStrokes kept in the cache.
+     */
+    private static final int STROKE_CACHE_SIZE = 64;
+
+    //
+    // Class Fields
+    // ----- ------
+
+    /*
+    * Cache of BasicStrokes, in least to most recently used order. Access
+    * is synchronized on the cache itself.
+     */
+    private static final Map<StrokeKey, BasicStroke> strokeCache
+            = new LinkedHashMap<StrokeKey, BasicStroke>(16, 0.75f, true) {
+        protected boolean removeEldestEntry(Map.Entry<StrokeKey, BasicStroke> eldest) {
+            return size() > STROKE_CACHE_SIZE;
+        }
+    };
+
+    /*
+    * Image being drawn on and the Graphics2D drawing on it, null until
+    * first needed.
+     */
+    private BufferedImage image;
+    private Graphics2D g2;
+
+    /*
+    * The Image's pixels, one int per pixel, row after row, when it is a
+    * TYPE_INT_RGB Image; looked up the first time they are asked for.
+     */
+    private int[] imagePixels;
+    private boolean imagePixelsLookedUp;
+
+    /*
+    * Should TGLineRaster draw anti-aliased lines?
+     */
+    private boolean antialiasing;
+
+    /*
+    * The pen g2 is currently set up with.
+     */
+    private Color penColor;
+    private BasicStroke penStroke;
+    private float penWidth;
+    private int penCap;
+    private int penJoin;
+    private float[] penDash;
+
+    //
+    // Constructors
+    // ------------
+    /**
+     * Instantiate a context with nothing to draw on yet.
+     */
+    TGRenderContext() {
+    }
+
+    /**
+     * Instantiate a context for drawing on an Image.
+     */
+    TGRenderContext(BufferedImage image) {
+        this.image = image;
+    }
+
+    //
+    // Methods
+    // -------
+    /**
+     * Let go of the Graphics2D, if there is one. The context can still be
+     * used; a new one is created when needed.
+     */
+    void dispose() {
+        if (g2 != null) {
+            g2.dispose();
+            g2 = null;
+        }
+        penColor = null;
+        penStroke = null;
+    }
+
+    /**
+     * Return the Image being drawn on.
+     */
+    BufferedImage getImage() {
+        return image;
+    }
+
+    /**
+     * Return the height of the Image being drawn on.
+     */
+    int getImageHeight() {
+        return image.getHeight();
+    }
+
+    /**
+     * Return the pixels of the Image being drawn on, getImageWidth() ints per
+     * row, or null if it is not a TYPE_INT_RGB Image.
+     */
+    int[] getImagePixels() {
+        if (!imagePixelsLookedUp) {
+            imagePixelsLookedUp = true;
+            if (image != null && image.getType() == BufferedImage.TYPE_INT_RGB
+                    && image.getRaster().getDataBuffer() instanceof DataBufferInt) {
+                imagePixels = ((DataBufferInt) image.getRaster().getDataBuffer()).getData();
+            }
+        }
+        return imagePixels;
+    }
+
+    /**
+     * Return the width of the Image being drawn on.
+     */
+    int getImageWidth() {
+        return image.getWidth();
+    }
+
+    /**
+     * Return true if lines TGLineRaster draws should be anti-aliased.
+     */
+    boolean isAntialiasing() {
+        return antialiasing;
+    }
+
+    /**
+     * Set whether lines TGLineRaster draws are anti-aliased.
+     */
+    void setAntialiasing(boolean antialiasing) {
+        this.antialiasing = antialiasing;
+    }
+
+    /**
+     * Return a Graphics2D for drawing on the Image with the specified pen,
+     * clipped to clipRect. Its color and stroke are only changed if they
+     * differ from what the previous caller asked for. The Graphics2D belongs to
+     * the context; callers must not dispose of it.
+     *
+     * @param color pen color
+     * @param width pen width
+     * @param cap BasicStroke end cap style
+     * @param join BasicStroke join style
+     * @param dash dash pattern, null for a solid line
+     * @param clipRect area to clip drawing to, in Image coordinates
+     */
+    Graphics2D getGraphics(Color color, float width, int cap, int join, float[] dash, Rectangle clipRect) {
+        if (g2 == null) {
+            g2 = (Graphics2D) image.getGraphics();
+            penColor = null;
+            penStroke = null;
+        }
+        if (!color.equals(penColor)) {
+            g2.setColor(color);
+            penColor = color;
+        }
+        if (penStroke == null || width != penWidth || cap != penCap || join != penJoin
+                || !Arrays.equals(dash, penDash)) {
+            penStroke = getStroke(width, cap, join, dash);
+            penWidth = width;
+            penCap = cap;
+            penJoin = join;
+            penDash = (dash == null) ? null : dash.clone();
+            g2.setStroke(penStroke);
+        }
+        g2.setClip(clipRect.x, clipRect.y, clipRect.width, clipRect.height);
+        return g2;
+    }
+
+    /**
+     * Switch to drawing on a different Image. Nothing changes if it is the
+     * one already being drawn on.
+     */
+    void setImage(BufferedImage newImage) {
+        if (newImage != image) {
+            dispose();
+            image = newImage;
+            imagePixels = null;
+            imagePixelsLookedUp = false;
+        }
+    }
+
+    /**
+     * Return a BasicStroke with the specified attributes, from the cache if
+     * one has been made before.
+     */
+    static BasicStroke getStroke(float width, int cap, int join, float[] dash) {
+        StrokeKey key = new StrokeKey(width, cap, join, dash);
+        synchronized (strokeCache) {
+            BasicStroke stroke = strokeCache.get(key);
+            if (stroke == null) {
+                if (dash == null) {
+                    stroke = new BasicStroke(width, cap, join);
+                } else {
+                    stroke = new BasicStroke(width, cap, join, 0, dash, 0);
+                }
+                // the key keeps its own copy; the caller's array may change
+                float[] dashCopy = (dash == null) ? null : dash.clone();
+                strokeCache.put(new StrokeKey(width, cap, join, dashCopy), stroke);
+            }
+            return stroke;
+        }
+    }
+
+} // end class TGRenderContext
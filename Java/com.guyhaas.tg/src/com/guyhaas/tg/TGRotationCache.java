@@ -0,0 +1,357 @@
+package com.guyhaas.tg;
+
+import java.awt.Image;
+import java.awt.Rectangle;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * TGRotationCache holds the rotated images of turtle shapes, one for each
+ * whole degree of heading, so a turtle spinning in place, or many turtles with
+ * the same shape and color, only rotate its pixels once per heading.
+ * <p>
+ * A shape is its un-rotated pixels, color included. Equal pixels are the same
+ * shape whichever SpritePixels they came from. Frames, the rotated pixels and
+ * an Image of them, are built when first asked for. The least recently used
+ * frames are dropped when all of them together take up more than
+ * MAX_CACHE_BYTES. Shapes larger than MAX_FRAME_BYTES are not cached; they
+ * are rotated each time, as before.
+ * <p>
+ * Methods are thread-safe. Frames are shared, their pixels must not be
+ * changed.
+ */
+class TGRotationCache {
+
+    //
+    // Nested Classes
+    // ------ -------
+
+    /**
+     * A shape's pixels rotated to one heading, sideSize pixels square.
+     */
+    static final class Frame {
+
+        final int[] pixels;
+        final int sideSize;
+
+        /*
+        * Image of the pixels, made the first time it is asked for.
+         */
+        private Image image;
+
+        Frame(int[] pixels, int sideSize) {
+            this.pixels = pixels;
+            this.sideSize = sideSize;
+        }
+
+        /**
+         * Return an Image of the frame's pixels.
+         */
+        synchronized Image getImage() {
+            if (image == null) {
+                image = SpritePixels.sharedPixelsImage(pixels, sideSize);
+            }
+            return image;
+        }
+
+    }
+
+    /**
+     * A shape, a copy of a SpritePixels' un-rotated pixels. Callers hold on
+     * to one so that looking up its frames does not compare pixels.
+     */
+    static final class Shape {
+
+        private final int[] pixels;
+        private final int sideSize;
+        private final int hash;
+
+        /*
+        * The pixels' bounds, see pixelBounds().
+         */
+        private final Rectangle bounds;
+
+        private Shape(int[] pixels, int sideSize) {
+            this.pixels = pixels;
+            this.sideSize = sideSize;
+            this.hash = Arrays.hashCode(pixels) * 31 + sideSize;
+            this.bounds = pixelBounds(pixels, sideSize);
+        }
+
+        public boolean equals(Object obj) {
+            if (this == obj) {
+                return true;
+            }
+            if (!(obj instanceof Shape)) {
+                return false;
+            }
+            Shape shape = (Shape) obj;
+            return hash == shape.hash && sideSize == shape.sideSize && Arrays.equals(pixels, shape.pixels);
+        }
+
+        public int hashCode() {
+            return hash;
+        }
+
+    }
+
+    /*
+    * What a Frame is looked up by.
+     */
+    private static final class FrameKey {
+
+        final Shape shape;
+        final int degrees;
+
+        FrameKey(Shape shape, int degrees) {
+            this.shape = shape;
+            this.degrees = degrees;
+        }
+
+        public boolean equals(Object obj) {
+            if (!(obj instanceof FrameKey)) {
+                return false;
+            }
+            FrameKey key = (FrameKey) obj;
+            return degrees == key.degrees && shape.equals(key.shape);
+        }
+
+        public int hashCode() {
+            return shape.hashCode() * 31 + degrees;
+        }
+
+    }
+
+    //
+    // Symbolic Constants
+    // -------- ---------
+
+    /*
+    * Most bytes of pixels kept in all of the frames.
+     */
+    private static final long MAX_CACHE_BYTES = 32L * 1024 * 1024;
+
+    /*
+    * Shapes with frames larger than this are not cached.
+     */
+    private static final int MAX_FRAME_BYTES = 256 * 1024;
+
+    /*
+    * Number of distinct shapes remembered so SpritePixels with equal
+    * pixels share one Shape.
+     */
+    private static final int MAX_SHAPES = 64;
+
+    /*
+    * Fractional bits of the fixed point source coordinates rotate()
+    * steps along a row.
+     */
+    private static final int FIXED_POINT_SHIFT = 32;
+    private static final long FIXED_POINT_ONE = 1L << FIXED_POINT_SHIFT;
+    private static final long FIXED_POINT_HALF = FIXED_POINT_ONE >> 1;
+
+    //
+    // Class Fields
+    // ----- ------
+
+    /*
+    * Cached frames, least to most recently used, and the bytes of pixels
+    * in them. Access is synchronized on frames.
+     */
+    private static final LinkedHashMap<FrameKey, Frame> frames = new LinkedHashMap<FrameKey, Frame>(256, 0.75f, true);
+    private static long cacheBytes;
+
+    /*
+    * Recently seen Shapes, each mapped to itself.
+     */
+    private static final Map<Shape, Shape> shapes = new LinkedHashMap<Shape, Shape>(16, 0.75f, true) {
+        protected boolean removeEldestEntry(Map.Entry<Shape, Shape> eldest) {
+            return size() > MAX_SHAPES;
+        }
+    };
+
+    //
+    // Constructor
+    // -----------
+    private TGRotationCache() {
+    }
+
+    //
+    // Methods
+    // -------
+    /**
+     * Return true if frames of a shape sideSize pixels square are cached.
+     */
+    static boolean canCache(int sideSize) {
+        return (long) sideSize * sideSize * 4 <= MAX_FRAME_BYTES;
+    }
+
+    /**
+     * Return the Shape for an un-rotated image, the same Shape returned for
+     * earlier, equal, pixels if it is still remembered. The pixels are copied.
+     */
+    static Shape getShape(int[] pixels, int sideSize) {
+        Shape shape = new Shape(pixels.clone(), sideSize);
+        synchronized (shapes) {
+            Shape known = shapes.get(shape);
+            if (known != null) {
+                return known;
+            }
+            shapes.put(shape, shape);
+        }
+        return shape;
+    }
+
+    /**
+     * Return the frame for a shape at a heading, rotating its pixels if the
+     * frame is not in the cache.
+     *
+     * @param shape what getShape() returned for the shape
+     * @param degrees heading, 0 through 359, in the SpritePixels' (AWT)
+     *        manner, i.e., the positive X axis is 0
+     */
+    static Frame getFrame(Shape shape, int degrees) {
+        FrameKey key = new FrameKey(shape, degrees);
+        synchronized (frames) {
+            Frame frame = frames.get(key);
+            if (frame != null) {
+                return frame;
+            }
+        }
+        int[] pixels = new int[shape.pixels.length];
+        rotate(shape.pixels, pixels, shape.sideSize, shape.bounds, Math.toRadians(degrees));
+        Frame frame = new Frame(pixels, shape.sideSize);
+        synchronized (frames) {
+            Frame other = frames.put(key, frame);
+            if (other != null) {
+                cacheBytes -= 4L * other.pixels.length;
+            }
+            cacheBytes += 4L * pixels.length;
+            Iterator<Frame> iter = frames.values().iterator();
+            while (cacheBytes > MAX_CACHE_BYTES && iter.hasNext()) {
+                Frame eldest = iter.next();
+                if (eldest == frame) {
+                    break;
+                }
+                cacheBytes -= 4L * eldest.pixels.length;
+                iter.remove();
+            }
+        }
+        return frame;
+    }
+
+    /**
+     * Return the smallest Rectangle holding all of a square array's pixels
+     * that are not zero, an empty Rectangle if they all are.
+     */
+    static Rectangle pixelBounds(int[] pixels, int sideSize) {
+        int minX = sideSize;
+        int maxX = -1;
+        int minY = sideSize;
+        int maxY = -1;
+        for (int row = 0; row < sideSize; row++) {
+            int rowIdx = row * sideSize;
+            int col = 0;
+            while (col < sideSize && pixels[rowIdx + col] == 0) {
+                col++;
+            }
+            if (col == sideSize) {
+                continue;
+            }
+            minX = Math.min(minX, col);
+            col = sideSize - 1;
+            while (pixels[rowIdx + col] == 0) {
+                col--;
+            }
+            maxX = Math.max(maxX, col);
+            minY = Math.min(minY, row);
+            maxY = row;
+        }
+        if (maxY < 0) {
+            return new Rectangle();
+        }
+        return new Rectangle(minX, minY, maxX - minX + 1, maxY - minY + 1);
+    }
+
+    /**
+     * Fill dest with srcPixels rotated by heading radians. I use a
+     * 'Reverse-Rotation' algorithm, computing which pixel in the original
+     * image maps to every pixel in the new image (vs projecting forward) to
+     * avoid holes due to rounding errors. Since I'm rotating around the
+     * center of the image (not its origin), three steps are needed:
+     * (1) translate origin to center,
+     * (2) reverse rotatation of pixel x,y, and
+     * (3) translate back to initial origin.
+     * <p>
+     * Only the part of dest that srcBounds, the non-zero pixels' bounds (see
+     * pixelBounds()), rotates onto is worked out pixel by pixel; the rest is
+     * zero. Along a row the source coordinates are stepped, in fixed point,
+     * instead of being multiplied out for each pixel.
+     */
+    static void rotate(int[] srcPixels, int[] dest, int sideSize, Rectangle srcBounds, double heading) {
+        if (srcBounds.isEmpty()) {
+            Arrays.fill(dest, 0, sideSize * sideSize, 0);
+            return;
+        }
+        int center = sideSize / 2;
+        double cosTheta = Math.cos(heading);
+        double sinTheta = Math.sin(heading);
+
+        // rotate the corners of srcBounds forward to find the part of
+        // dest it lands on; coordinates are doubled, centered ones, the
+        // same as colPrime and rowPrime below
+        double minCol = Double.MAX_VALUE;
+        double maxCol = -Double.MAX_VALUE;
+        double minRow = Double.MAX_VALUE;
+        double maxRow = -Double.MAX_VALUE;
+        for (int corner = 0; corner < 4; corner++) {
+            int srcX = ((corner & 1) == 0) ? srcBounds.x : srcBounds.x + srcBounds.width;
+            int srcY = ((corner & 2) == 0) ? srcBounds.y : srcBounds.y + srcBounds.height;
+            double xPrime = 2 * (srcX - center);
+            double yPrime = 2 * (srcY - center);
+            double colPrime = xPrime * cosTheta + yPrime * sinTheta;
+            double rowPrime = yPrime * cosTheta - xPrime * sinTheta;
+            minCol = Math.min(minCol, colPrime);
+            maxCol = Math.max(maxCol, colPrime);
+            minRow = Math.min(minRow, rowPrime);
+            maxRow = Math.max(maxRow, rowPrime);
+        }
+        // a pixel of slop for rounding on each side
+        int firstCol = Math.max((int) Math.floor(minCol / 2) + center - 2, 0);
+        int lastCol = Math.min((int) Math.ceil(maxCol / 2) + center + 2, sideSize - 1);
+        int firstRow = Math.max((int) Math.floor(minRow / 2) + center - 2, 0);
+        int lastRow = Math.min((int) Math.ceil(maxRow / 2) + center + 2, sideSize - 1);
+        if (firstCol > lastCol || firstRow > lastRow) {
+            Arrays.fill(dest, 0, sideSize * sideSize, 0);
+            return;
+        }
+
+        Arrays.fill(dest, 0, firstRow * sideSize, 0);
+        long stepX = Math.round(2 * cosTheta * FIXED_POINT_ONE);
+        long stepY = Math.round(2 * sinTheta * FIXED_POINT_ONE);
+        int colPrime = 2 * (firstCol - center) + 1;
+        for (int row = firstRow; row <= lastRow; row++) {
+            int rowIdx = row * sideSize;
+            int rowPrime = 2 * (row - center) + 1;
+            Arrays.fill(dest, rowIdx, rowIdx + firstCol, 0);
+            long fixedX = Math.round((colPrime * cosTheta - rowPrime * sinTheta) * FIXED_POINT_ONE) + FIXED_POINT_HALF;
+            long fixedY = Math.round((colPrime * sinTheta + rowPrime * cosTheta) * FIXED_POINT_ONE) + FIXED_POINT_HALF;
+            for (int col = firstCol; col <= lastCol; col++) {
+                int srcX = ((int) (fixedX >> FIXED_POINT_SHIFT) - 1) / 2 + center;
+                int srcY = ((int) (fixedY >> FIXED_POINT_SHIFT) - 1) / 2 + center;
+                fixedX += stepX;
+                fixedY += stepY;
+                if (srcX < 0 || srcX >= sideSize || srcY < 0 || srcY >= sideSize) {
+                    dest[rowIdx + col] = 0;
+                    continue;
+                }
+                dest[rowIdx + col] = srcPixels[srcY * sideSize + srcX];
+            }
+            Arrays.fill(dest, rowIdx + lastCol + 1, rowIdx + sideSize, 0);
+        }
+        Arrays.fill(dest, (lastRow + 1) * sideSize, sideSize * sideSize, 0);
+    }
+
+} // end class TGRotationCache
@@ -1,6 +1,8 @@
 package com.guyhaas.tg;
 
+import java.awt.geom.Rectangle2D;
 import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferInt;
 import java.awt.Rectangle;
 
 /**
@@ -16,7 +18,7 @@ import java.awt.Rectangle;
  * <p>
  * @author Guy Haas
  */
-public class TGSetPixelsOp implements TGGraphicsOp {
+public class TGSetPixelsOp implements TGGraphicsOp, TGBoundedOp {
 
     //
     // Symbolic Constants
@@ -34,6 +36,12 @@ public class TGSetPixelsOp implements TGGraphicsOp {
     private int pixRectWidth;       // dimension for the rectangle (height is computed)
     private int[] pixRectPixels;    // array of pixels to be merged onto graphics canvas
 
+    /*
+    * Runs of non-transparent pixels in pixRectPixels, see opaqueRuns().
+    * Computed when first needed unless provided.
+     */
+    private int[] opaqueRuns;
+
     //
     // Constructors
     // ------------
@@ -68,50 +76,142 @@ public class TGSetPixelsOp implements TGGraphicsOp {
         //printPixels( 0, 0, 20, 10, pixRectPixels, pixRectWidth );
     }
 
+    /*
+    * Instantiate with the runs of non-transparent pixels already found, by
+    * opaqueRuns(), e.g., for a Sprite stamped over and over.
+     */
+    TGSetPixelsOp(TGPoint topLeft, PixelRectangle pixRect, int[] opaqueRuns) {
+        this(topLeft, pixRect);
+        this.opaqueRuns = opaqueRuns;
+    }
+
+    //
+    // Package Methods
+    // ------- -------
+    /*
+    * Accessors for the attributes of the operation, e.g., for TGRecorder
+    * encoding it.
+     */
+    int[] getPixels() {
+        return pixRectPixels;
+    }
+
+    TGPoint getTopLeft() {
+        return pixRectTopLeft;
+    }
+
+    int getWidth() {
+        return pixRectWidth;
+    }
+
+    /**
+     * Return the runs of non-transparent pixels in a rectangle of pixels,
+     * row by row. The first height+1 elements are indexes of where each row's
+     * runs start in the array, the last one where the final row's runs end.
+     * Each run is a pair of elements: the column it starts in and its length.
+     */
+    static int[] opaqueRuns(int[] pixels, int width) {
+        int height = pixels.length / width;
+        int[] runs = new int[height + 1 + 16];
+        int runsIdx = height + 1;
+        for (int row = 0; row < height; row++) {
+            runs[row] = runsIdx;
+            int rowIdx = row * width;
+            int col = 0;
+            while (col < width) {
+                if ((pixels[rowIdx + col] & 0xFF000000) == 0) {
+                    col++;
+                    continue;
+                }
+                int firstCol = col;
+                while (col < width && (pixels[rowIdx + col] & 0xFF000000) != 0) {
+                    col++;
+                }
+                if (runsIdx + 2 > runs.length) {
+                    int[] newRuns = new int[runs.length * 2];
+                    System.arraycopy(runs, 0, newRuns, 0, runsIdx);
+                    runs = newRuns;
+                }
+                runs[runsIdx++] = firstCol;
+                runs[runsIdx++] = col - firstCol;
+            }
+        }
+        runs[height] = runsIdx;
+        return runs;
+    }
+
     //
     // TGGraphicsOp Interface Methods
     // ------------ --------- -------
     /**
      * Perform a read/modify/write cycle on a rectangular area of pixels in the
-     * provided inMemoryImage.
+     * provided inMemoryImage. Transparent pixels (alpha zero) are skipped,
+     * all others replace what is there. The parts of the rectangle which are
+     * off the edges of the Image are ignored.
      *
      * @param inMemoryImage Where my pixRectPixels[] should be stored into.
      */
     public Rectangle doIt(BufferedImage inMemoryImage) {
+        if (pixRectWidth <= 0) {
+            return null;
+        }
         int imgWidth = inMemoryImage.getWidth();
         int imgHeight = inMemoryImage.getHeight();
         // convert TGPoint pixRectTopLeft from TurtleSpace to x,y coordinates
         // within the provided inMemoryImage
         int imageX = pixRectTopLeft.imageX(imgWidth);
-        if (imageX < 0 || imageX >= imgWidth) {
-            return null;
-        }
         int imageY = pixRectTopLeft.imageY(imgHeight);
-        if (imageY < 0 || imageY >= imgHeight) {
+        int pixRectHeight = pixRectPixels.length / pixRectWidth;
+
+        // clip: source columns firstCol up to lastCol and rows firstRow up
+        // to lastRow land on the Image
+        int firstCol = Math.max(0, -imageX);
+        int lastCol = Math.min(pixRectWidth, imgWidth - imageX);
+        int firstRow = Math.max(0, -imageY);
+        int lastRow = Math.min(pixRectHeight, imgHeight - imageY);
+        if (firstCol >= lastCol || firstRow >= lastRow) {
             return null;
         }
-        // compute bounds for grab of pixels
-        int imgRectWidth = pixRectWidth;
-        if ((imageX + pixRectWidth) > imgWidth) {
-            imgRectWidth = imgWidth - imageX;
+        if (opaqueRuns == null) {
+            opaqueRuns = opaqueRuns(pixRectPixels, pixRectWidth);
         }
-        int imgRectHeight = pixRectPixels.length / pixRectWidth;
-        if ((imageY + imgRectHeight) > imgHeight) {
-            imgRectHeight = imgHeight - imageY;
+        int[] imagePixels = null;
+        int imageType = inMemoryImage.getType();
+        if ((imageType == BufferedImage.TYPE_INT_RGB || imageType == BufferedImage.TYPE_INT_ARGB)
+                && inMemoryImage.getRaster().getDataBuffer() instanceof DataBufferInt) {
+            imagePixels = ((DataBufferInt) inMemoryImage.getRaster().getDataBuffer()).getData();
         }
-        int pixRectIdx = 0;
-        for (int y = imageY; y < imageY + imgRectHeight; y++) {
-            for (int x = imageX; x < imageX + imgRectWidth; x++) {
-                int pixel = pixRectPixels[pixRectIdx++];
-                if (pixRectIdx >= pixRectPixels.length) {
-                    pixRectIdx = 0;
+        for (int row = firstRow; row < lastRow; row++) {
+            int srcRowIdx = row * pixRectWidth;
+            int y = imageY + row;
+            for (int runIdx = opaqueRuns[row]; runIdx < opaqueRuns[row + 1]; runIdx += 2) {
+                int runStart = Math.max(opaqueRuns[runIdx], firstCol);
+                int runEnd = Math.min(opaqueRuns[runIdx] + opaqueRuns[runIdx + 1], lastCol);
+                if (runStart >= runEnd) {
+                    continue;
                 }
-                if ((pixel & 0xFF000000) != 0) {
-                    inMemoryImage.setRGB(x, y, pixel);
+                if (imagePixels != null) {
+                    System.arraycopy(pixRectPixels, srcRowIdx + runStart,
+                            imagePixels, y * imgWidth + imageX + runStart, runEnd - runStart);
+                } else {
+                    inMemoryImage.setRGB(imageX + runStart, y, runEnd - runStart, 1,
+                            pixRectPixels, srcRowIdx + runStart, pixRectWidth);
                 }
             }
         }
-        return new Rectangle(imageX, imageY, imgRectWidth, imgRectHeight);
+        return new Rectangle(imageX + firstCol, imageY + firstRow, lastCol - firstCol, lastRow - firstRow);
+    }
+
+    //
+    // TGBoundedOp Interface Methods
+    // ----------- --------- -------
+    /**
+     * Return the area of TurtleSpace covered by the rectangle of pixels.
+     */
+    public Rectangle2D getTurtleBounds() {
+        int height = pixRectPixels.length / pixRectWidth;
+        return new Rectangle2D.Double(pixRectTopLeft.xDoubleValue(), pixRectTopLeft.yDoubleValue() - height,
+                pixRectWidth + 1, height + 1);
     }
 
     //
@@ -0,0 +1,132 @@
+package com.guyhaas.tg;
+
+/**
+ * TGTrig has sines and cosines of angles in degrees, the way Sprites keep
+ * their headings.
+ * <p>
+ * Turtle programs mostly turn by whole degrees, or halves or quarters of them
+ * (60, 90, 22.5, ...). Sines and cosines of these come out of a table instead
+ * of Math.sin() and Math.cos(). The table is built from one quadrant, so the
+ * values in all four quadrants are the same, only the signs differ, and
+ * sin(30) is exactly 0.5. A square, hexagon, etc... drawn with them closes
+ * exactly; no rounding error is left over to make the turtle drift. Other
+ * angles are converted to radians and computed.
+ */
+class TGTrig {
+
+    //
+    // Symbolic Constants
+    // -------- ---------
+
+    /*
+    * Entries in the table for each degree.
+     */
+    private static final int STEPS_PER_DEGREE = 4;
+
+    /*
+    * Entries in the table for a quadrant and a circle.
+     */
+    private static final int QUADRANT_STEPS = 90 * STEPS_PER_DEGREE;
+    private static final int CIRCLE_STEPS = 4 * QUADRANT_STEPS;
+
+    //
+    // Class Fields
+    // ----- ------
+
+    /*
+    * Sines of the angles 0 through 90 degrees, STEPS_PER_DEGREE per degree.
+     */
+    private static final double[] quadrantSines = new double[QUADRANT_STEPS + 1];
+
+    static {
+        for (int idx = 0; idx <= QUADRANT_STEPS; idx++) {
+            quadrantSines[idx] = Math.sin(Math.toRadians((double) idx / STEPS_PER_DEGREE));
+        }
+        quadrantSines[0] = 0.0;
+        quadrantSines[30 * STEPS_PER_DEGREE] = 0.5;
+        quadrantSines[QUADRANT_STEPS] = 1.0;
+    }
+
+    //
+    // Constructor
+    // -----------
+    private TGTrig() {
+    }
+
+    //
+    // Methods
+    // -------
+    /**
+     * Return the cosine of an angle in degrees.
+     */
+    static double cosDegrees(double degrees) {
+        int step = tableStep(degrees);
+        if (step < 0) {
+            return Math.cos(Math.toRadians(degrees));
+        }
+        return tableSine((step + QUADRANT_STEPS) % CIRCLE_STEPS);
+    }
+
+    /**
+     * Return an angle in degrees brought into the range 0 (included) through
+     * 360 (excluded).
+     */
+    static double normalizeDegrees(double degrees) {
+        degrees %= 360.0;
+        if (degrees < 0.0) {
+            degrees += 360.0;
+            if (degrees >= 360.0) {
+                degrees = 0.0;
+            }
+        }
+        return degrees;
+    }
+
+    /**
+     * Return the sine of an angle in degrees.
+     */
+    static double sinDegrees(double degrees) {
+        int step = tableStep(degrees);
+        if (step < 0) {
+            return Math.sin(Math.toRadians(degrees));
+        }
+        return tableSine(step);
+    }
+
+    //
+    // Private Methods
+    // ------- -------
+
+    /*
+    * Return the table entry for an angle, 0 through CIRCLE_STEPS-1, or -1
+    * if the angle falls between entries.
+     */
+    private static int tableStep(double degrees) {
+        double scaled = normalizeDegrees(degrees) * STEPS_PER_DEGREE;
+        int step = (int) scaled;
+        if (step != scaled) {
+            return -1;
+        }
+        return step % CIRCLE_STEPS;
+    }
+
+    /*
+    * Return the sine of the angle of a table entry, mirroring the quadrant
+    * of sines into the rest of the circle.
+     */
+    private static double tableSine(int step) {
+        int quadrant = step / QUADRANT_STEPS;
+        int idx = step % QUADRANT_STEPS;
+        switch (quadrant) {
+            case 0:
+                return quadrantSines[idx];
+            case 1:
+                return quadrantSines[QUADRANT_STEPS - idx];
+            case 2:
+                return -quadrantSines[idx];
+            default:
+                return -quadrantSines[QUADRANT_STEPS - idx];
+        }
+    }
+
+} // end class TGTrig
@@ -0,0 +1,318 @@
+package com.guyhaas.tg;
+
+import java.lang.reflect.Method;
+
+/**
+ * TGTurtleRunner runs several turtles, Sprites drawing on one TGCanvas, at the
+ * same time, each in a Thread of its own, e.g., a swarm, or the symmetric
+ * parts of a POLY-style drawing.
+ * <p>
+ * Each turtle's program is given its Sprite and run in a virtual thread when
+ * the Java runtime has them (Java 21 and later), else in an ordinary (daemon)
+ * Thread. A Sprite must only be used by its own program.
+ * <p>
+ * A turtle draws into a batch of its own (see TGCanvas.beginBatch(int)), so
+ * turtles do not contend with each other over the canvas' queue for every
+ * line, and each batch is queued whenever it holds batchSize operations, when
+ * the turtle waits to take a paced step (see TGAnimationClock), and when its
+ * program is done. Each turtle's drawing is performed in the order it drew
+ * it; how turtles' drawings are interleaved depends on how their Threads get
+ * run.
+ * <p>
+ * A program that throws an AbortException, e.g., because runner's Threads were
+ * interrupted by abort(), just stops. Anything else a program throws, Errors
+ * such as a StackOverflowError from deep recursion included, is reported on
+ * System.err and the first of them kept, see getFailure().
+ */
+public class TGTurtleRunner {
+
+    //
+    // Nested Classes
+    // ------ -------
+
+    /**
+     * What a turtle does, given its Sprite.
+     */
+    public interface TurtleProgram {
+
+        void run(Sprite sprite) throws AbortException;
+
+    }
+
+    //
+    // Symbolic Constants
+    // -------- ---------
+
+    private static final String CLASS_NAME = "TGTurtleRunner";
+
+    /**
+     * Initial number of operations a turtle's batch collects before they are
+     * queued.
+     */
+    public static final int INIT_BATCH_SIZE = 500;
+
+    //
+    // Class Fields
+    // ----- ------
+
+    /*
+    * Thread.ofVirtual() and Thread.Builder's name() and unstarted(), or
+    * null when the Java runtime has no virtual threads. On Java 19 and 20
+    * the methods are there but are a preview feature, which throws unless
+    * enabled, so a virtual thread is made (and not started) to find out.
+     */
+    private static final Method ofVirtualMethod;
+    private static final Method builderNameMethod;
+    private static final Method builderUnstartedMethod;
+
+    static {
+        Method ofVirtual = null;
+        Method name = null;
+        Method unstarted = null;
+        try {
+            Class<?> builderClass = Class.forName("java.lang.Thread$Builder");
+            ofVirtual = Thread.class.getMethod("ofVirtual");
+            name = builderClass.getMethod("name", String.class);
+            unstarted = builderClass.getMethod("unstarted", Runnable.class);
+            Runnable noop = new Runnable() {
+                public void run() {
+                }
+            };
+            unstarted.invoke(name.invoke(ofVirtual.invoke(null), CLASS_NAME), noop);
+        } catch (ReflectiveOperationException roe) {
+            // no such class or methods, or ofVirtual() threw
+            ofVirtual = null;
+        } catch (RuntimeException re) {
+            ofVirtual = null;
+        }
+        ofVirtualMethod = ofVirtual;
+        builderNameMethod = name;
+        builderUnstartedMethod = unstarted;
+    }
+
+    private final TGCanvas canvas;
+
+    /*
+    * The turtles and their programs, numTurtles of them, and their
+    * Threads once start()ed.
+     */
+    private final Sprite[] sprites = new Sprite[Params.MAX_TURTLES];
+    private final TurtleProgram[] programs = new TurtleProgram[Params.MAX_TURTLES];
+    private int numTurtles;
+    private Thread[] threads;
+
+    private volatile int batchSize = INIT_BATCH_SIZE;
+
+    /*
+    * First Throwable thrown by a program, other than AbortException;
+    * guarded by this.
+     */
+    private Throwable failure;
+
+    //
+    // Constructor
+    // -----------
+    /**
+     * Instantiate a runner for turtles drawing on a canvas.
+     */
+    public TGTurtleRunner(TGCanvas canvas) {
+        this.canvas = canvas;
+    }
+
+    //
+    // Methods
+    // -------
+    /**
+     * Add a turtle, a new Sprite on the canvas, which will run program.
+     * Returns its Sprite, which the program is also handed, or null if no more
+     * turtles can be added.
+     */
+    public Sprite add(TurtleProgram program) {
+        if (!canAdd()) {
+            return null;
+        }
+        Sprite sprite = new Sprite(canvas);
+        add(sprite, program);
+        return sprite;
+    }
+
+    /**
+     * Add a turtle, an existing Sprite on the canvas, which will run program.
+     */
+    public synchronized void add(Sprite sprite, TurtleProgram program) {
+        if (threads != null) {
+            sysErr("add: already started");
+            return;
+        }
+        if (numTurtles == sprites.length) {
+            sysErr("add: no room!");
+            return;
+        }
+        sprites[numTurtles] = sprite;
+        programs[numTurtles] = program;
+        numTurtles++;
+    }
+
+    /**
+     * Stop the turtles, interrupting their Threads. Their programs end with an
+     * AbortException the next time a turtle moves or turns, paced or not;
+     * drawing already done is still queued.
+     */
+    public synchronized void abort() {
+        if (threads == null) {
+            return;
+        }
+        for (int idx = 0; idx < threads.length; idx++) {
+            threads[idx].interrupt();
+        }
+    }
+
+    /**
+     * Return the number of operations a turtle's batch collects before they
+     * are queued.
+     */
+    public int getBatchSize() {
+        return batchSize;
+    }
+
+    /**
+     * Return the first Throwable, other than AbortException, a turtle's
+     * program threw, null if none has.
+     */
+    public synchronized Throwable getFailure() {
+        return failure;
+    }
+
+    /**
+     * Return true if turtles are run in virtual threads.
+     */
+    public static boolean hasVirtualThreads() {
+        return ofVirtualMethod != null;
+    }
+
+    /**
+     * Wait for all of the turtles' programs to finish.
+     */
+    public void join() throws InterruptedException {
+        Thread[] started;
+        synchronized (this) {
+            started = threads;
+        }
+        if (started == null) {
+            return;
+        }
+        for (int idx = 0; idx < started.length; idx++) {
+            started[idx].join();
+        }
+    }
+
+    /**
+     * Start the turtles and wait for all of them to finish.
+     */
+    public void run() throws InterruptedException {
+        start();
+        join();
+    }
+
+    /**
+     * Set the number of operations a turtle's batch collects before they are
+     * queued. Larger batches cost less to queue, smaller ones show up sooner.
+     * Only affects turtles started after this is invoked.
+     *
+     * @param numOps operations per batch; zero means a turtle's drawing is
+     * only queued when it waits or its program is done
+     */
+    public void setBatchSize(int numOps) {
+        batchSize = Math.max(numOps, 0);
+    }
+
+    /**
+     * Start the turtles, each running its program in a Thread of its own. A
+     * runner can only be started once.
+     */
+    public synchronized void start() {
+        if (threads != null) {
+            sysErr("start: already started");
+            return;
+        }
+        threads = new Thread[numTurtles];
+        for (int idx = 0; idx < numTurtles; idx++) {
+            threads[idx] = newThread(turtleRunnable(sprites[idx], programs[idx]), CLASS_NAME + "-" + idx);
+        }
+        for (int idx = 0; idx < numTurtles; idx++) {
+            threads[idx].start();
+        }
+    }
+
+    //
+    // Private Methods
+    // ------- -------
+
+    private synchronized boolean canAdd() {
+        if (threads != null) {
+            sysErr("add: already started");
+            return false;
+        }
+        if (numTurtles == sprites.length) {
+            sysErr("add: no room!");
+            return false;
+        }
+        return true;
+    }
+
+    /*
+    * Return a new, unstarted, Thread: a virtual one if we can.
+     */
+    private static Thread newThread(Runnable runnable, String name) {
+        if (ofVirtualMethod != null) {
+            try {
+                Object builder = ofVirtualMethod.invoke(null);
+                builder = builderNameMethod.invoke(builder, name);
+                return (Thread) builderUnstartedMethod.invoke(builder, runnable);
+            } catch (Exception e) {
+                sysErr("newThread: " + e);
+            }
+        }
+        Thread thread = new Thread(runnable, name);
+        thread.setDaemon(true);
+        return thread;
+    }
+
+    /*
+    * Record the first exception a program throws.
+     */
+    private synchronized void noteFailure(Throwable t) {
+        if (failure == null) {
+            failure = t;
+        }
+    }
+
+    /*
+    * print an error message to console tying it to this class
+     */
+    private static void sysErr(String errTxt) {
+        System.err.println(CLASS_NAME + "." + errTxt);
+    }
+
+    /*
+    * Return what a turtle's Thread runs: its program, in a batch.
+     */
+    private Runnable turtleRunnable(final Sprite sprite, final TurtleProgram program) {
+        final int numOps = batchSize;
+        return new Runnable() {
+            public void run() {
+                canvas.beginBatch(numOps);
+                try {
+                    program.run(sprite);
+                } catch (AbortException ae) {
+                } catch (Throwable t) {
+                    sysErr("run: " + t);
+                    noteFailure(t);
+                } finally {
+                    canvas.endBatch();
+                }
+            }
+        };
+    }
+
+} // end class TGTurtleRunner
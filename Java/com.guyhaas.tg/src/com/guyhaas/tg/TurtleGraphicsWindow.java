@@ -735,6 +735,38 @@ public class TurtleGraphicsWindow extends Frame
             /* ignore  */ }
     }
 
+    /**
+     * Perform some drawing as a batch. Everything drawn by body is handed to
+     * the graphics canvas at once when it is done and the window is repainted
+     * once, e.g.,
+     * <pre>
+     *     batch(() -&gt; {
+     *         for (int i = 0; i &lt; 100000; i++) {
+     *             fd(1);
+     *             rt(1);
+     *         }
+     *     });
+     * </pre>
+     *
+     * @param body the drawing to be done
+     * @see #beginBatch
+     */
+    public void batch(Runnable body) {
+        canvas.batch(body);
+    }
+
+    /**
+     * Start batching up the drawing done by the current Thread. Until the
+     * matching endBatch(), lines, labels, etc... are collected and then handed
+     * to the graphics canvas all at once, with a single repaint.
+     *
+     * @see #batch
+     * @see #endBatch
+     */
+    public void beginBatch() {
+        canvas.beginBatch();
+    }
+
     /**
      * Move the turtle backwards along its current heading. If the pen is
      * currently in the DOWN position, a line is drawn.
@@ -803,6 +835,16 @@ public class TurtleGraphicsWindow extends Frame
         return turtle.colorunder();
     }
 
+    /**
+     * End a batch started by beginBatch(). The drawing done in the batch is
+     * handed to the graphics canvas.
+     *
+     * @see #beginBatch
+     */
+    public void endBatch() {
+        canvas.endBatch();
+    }
+
     /**
      * Fill a bounded area in the graphics canvas.
      *
@@ -1253,6 +1295,17 @@ public class TurtleGraphicsWindow extends Frame
             /* ignore  */ }
     }
 
+    /**
+     * Set whether thin (one pixel wide) lines are drawn anti-aliased, with
+     * smooth edges. They are not initially. Anti-aliased lines can not be
+     * completely erased by drawing over them in the background color.
+     *
+     * @param antialiased true for smooth lines
+     */
+    public void setAntialiasedLines(boolean antialiased) {
+        canvas.setAntialiasedLines(antialiased);
+    }
+
     /**
      * Set the background color of the graphics canvas.
      * <p>
@@ -1321,6 +1374,17 @@ public class TurtleGraphicsWindow extends Frame
         canvas.setbg(logoColor);
     }
 
+    /**
+     * Set the maximum number of times per second the graphics canvas is
+     * repainted, 60 initially. Zero stops repainting of the turtle's drawing
+     * until a rate is set again.
+     *
+     * @param framesPerSecond maximum repaints per second
+     */
+    public void setFrameRate(int framesPerSecond) {
+        canvas.setFrameRate(framesPerSecond);
+    }
+
     /**
      * Turns the turtle to the specified absolute heading. The heading is
      * specified in degrees (units of 1/360th of a circle) with 0 being North
@@ -1691,6 +1755,31 @@ public class TurtleGraphicsWindow extends Frame
         setxy(pos);
     }
 
+    /**
+     * Limit the number of graphics operations which may be waiting to be drawn
+     * and choose what happens when the turtle gets that far ahead: wait
+     * (TGCanvas.QUEUE_BLOCK), draw them right away (TGCanvas.QUEUE_RENDER_INLINE),
+     * or keep them in a compact form (TGCanvas.QUEUE_SPILL).
+     *
+     * @param maxOps maximum number of operations waiting, zero for no limit
+     * @param policy one of the TGCanvas QUEUE_XXX constants
+     */
+    public void setQueueLimit(int maxOps, int policy) {
+        canvas.setQueueLimit(maxOps, policy);
+    }
+
+    /**
+     * Turn render Thread mode on or off. When on, the turtle's drawing is done
+     * by a background Thread instead of by AWT's event dispatching Thread, so
+     * the window stays responsive while lots of graphics are being drawn.
+     *
+     * @param on true to draw in a background Thread, false to draw when the
+     * window is painted
+     */
+    public void setRenderThread(boolean on) {
+        canvas.setRenderThread(on);
+    }
+
     /**
      * Sets the shape of the turtle - its pixel image. Returns true if shape
      * successfully set, else false failure.
@@ -0,0 +1,49 @@
+package com.guyhaas.tg;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.awt.Color;
+import java.awt.image.BufferedImage;
+import java.util.Arrays;
+
+import org.junit.Test;
+
+/**
+ * Tests that the pixels Sprites of the same shape share through
+ * TGRotationCache can not be changed through the public API.
+ */
+public class SpritePixelsTest {
+
+    @Test
+    public void getPixelsReturnsCopy() {
+        SpritePixels turtle1 = new ArrowTurtle(Color.RED, 30);
+        SpritePixels turtle2 = new ArrowTurtle(Color.RED, 30);
+        int[] before = turtle2.getPixels();
+        int[] pixels = turtle1.getPixels();
+        assertTrue(pixels != turtle1.getPixels());
+        Arrays.fill(pixels, 0);
+        assertArrayEquals(before, turtle1.getPixels());
+        assertArrayEquals(before, turtle2.getPixels());
+    }
+
+    @Test
+    public void getImageReturnsCopy() {
+        TGCanvas canvas = new TGCanvas(300, 300);
+        Sprite turtle1 = new Sprite(canvas);
+        Sprite turtle2 = new Sprite(canvas);
+        turtle1.ht();
+        turtle2.ht();
+        BufferedImage image = (BufferedImage) turtle1.getImage();
+        int side = turtle1.getImageSideSize();
+        int[] before = ((BufferedImage) turtle2.getImage()).getRGB(0, 0, side, side, null, 0, side);
+        for (int y = 0; y < side; y++) {
+            for (int x = 0; x < side; x++) {
+                image.setRGB(x, y, 0);
+            }
+        }
+        int[] after = ((BufferedImage) turtle2.getImage()).getRGB(0, 0, side, side, null, 0, side);
+        assertArrayEquals(before, after);
+    }
+
+} // end class SpritePixelsTest
@@ -0,0 +1,59 @@
+package com.guyhaas.tg;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+
+/**
+ * Tests of TGAnimationClock pacing Sprites, run headless as TGCanvasTest is.
+ */
+public class TGAnimationClockTest {
+
+    private static Sprite newTurtle(TGCanvas canvas) {
+        Sprite turtle = new Sprite(canvas);
+        turtle.ht();
+        return turtle;
+    }
+
+    @Test
+    public void stepsPerSecondPacesHiddenTurtle() throws AbortException {
+        TGCanvas canvas = new TGCanvas(300, 300);
+        Sprite turtle = newTurtle(canvas);
+        canvas.getAnimationClock().setStepsPerSecond(100);
+        long start = System.nanoTime();
+        for (int step = 0; step < 20; step++) {
+            turtle.fd(5);
+        }
+        long elapsedMillis = (System.nanoTime() - start) / 1000000;
+        assertTrue("20 steps at 100 per second took " + elapsedMillis + "ms", elapsedMillis >= 150);
+    }
+
+    @Test
+    public void pauseStopsHiddenTurtle() throws InterruptedException {
+        TGCanvas canvas = new TGCanvas(300, 300);
+        final Sprite turtle = newTurtle(canvas);
+        final CountDownLatch moved = new CountDownLatch(1);
+        TGAnimationClock clock = canvas.getAnimationClock();
+        clock.pause();
+        Thread mover = new Thread(new Runnable() {
+            public void run() {
+                try {
+                    turtle.fd(50);
+                    moved.countDown();
+                } catch (AbortException ae) {
+                }
+            }
+        });
+        mover.start();
+        assertFalse("turtle moved while paused", moved.await(300, TimeUnit.MILLISECONDS));
+        clock.resume();
+        assertTrue("turtle did not move after resume", moved.await(10, TimeUnit.SECONDS));
+        assertEquals(50.0, turtle.ycor(), 0.0);
+    }
+
+} // end class TGAnimationClockTest
@@ -0,0 +1,80 @@
+package com.guyhaas.tg;
+
+import static org.junit.Assert.assertEquals;
+
+import org.junit.Test;
+
+/**
+ * Tests of TGCanvas drawing, run headless: nothing is displayed, drawing is
+ * performed by flush() and looked at with getPixels().
+ */
+public class TGCanvasTest {
+
+    private static final int BLACK = 0x000000;
+    private static final int WHITE = 0xFFFFFF;
+
+    /*
+    * Return the RGB value of the pixel at (x,y) in TurtleSpace.
+     */
+    private static int pixelAt(TGCanvas canvas, int x, int y) {
+        return canvas.getPixels(new TGPoint(x, y), 1, 1)[0] & 0xFFFFFF;
+    }
+
+    private static Sprite newTurtle(TGCanvas canvas) {
+        Sprite turtle = new Sprite(canvas);
+        turtle.ht();
+        return turtle;
+    }
+
+    @Test
+    public void cleanInBatchErasesBatchedDrawing() throws AbortException {
+        TGCanvas canvas = new TGCanvas(300, 300);
+        Sprite turtle = newTurtle(canvas);
+        canvas.beginBatch();
+        turtle.fd(100);
+        canvas.clean();
+        turtle.rt(90);
+        turtle.fd(100);
+        canvas.endBatch();
+        canvas.flush();
+        assertEquals(WHITE, pixelAt(canvas, 0, 50));
+        assertEquals(BLACK, pixelAt(canvas, 50, 100));
+    }
+
+    @Test
+    public void setbgInBatchErasesBatchedDrawing() throws AbortException {
+        TGCanvas canvas = new TGCanvas(300, 300);
+        Sprite turtle = newTurtle(canvas);
+        canvas.beginBatch();
+        turtle.fd(100);
+        canvas.setbg(7);
+        turtle.rt(90);
+        turtle.fd(100);
+        canvas.endBatch();
+        canvas.flush();
+        assertEquals(WHITE, pixelAt(canvas, 0, 50));
+        assertEquals(BLACK, pixelAt(canvas, 50, 100));
+    }
+
+    @Test
+    public void lineAfterBatchIsDrawnOverIt() throws AbortException {
+        TGCanvas canvas = new TGCanvas(300, 300);
+        Sprite turtle = newTurtle(canvas);
+        turtle.fd(50);
+        canvas.beginBatch();
+        turtle.pu();
+        turtle.setxy(-50, 75);
+        turtle.pd();
+        turtle.setpc(7);
+        turtle.setxy(50, 75);
+        canvas.endBatch();
+        turtle.pu();
+        turtle.setxy(0, 50);
+        turtle.pd();
+        turtle.setpc(0);
+        turtle.fd(50);
+        canvas.flush();
+        assertEquals(BLACK, pixelAt(canvas, 0, 75));
+    }
+
+} // end class TGCanvasTest
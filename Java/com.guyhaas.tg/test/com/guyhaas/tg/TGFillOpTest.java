@@ -0,0 +1,134 @@
+package com.guyhaas.tg;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import java.awt.Color;
+import java.awt.Rectangle;
+import java.awt.image.BufferedImage;
+import java.util.Random;
+
+import org.junit.After;
+import org.junit.Test;
+
+/**
+ * Tests of TGFillOp against a plain breadth-first flood fill of the same
+ * image: a maze of randomly placed black pixels on white.
+ */
+public class TGFillOpTest {
+
+    private static final int BLACK = 0x000000;
+    private static final int WHITE = 0xFFFFFF;
+    private static final int FILL = 0x00FF00;
+
+    @After
+    public void restoreParallelThreshold() {
+        TGFillOp.setParallelThreshold(1000000);
+    }
+
+    /*
+    * Return a width by height image, a third of its pixels black, with a
+    * white center pixel.
+     */
+    private static BufferedImage newMaze(int width, int height, int imageType, long seed) {
+        BufferedImage image = new BufferedImage(width, height, imageType);
+        Random random = new Random(seed);
+        for (int y = 0; y < height; y++) {
+            for (int x = 0; x < width; x++) {
+                image.setRGB(x, y, (random.nextInt(3) == 0) ? BLACK : WHITE);
+            }
+        }
+        image.setRGB(width / 2, height / 2, WHITE);
+        return image;
+    }
+
+    /*
+    * Return the RGB values of an image's pixels, row after row.
+     */
+    private static int[] rgbPixels(BufferedImage image) {
+        int width = image.getWidth();
+        int height = image.getHeight();
+        int[] pixels = image.getRGB(0, 0, width, height, null, 0, width);
+        for (int idx = 0; idx < pixels.length; idx++) {
+            pixels[idx] &= 0xFFFFFF;
+        }
+        return pixels;
+    }
+
+    /*
+    * Flood fill pixels, width wide, from (x,y), one pixel at a time;
+    * return the bounds of the pixels filled.
+     */
+    private static Rectangle referenceFill(int[] pixels, int width, int x, int y, int newRGB) {
+        int height = pixels.length / width;
+        int oldRGB = pixels[y * width + x];
+        int[] queue = new int[pixels.length];
+        int head = 0;
+        int tail = 0;
+        pixels[y * width + x] = newRGB;
+        queue[tail++] = y * width + x;
+        Rectangle bounds = new Rectangle(x, y, 1, 1);
+        while (head < tail) {
+            int idx = queue[head++];
+            int px = idx % width;
+            int py = idx / width;
+            bounds.add(new Rectangle(px, py, 1, 1));
+            int[] neighbors = { px > 0 ? idx - 1 : -1, px < width - 1 ? idx + 1 : -1,
+                py > 0 ? idx - width : -1, py < height - 1 ? idx + width : -1 };
+            for (int nIdx = 0; nIdx < neighbors.length; nIdx++) {
+                int neighbor = neighbors[nIdx];
+                if (neighbor >= 0 && pixels[neighbor] == oldRGB) {
+                    pixels[neighbor] = newRGB;
+                    queue[tail++] = neighbor;
+                }
+            }
+        }
+        return bounds;
+    }
+
+    /*
+    * Fill a maze from its center with TGFillOp and with referenceFill()
+    * and check that they agree.
+     */
+    private static void checkFill(int width, int height, int imageType, long seed) {
+        BufferedImage image = newMaze(width, height, imageType, seed);
+        int[] expected = rgbPixels(image);
+        Rectangle expectedBounds = referenceFill(expected, width, width / 2, height / 2, FILL);
+        Rectangle bounds = new TGFillOp(new TGPoint(0, 0), new Color(FILL)).doIt(image);
+        assertEquals(expectedBounds, bounds);
+        assertArrayEquals(expected, rgbPixels(image));
+    }
+
+    @Test
+    public void fillMatchesReference() {
+        TGFillOp.setParallelThreshold(0);
+        checkFill(301, 203, BufferedImage.TYPE_INT_RGB, 1);
+        checkFill(64, 480, BufferedImage.TYPE_INT_ARGB, 2);
+    }
+
+    @Test
+    public void fillOfCopiedPixelsMatchesReference() {
+        TGFillOp.setParallelThreshold(0);
+        checkFill(257, 199, BufferedImage.TYPE_3BYTE_BGR, 3);
+    }
+
+    @Test
+    public void parallelFillMatchesReference() {
+        // only filled in parallel when the common ForkJoinPool has more
+        // than one Thread
+        TGFillOp.setParallelThreshold(1000);
+        checkFill(1100, 900, BufferedImage.TYPE_INT_RGB, 5);
+        checkFill(700, 1300, BufferedImage.TYPE_3BYTE_BGR, 6);
+    }
+
+    @Test
+    public void fillWithSameColorDoesNothing() {
+        BufferedImage image = newMaze(50, 50, BufferedImage.TYPE_INT_RGB, 4);
+        int[] expected = rgbPixels(image);
+        assertNull(new TGFillOp(new TGPoint(0, 0), Color.WHITE).doIt(image));
+        assertNull(new TGFillOp(new TGPoint(100, 0), new Color(FILL)).doIt(image));
+        assertArrayEquals(expected, rgbPixels(image));
+    }
+
+} // end class TGFillOpTest
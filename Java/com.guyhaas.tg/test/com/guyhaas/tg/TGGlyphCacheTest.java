@@ -0,0 +1,96 @@
+package com.guyhaas.tg;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.awt.Color;
+import java.awt.Font;
+import java.awt.FontMetrics;
+import java.awt.Graphics;
+import java.awt.Rectangle;
+import java.awt.image.BufferedImage;
+
+import org.junit.Test;
+
+/**
+ * Tests that labels drawn from TGGlyphCache masks come out as drawString()
+ * draws them, run headless as TGCanvasTest is.
+ */
+public class TGGlyphCacheTest {
+
+    private static final int IMAGE_SIZE = 200;
+
+    private static final String[] FONT_NAMES = { Font.SANS_SERIF, Font.SERIF, Font.MONOSPACED };
+
+    private static BufferedImage newImage() {
+        BufferedImage image = new BufferedImage(IMAGE_SIZE, IMAGE_SIZE, BufferedImage.TYPE_INT_RGB);
+        Graphics g = image.getGraphics();
+        g.setColor(new Color(0x336699));
+        g.fillRect(0, 0, IMAGE_SIZE, IMAGE_SIZE / 2);
+        g.dispose();
+        return image;
+    }
+
+    /*
+    * Draw a label onto an image the way TGLabelOp does without the cache
+    * and return its clip rectangle.
+     */
+    private static Rectangle drawLabel(BufferedImage image, String text, TGPoint where, Font font,
+            Color color) {
+        int imageX = where.imageX(image.getWidth());
+        int imageY = where.imageY(image.getHeight());
+        Graphics g = image.getGraphics();
+        g.setColor(color);
+        g.setFont(font);
+        FontMetrics fm = g.getFontMetrics();
+        Rectangle clipRect = new Rectangle(imageX, imageY - fm.getMaxAscent(), fm.stringWidth(text),
+                fm.getHeight());
+        g.setClip(clipRect);
+        g.drawString(text, imageX, imageY);
+        g.dispose();
+        return clipRect;
+    }
+
+    private static int[] rgbPixels(BufferedImage image) {
+        return image.getRGB(0, 0, IMAGE_SIZE, IMAGE_SIZE, null, 0, IMAGE_SIZE);
+    }
+
+    @Test
+    public void cachedLabelMatchesDrawString() {
+        String[] texts = { "Hello, World!", "gjpqy|", "0.25", "W" };
+        int[] coords = { 0, -95, 90, -120, 40 };
+        Color[] colors = { Color.BLACK, Color.WHITE, new Color(0xCC2211) };
+        for (int fontIdx = 0; fontIdx < FONT_NAMES.length; fontIdx++) {
+            for (int style = Font.PLAIN; style <= (Font.BOLD | Font.ITALIC); style++) {
+                Font font = new Font(FONT_NAMES[fontIdx], style, 10 + 7 * style);
+                for (int textIdx = 0; textIdx < texts.length; textIdx++) {
+                    TGPoint where = new TGPoint(coords[(textIdx + style) % coords.length],
+                            coords[(textIdx + fontIdx) % coords.length]);
+                    Color color = colors[(textIdx + style + fontIdx) % colors.length];
+                    BufferedImage expected = newImage();
+                    Rectangle expectedRect = drawLabel(expected, texts[textIdx], where, font, color);
+                    BufferedImage image = newImage();
+                    Rectangle rect = new TGLabelOp(texts[textIdx], where, font, color).doIt(image);
+                    String label = font + " \"" + texts[textIdx] + "\" at " + where;
+                    assertEquals(label, expectedRect, rect);
+                    assertArrayEquals(label, rgbPixels(expected), rgbPixels(image));
+                }
+            }
+        }
+    }
+
+    @Test
+    public void sameLabelSharesMask() {
+        Font font = new Font(Font.SANS_SERIF, Font.PLAIN, 14);
+        TGGlyphCache.Mask mask = TGGlyphCache.getMask(font, "Same");
+        assertNotNull(mask);
+        assertSame(mask, TGGlyphCache.getMask(new Font(Font.SANS_SERIF, Font.PLAIN, 14), "Same"));
+        assertTrue(mask != TGGlyphCache.getMask(font, "Other"));
+        assertTrue(mask != TGGlyphCache.getMask(font.deriveFont(Font.BOLD), "Same"));
+        assertEquals(mask.width * mask.height, mask.coverage.length);
+    }
+
+} // end class TGGlyphCacheTest
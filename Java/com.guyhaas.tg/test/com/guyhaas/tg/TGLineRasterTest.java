@@ -0,0 +1,82 @@
+package com.guyhaas.tg;
+
+import static org.junit.Assert.assertEquals;
+
+import java.awt.BasicStroke;
+import java.awt.Color;
+import java.util.Random;
+
+import org.junit.Test;
+
+/**
+ * Tests of lines TGLineRaster draws, through TGLineOps queued on a headless
+ * TGCanvas.
+ */
+public class TGLineRasterTest {
+
+    private static final int CANVAS_SIZE = 300;
+    private static final int WHITE = 0xFFFFFF;
+
+    /*
+    * Return the number of pixels on the canvas which are not white.
+     */
+    private static int countNotWhite(TGCanvas canvas) {
+        int half = CANVAS_SIZE / 2;
+        int[] pixels = canvas.getPixels(new TGPoint(-half, half), CANVAS_SIZE, CANVAS_SIZE);
+        int count = 0;
+        for (int idx = 0; idx < pixels.length; idx++) {
+            if ((pixels[idx] & 0xFFFFFF) != WHITE) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    /*
+    * Draw lines between random points with a pen, redraw each one in the
+    * background color, and return the pixels left not white.
+     */
+    private static int pixelsLeftAfterErasing(Color penColor, int penWidth) {
+        TGCanvas canvas = new TGCanvas(CANVAS_SIZE, CANVAS_SIZE);
+        Random random = new Random(penWidth);
+        double range = CANVAS_SIZE - 20;
+        for (int lineNum = 0; lineNum < 200; lineNum++) {
+            TGPoint from = new TGPoint(random.nextDouble() * range - range / 2,
+                    random.nextDouble() * range - range / 2);
+            TGPoint to = new TGPoint(random.nextDouble() * range - range / 2,
+                    random.nextDouble() * range - range / 2);
+            canvas.addGraphOp(new TGLineOp(from, to, penColor, penWidth, null, BasicStroke.CAP_BUTT));
+            canvas.addGraphOp(new TGLineOp(to, from, Color.WHITE, penWidth, null, BasicStroke.CAP_BUTT));
+        }
+        canvas.flush();
+        return countNotWhite(canvas);
+    }
+
+    @Test
+    public void redrawInBackgroundErasesOpaqueLines() {
+        for (int penWidth = 1; penWidth <= TGLineRaster.MAX_PEN_WIDTH; penWidth++) {
+            assertEquals("pen width " + penWidth, 0, pixelsLeftAfterErasing(Color.BLACK, penWidth));
+        }
+    }
+
+    @Test
+    public void redrawInBackgroundErasesTranslucentLines() {
+        Color translucentRed = new Color(255, 0, 0, 100);
+        for (int penWidth = 1; penWidth <= TGLineRaster.MAX_PEN_WIDTH; penWidth++) {
+            assertEquals("pen width " + penWidth, 0, pixelsLeftAfterErasing(translucentRed, penWidth));
+        }
+    }
+
+    @Test
+    public void translucentLineIsBlended() {
+        TGCanvas canvas = new TGCanvas(CANVAS_SIZE, CANVAS_SIZE);
+        canvas.addGraphOp(new TGLineOp(new TGPoint(-50, 0), new TGPoint(50, 0), new Color(0, 0, 0, 128),
+                1, null, BasicStroke.CAP_BUTT));
+        canvas.flush();
+        int pixel = canvas.getPixels(new TGPoint(0, 0), 1, 1)[0];
+        assertEquals(0x7F, (pixel >> 16) & 0xFF, 1.0);
+        assertEquals(0x7F, (pixel >> 8) & 0xFF, 1.0);
+        assertEquals(0x7F, pixel & 0xFF, 1.0);
+    }
+
+} // end class TGLineRasterTest
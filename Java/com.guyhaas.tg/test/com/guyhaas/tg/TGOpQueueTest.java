@@ -0,0 +1,105 @@
+package com.guyhaas.tg;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.awt.Color;
+
+import org.junit.Test;
+
+/**
+ * Tests of TGOpQueue: operations come out in the order each Thread added them,
+ * none lost, while a consumer drains as they are added.
+ */
+public class TGOpQueueTest {
+
+    private static final int NUM_PRODUCERS = 4;
+    private static final int OPS_PER_PRODUCER = 50000;
+
+    /*
+    * Return an operation standing for the seq'th one a producer adds.
+     */
+    private static TGGraphicsOp newOp(int producer, int seq) {
+        return new TGFillOp(new TGPoint(producer, seq), Color.BLACK);
+    }
+
+    @Test
+    public void addAllKeepsOrder() {
+        TGOpQueue queue = new TGOpQueue();
+        TGGraphicsOp[] ops = new TGGraphicsOp[10];
+        for (int idx = 0; idx < ops.length; idx++) {
+            ops[idx] = newOp(0, idx);
+        }
+        queue.add(newOp(1, 0));
+        assertEquals(8, queue.addAll(ops, 7));
+        TGGraphicsOp[] batch = new TGGraphicsOp[20];
+        assertEquals(3, queue.drain(batch, 3));
+        assertEquals(5, queue.size());
+        assertEquals(5, queue.drain(batch));
+        for (int idx = 0; idx < 5; idx++) {
+            assertTrue(batch[idx] == ops[idx + 2]);
+        }
+        assertTrue(queue.isEmpty());
+    }
+
+    @Test
+    public void clearDiscardsPending() {
+        TGOpQueue queue = new TGOpQueue();
+        for (int idx = 0; idx < 5; idx++) {
+            queue.add(newOp(0, idx));
+        }
+        queue.clear();
+        assertTrue(queue.isEmpty());
+        queue.add(newOp(0, 5));
+        TGGraphicsOp[] batch = new TGGraphicsOp[4];
+        assertEquals(1, queue.drain(batch));
+        assertEquals(5.0, ((TGFillOp) batch[0]).getFillPoint().yDoubleValue(), 0.0);
+    }
+
+    @Test
+    public void producersOrderKeptWhileDraining() throws InterruptedException {
+        final TGOpQueue queue = new TGOpQueue();
+        Thread[] producers = new Thread[NUM_PRODUCERS];
+        for (int idx = 0; idx < NUM_PRODUCERS; idx++) {
+            final int producer = idx;
+            producers[idx] = new Thread(new Runnable() {
+                public void run() {
+                    TGGraphicsOp[] ops = new TGGraphicsOp[7];
+                    int seq = 0;
+                    while (seq < OPS_PER_PRODUCER) {
+                        if (seq % 3 == 0) {
+                            queue.add(newOp(producer, seq++));
+                        } else {
+                            int numOps = Math.min(ops.length, OPS_PER_PRODUCER - seq);
+                            for (int opIdx = 0; opIdx < numOps; opIdx++) {
+                                ops[opIdx] = newOp(producer, seq++);
+                            }
+                            queue.addAll(ops, numOps);
+                        }
+                    }
+                }
+            });
+        }
+        for (int idx = 0; idx < NUM_PRODUCERS; idx++) {
+            producers[idx].start();
+        }
+        int[] nextSeq = new int[NUM_PRODUCERS];
+        int numDrained = 0;
+        TGGraphicsOp[] batch = new TGGraphicsOp[64];
+        while (numDrained < NUM_PRODUCERS * OPS_PER_PRODUCER) {
+            int count = queue.drain(batch);
+            for (int idx = 0; idx < count; idx++) {
+                TGPoint point = ((TGFillOp) batch[idx]).getFillPoint();
+                int producer = (int) point.xDoubleValue();
+                assertEquals(nextSeq[producer]++, (int) point.yDoubleValue());
+            }
+            numDrained += count;
+        }
+        for (int idx = 0; idx < NUM_PRODUCERS; idx++) {
+            producers[idx].join();
+            assertEquals(OPS_PER_PRODUCER, nextSeq[idx]);
+        }
+        assertTrue(queue.isEmpty());
+    }
+
+} // end class TGOpQueueTest
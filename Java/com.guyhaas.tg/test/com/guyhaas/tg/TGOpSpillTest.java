@@ -0,0 +1,108 @@
+package com.guyhaas.tg;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.awt.BasicStroke;
+import java.awt.Color;
+import java.awt.Font;
+
+import org.junit.Test;
+
+/**
+ * Tests of TGOpSpill's encoding of operations and its limit, and of drawing
+ * with TGCanvas.QUEUE_SPILL.
+ */
+public class TGOpSpillTest {
+
+    private static TGPolylineOp newPolyline(int numLines) {
+        TGPolylineOp polyline = new TGPolylineOp(0.5, 0.25, 10, 0, Color.RED, 2, BasicStroke.CAP_BUTT);
+        for (int lineNum = 1; lineNum < numLines; lineNum++) {
+            assertTrue(polyline.append(10 * lineNum, (lineNum - 1) / 3.0, 10 * (lineNum + 1), lineNum / 3.0,
+                    Color.RED, 2, BasicStroke.CAP_BUTT));
+        }
+        polyline.seal();
+        return polyline;
+    }
+
+    @Test
+    public void drainGivesBackWhatWasAdded() {
+        TGOpSpill spill = new TGOpSpill();
+        TGPolylineOp polyline = newPolyline(5);
+        TGLineOp line = new TGLineOp(new TGPoint(-3.5, 2), new TGPoint(7, 1.25), Color.BLUE, 3);
+        TGLineOp dashed = new TGLineOp(new TGPoint(0, 0), new TGPoint(5, 5), Color.BLUE, 1, new float[]{2, 2});
+        TGFillOp fill = new TGFillOp(new TGPoint(4, -4), Color.GREEN);
+        TGLabelOp label = new TGLabelOp("hello", new TGPoint(1, 1), new Font("SansSerif", Font.PLAIN, 12),
+                Color.BLACK);
+        TGGraphicsOp[] ops = {polyline, line, dashed, fill, label};
+        for (int idx = 0; idx < ops.length; idx++) {
+            spill.add(ops[idx]);
+        }
+        assertEquals(ops.length, spill.size());
+        TGGraphicsOp[] batch = new TGGraphicsOp[ops.length];
+        assertEquals(ops.length, spill.drain(batch, ops.length));
+        assertEquals(0, spill.size());
+
+        TGPolylineOp polylineOut = (TGPolylineOp) batch[0];
+        assertTrue(polylineOut != polyline);
+        assertArrayEquals(polyline.getPoints(), polylineOut.getPoints(), 0.0);
+        assertEquals(Color.RED, polylineOut.getPenColor());
+        assertEquals(2, polylineOut.getPenWidth());
+        assertEquals(0, polylineOut.seal());
+
+        TGLineOp lineOut = (TGLineOp) batch[1];
+        assertEquals(line.endPt1.xDoubleValue(), lineOut.endPt1.xDoubleValue(), 0.0);
+        assertEquals(line.endPt2.yDoubleValue(), lineOut.endPt2.yDoubleValue(), 0.0);
+        assertEquals(3, lineOut.getPenWidth());
+
+        assertSame(dashed, batch[2]);
+
+        TGFillOp fillOut = (TGFillOp) batch[3];
+        assertEquals(Color.GREEN, fillOut.getFillColor());
+        assertEquals(-4.0, fillOut.getFillPoint().yDoubleValue(), 0.0);
+
+        assertSame(label, batch[4]);
+    }
+
+    @Test
+    public void fullAtMaxBytes() {
+        TGOpSpill spill = new TGOpSpill();
+        TGPolylineOp polyline = newPolyline(1000);
+        int numAdded = 0;
+        while (!spill.isFull()) {
+            spill.add(polyline);
+            numAdded++;
+        }
+        assertTrue(numAdded >= TGOpSpill.MAX_BYTES / (16 * 1001 + 32));
+        assertTrue(numAdded <= TGOpSpill.MAX_BYTES / (16 * 1001) + 1);
+        TGGraphicsOp[] batch = new TGGraphicsOp[256];
+        while (spill.drain(batch, batch.length) > 0) {
+        }
+        assertFalse(spill.isFull());
+    }
+
+    @Test
+    public void spilledDrawingMatchesQueued() throws AbortException {
+        int[][] pixels = new int[2][];
+        for (int pass = 0; pass < 2; pass++) {
+            TGCanvas canvas = new TGCanvas(300, 300);
+            if (pass == 1) {
+                canvas.setQueueLimit(8, TGCanvas.QUEUE_SPILL);
+            }
+            Sprite turtle = new Sprite(canvas);
+            turtle.ht();
+            for (int step = 0; step < 400; step++) {
+                turtle.setpc(step % 16);
+                turtle.fd(step % 7 == 0 ? 120 : 3);
+                turtle.rt(step % 7 == 0 ? 143 : 5);
+            }
+            canvas.flush();
+            pixels[pass] = canvas.getPixels(new TGPoint(-150, 150), 300, 300);
+        }
+        assertArrayEquals(pixels[0], pixels[1]);
+    }
+
+} // end class TGOpSpillTest
@@ -0,0 +1,123 @@
+package com.guyhaas.tg;
+
+import static org.junit.Assert.assertArrayEquals;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.channels.Channels;
+
+import org.junit.Test;
+
+/**
+ * Tests that what TGPlayer replays from a TGRecorder log draws the same pixels
+ * as the drawing recorded. Run headless, as TGCanvasTest is.
+ */
+public class TGRecorderTest {
+
+    private static final int CANVAS_SIZE = 600;
+
+    /*
+    * Return the RGB values of all of a canvas's pixels.
+     */
+    private static int[] allPixels(TGCanvas canvas) {
+        int half = CANVAS_SIZE / 2;
+        return canvas.getPixels(new TGPoint(-half, half), CANVAS_SIZE, CANVAS_SIZE);
+    }
+
+    /*
+    * Replay a log onto a new canvas and return its pixels.
+     */
+    private static int[] replay(byte[] log) throws IOException {
+        TGCanvas canvas = new TGCanvas(CANVAS_SIZE, CANVAS_SIZE);
+        TGPlayer.replay(Channels.newChannel(new ByteArrayInputStream(log)), canvas);
+        return allPixels(canvas);
+    }
+
+    private static Sprite newTurtle(TGCanvas canvas) {
+        Sprite turtle = new Sprite(canvas);
+        turtle.ht();
+        return turtle;
+    }
+
+    @Test
+    public void replayDrawsSamePixels() throws AbortException, IOException {
+        TGCanvas canvas = new TGCanvas(CANVAS_SIZE, CANVAS_SIZE);
+        ByteArrayOutputStream log = new ByteArrayOutputStream();
+        TGRecorder recorder = new TGRecorder(Channels.newChannel(log));
+        canvas.setRecorder(recorder);
+        Sprite turtle = newTurtle(canvas);
+        for (int step = 1; step <= 400; step++) {
+            turtle.fd(step * 0.7);
+            turtle.rt(89.3);
+        }
+        turtle.pu();
+        turtle.home();
+        turtle.pd();
+        for (int step = 0; step < 200; step++) {
+            double angle = step * 0.1;
+            turtle.setxy(250 * Math.cos(angle) / 3, 250 * Math.sin(angle * 1.3));
+        }
+        canvas.flush();
+        recorder.close();
+        assertArrayEquals(allPixels(canvas), replay(log.toByteArray()));
+    }
+
+    @Test
+    public void replayKeepsOrderOfBatchedDrawing() throws AbortException, IOException {
+        TGCanvas canvas = new TGCanvas(CANVAS_SIZE, CANVAS_SIZE);
+        ByteArrayOutputStream log = new ByteArrayOutputStream();
+        TGRecorder recorder = new TGRecorder(Channels.newChannel(log));
+        canvas.setRecorder(recorder);
+        Sprite turtle = newTurtle(canvas);
+        turtle.fd(100);
+        canvas.beginBatch();
+        turtle.rt(90);
+        turtle.fd(100);
+        canvas.clean();
+        turtle.setpc(4);
+        turtle.rt(90);
+        turtle.fd(100);
+        canvas.endBatch();
+        turtle.pu();
+        turtle.setxy(-50, 50);
+        turtle.pd();
+        turtle.setpensize(5);
+        turtle.setpc(2);
+        turtle.setxy(150, 50);
+        canvas.flush();
+        recorder.close();
+        assertArrayEquals(allPixels(canvas), replay(log.toByteArray()));
+    }
+
+    @Test
+    public void replayKeepsOrderOfOtherThreadsDrawing() throws AbortException, IOException,
+            InterruptedException {
+        final TGCanvas canvas = new TGCanvas(CANVAS_SIZE, CANVAS_SIZE);
+        ByteArrayOutputStream log = new ByteArrayOutputStream();
+        TGRecorder recorder = new TGRecorder(Channels.newChannel(log));
+        canvas.setRecorder(recorder);
+        Sprite turtle = newTurtle(canvas);
+        canvas.beginBatch();
+        turtle.setpensize(5);
+        turtle.fd(100);
+        Thread other = new Thread(new Runnable() {
+            public void run() {
+                Sprite otherTurtle = newTurtle(canvas);
+                otherTurtle.setpensize(9);
+                otherTurtle.setpc(4);
+                try {
+                    otherTurtle.fd(100);
+                } catch (AbortException ae) {
+                }
+            }
+        });
+        other.start();
+        other.join();
+        canvas.endBatch();
+        canvas.flush();
+        recorder.close();
+        assertArrayEquals(allPixels(canvas), replay(log.toByteArray()));
+    }
+
+} // end class TGRecorderTest
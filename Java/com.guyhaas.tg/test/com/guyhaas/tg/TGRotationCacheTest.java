@@ -0,0 +1,53 @@
+package com.guyhaas.tg;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+/**
+ * Tests of TGRotationCache's frames.
+ */
+public class TGRotationCacheTest {
+
+    private static final int SIDE_SIZE = 21;
+
+    /*
+    * Return the pixels of an L shaped turtle, not symmetric about any axis.
+     */
+    private static int[] shapePixels() {
+        int[] pixels = new int[SIDE_SIZE * SIDE_SIZE];
+        for (int row = 3; row < 17; row++) {
+            pixels[row * SIDE_SIZE + 6] = 0xFFFF0000;
+        }
+        for (int col = 6; col < 12; col++) {
+            pixels[16 * SIDE_SIZE + col] = 0xFF0000FF;
+        }
+        return pixels;
+    }
+
+    @Test
+    public void equalPixelsShareFrames() {
+        assertTrue(TGRotationCache.canCache(SIDE_SIZE));
+        TGRotationCache.Shape shape1 = TGRotationCache.getShape(shapePixels(), SIDE_SIZE);
+        TGRotationCache.Shape shape2 = TGRotationCache.getShape(shapePixels(), SIDE_SIZE);
+        assertSame(TGRotationCache.getFrame(shape1, 30), TGRotationCache.getFrame(shape2, 30));
+    }
+
+    @Test
+    public void framesAreRotatedPixels() {
+        int[] pixels = shapePixels();
+        TGRotationCache.Shape shape = TGRotationCache.getShape(pixels, SIDE_SIZE);
+        int[] rotated = new int[pixels.length];
+        int[] degreesToTry = {0, 1, 45, 90, 180, 217, 359};
+        for (int idx = 0; idx < degreesToTry.length; idx++) {
+            int degrees = degreesToTry[idx];
+            TGRotationCache.rotate(pixels, rotated, SIDE_SIZE, TGRotationCache.pixelBounds(pixels, SIDE_SIZE),
+                    Math.toRadians(degrees));
+            assertArrayEquals("heading " + degrees, rotated, TGRotationCache.getFrame(shape, degrees).pixels);
+        }
+        assertArrayEquals(pixels, TGRotationCache.getFrame(shape, 0).pixels);
+    }
+
+} // end class TGRotationCacheTest
@@ -0,0 +1,55 @@
+package com.guyhaas.tg;
+
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+
+/**
+ * Tests of TGTurtleRunner, run headless as TGCanvasTest is.
+ */
+public class TGTurtleRunnerTest {
+
+    /*
+    * A program which never ends on its own, counting down started once it
+    * is drawing and finished once it has stopped.
+     */
+    private static TGTurtleRunner.TurtleProgram endlessProgram(final CountDownLatch started,
+            final CountDownLatch finished) {
+        return new TGTurtleRunner.TurtleProgram() {
+            public void run(Sprite sprite) throws AbortException {
+                try {
+                    sprite.ht();
+                    sprite.fd(1);
+                    started.countDown();
+                    while (true) {
+                        sprite.fd(2);
+                        sprite.rt(1);
+                    }
+                } finally {
+                    finished.countDown();
+                }
+            }
+        };
+    }
+
+    @Test
+    public void abortStopsTurtlesThatAreNotPaced() throws InterruptedException {
+        TGCanvas canvas = new TGCanvas(300, 300);
+        TGTurtleRunner runner = new TGTurtleRunner(canvas);
+        CountDownLatch started = new CountDownLatch(2);
+        CountDownLatch finished = new CountDownLatch(2);
+        runner.add(endlessProgram(started, finished));
+        runner.add(endlessProgram(started, finished));
+        runner.start();
+        assertTrue("turtles did not start", started.await(10, TimeUnit.SECONDS));
+        runner.abort();
+        assertTrue("turtles did not stop", finished.await(10, TimeUnit.SECONDS));
+        runner.join();
+        assertNull(runner.getFailure());
+    }
+
+} // end class TGTurtleRunnerTest